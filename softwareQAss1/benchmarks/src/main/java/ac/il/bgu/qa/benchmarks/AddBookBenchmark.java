@@ -0,0 +1,67 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Library#addBook(Book)}, including validation and the existence check,
+ * against a database stub that discards writes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddBookBenchmark {
+
+    // The number of distinct books cycled through by each thread.
+    private static final int BOOK_COUNT = 1024;
+
+    // The library under measurement.
+    private Library library;
+
+    /**
+     * The books added by a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Books {
+        // The books to add, cycled through in order.
+        Book[] books;
+        // The index of the next book to add.
+        int next;
+
+        @Setup
+        public void setup() {
+            books = new Book[BOOK_COUNT];
+            for (int i = 0; i < BOOK_COUNT; i++) {
+                books[i] = Fixtures.book(i);
+            }
+        }
+
+        Book next() {
+            Book book = books[next];
+            next = (next + 1) & (BOOK_COUNT - 1);
+            return book;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        library = new Library(Fixtures.discardingDatabaseService(), Fixtures.reviewService());
+    }
+
+    @Benchmark
+    public void addBook(Books books) {
+        library.addBook(books.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addBookContended(Books books) {
+        library.addBook(books.next());
+    }
+}
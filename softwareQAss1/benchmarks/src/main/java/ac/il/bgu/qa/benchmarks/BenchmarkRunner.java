@@ -0,0 +1,29 @@
+package ac.il.bgu.qa.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the library benchmarks with the GC profiler attached, so every result reports
+ * allocation rate and GC counts next to throughput or latency.
+ * Standard JMH command line options are accepted, for example a benchmark name filter,
+ * or {@code -rf json -rff baseline.json} to record a baseline for later comparison.
+ * <p>
+ * Install the library first ({@code mvn install} in {@code softwareQAss1}), then build and run
+ * the benchmarks with {@code mvn package} and {@code java -jar target/benchmarks.jar}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
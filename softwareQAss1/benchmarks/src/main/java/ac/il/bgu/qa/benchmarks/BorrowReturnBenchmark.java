@@ -0,0 +1,63 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures a {@link Library#borrowBook(String, String)} followed by a
+ * {@link Library#returnBook(String)} against the in-memory database.
+ * Each benchmark thread works on its own book, so the multi-threaded variants measure
+ * contention on the shared database structures rather than on a single book.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BorrowReturnBenchmark {
+
+    // The library under measurement.
+    private Library library;
+    // Hands out a distinct book to every benchmark thread.
+    private final AtomicInteger nextBook = new AtomicInteger();
+
+    /**
+     * The book borrowed and returned by a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Loan {
+        // The ISBN of the thread's book.
+        String ISBN;
+
+        @Setup
+        public void setup(BorrowReturnBenchmark benchmark) {
+            int sequence = benchmark.nextBook.getAndIncrement();
+            benchmark.library.addBook(Fixtures.book(sequence));
+            ISBN = Fixtures.isbn(sequence);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        library = new Library(new InMemoryDatabaseService(), Fixtures.reviewService());
+        library.registerUser(Fixtures.user());
+    }
+
+    @Benchmark
+    public void borrowAndReturn(Loan loan) {
+        library.borrowBook(loan.ISBN, Fixtures.USER_ID);
+        library.returnBook(loan.ISBN);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void borrowAndReturnContended(Loan loan) {
+        library.borrowBook(loan.ISBN, Fixtures.USER_ID);
+        library.returnBook(loan.ISBN);
+    }
+}
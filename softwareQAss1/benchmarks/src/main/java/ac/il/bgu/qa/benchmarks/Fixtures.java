@@ -0,0 +1,117 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory service stubs and test data shared by the benchmarks.
+ * The stubs do no I/O, so that the measurements reflect the library's own overhead.
+ */
+final class Fixtures {
+
+    // The Id of the user registered by the benchmarks.
+    static final String USER_ID = "102030405060";
+    // The author of every generated book.
+    static final String AUTHOR = "Coleen Hoover";
+    // The reviews returned by the review service stub.
+    private static final List<String> REVIEWS = Arrays.asList("Great!", "Loved it", "Could not put it down");
+
+    private Fixtures() {
+    }
+
+    /**
+     * Generates a valid ISBN-13 with the given sequence number.
+     *
+     * @param sequence The sequence number, at most nine digits.
+     * @return A valid ISBN-13.
+     */
+    static String isbn(int sequence) {
+        String first12 = String.format("978%09d", sequence);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = first12.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return first12 + ((10 - (sum % 10)) % 10);
+    }
+
+    /**
+     * Creates an available book with the given sequence number.
+     *
+     * @param sequence The sequence number of the book.
+     * @return A new book.
+     */
+    static Book book(int sequence) {
+        return new Book(isbn(sequence), "Title " + sequence, AUTHOR);
+    }
+
+    /**
+     * Creates a user whose notifications are discarded.
+     *
+     * @return A new user.
+     */
+    static User user() {
+        NotificationService notificationService = (userId, message) -> { };
+        return new User("Colleen Hoover", USER_ID, notificationService);
+    }
+
+    /**
+     * Creates a review service stub that returns a fixed list of reviews.
+     *
+     * @return A review service stub.
+     */
+    static ReviewService reviewService() {
+        return new ReviewService() {
+            @Override
+            public List<String> getReviewsForBook(String ISBN) {
+                return REVIEWS;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Creates a database stub that finds no books and discards writes,
+     * so that repeated additions of the same book always pass.
+     *
+     * @return A database service stub.
+     */
+    static DatabaseService discardingDatabaseService() {
+        return new DatabaseService() {
+            @Override
+            public void addBook(String ISBN, Book book) {
+            }
+
+            @Override
+            public void registerUser(String id, User user) {
+            }
+
+            @Override
+            public Book getBookByISBN(String ISBN) {
+                return null;
+            }
+
+            @Override
+            public User getUserById(String userId) {
+                return null;
+            }
+
+            @Override
+            public void borrowBook(String ISBN, String userId) {
+            }
+
+            @Override
+            public void returnBook(String ISBN) {
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Library#getBookByISBN(String, String)}, including the synchronous review
+ * notification it sends, against the in-memory database and review service stubs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetBookByISBNBenchmark {
+
+    // The number of books in the catalog.
+    private static final int BOOK_COUNT = 1024;
+
+    // The library under measurement.
+    private Library library;
+    // The ISBNs of the books in the catalog.
+    private String[] isbns;
+
+    /**
+     * The position of a single benchmark thread in the catalog.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        // The index of the next book to look up.
+        int next;
+
+        String nextISBN(GetBookByISBNBenchmark benchmark) {
+            String ISBN = benchmark.isbns[next];
+            next = (next + 1) & (BOOK_COUNT - 1);
+            return ISBN;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        library = new Library(new InMemoryDatabaseService(), Fixtures.reviewService());
+        library.registerUser(Fixtures.user());
+        isbns = new String[BOOK_COUNT];
+        for (int i = 0; i < BOOK_COUNT; i++) {
+            library.addBook(Fixtures.book(i));
+            isbns[i] = Fixtures.isbn(i);
+        }
+    }
+
+    @Benchmark
+    public Book getBookByISBN(Cursor cursor) {
+        return library.getBookByISBN(cursor.nextISBN(this), Fixtures.USER_ID);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Book getBookByISBNContended(Cursor cursor) {
+        return library.getBookByISBN(cursor.nextISBN(this), Fixtures.USER_ID);
+    }
+}
@@ -0,0 +1,72 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.search.InvertedIndex;
+import ac.il.bgu.qa.search.SearchHit;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures full-text search latency over a large synthetic catalog.
+ * Titles draw words from a Zipf-distributed vocabulary, so queries mix frequent and rare terms.
+ * Run with {@code -bm sample} to see the latency percentiles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    // The number of distinct words in the synthetic vocabulary.
+    private static final int VOCABULARY_SIZE = 50_000;
+
+    @Param("1000000")
+    public int books;
+
+    // The index under measurement.
+    private InvertedIndex index;
+
+    @Setup
+    public void setup() {
+        index = new InvertedIndex();
+        Random random = new Random(42);
+        for (int i = 0; i < books; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 2 + random.nextInt(5); w++) {
+                title.append(word(random)).append(' ');
+            }
+            index.add(Fixtures.isbn(i), title.toString(), "author" + random.nextInt(10_000), Collections.<String>emptyList());
+        }
+    }
+
+    @Benchmark
+    public List<SearchHit> commonTerms() {
+        return index.search("w1 w2", 10);
+    }
+
+    @Benchmark
+    public List<SearchHit> commonAndRareTerm() {
+        return index.search("w1 w4321", 10);
+    }
+
+    @Benchmark
+    public List<SearchHit> titleAndAuthor() {
+        return index.search("w3 author42", 10);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<SearchHit> commonTermsContended() {
+        return index.search("w1 w2", 10);
+    }
+
+    private static String word(Random random) {
+        // A log-uniform rank follows Zipf's law: the word ranked k is about k times rarer than the first.
+        return "w" + (int) Math.pow(VOCABULARY_SIZE, random.nextDouble());
+    }
+}
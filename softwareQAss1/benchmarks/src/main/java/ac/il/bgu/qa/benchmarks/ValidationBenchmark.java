@@ -0,0 +1,72 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnValidator;
+import ac.il.bgu.qa.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ISBN validation directly, and author validation through the rejection path of
+ * {@link Library#addBook(Book)}, since the author check is private to the library.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    // A valid ISBN-13 without hyphens.
+    private String validISBN;
+    // A valid ISBN-13 with hyphens.
+    private String hyphenatedISBN;
+    // An ISBN-13 with a wrong check digit.
+    private String invalidISBN;
+    // A book whose author has consecutive special characters.
+    private Book invalidAuthorBook;
+    // The library used to reach author validation.
+    private Library library;
+
+    @Setup
+    public void setup() {
+        validISBN = "9781501110368";
+        hyphenatedISBN = "978-1-5011-1036-8";
+        invalidISBN = "9781501110369";
+        invalidAuthorBook = new Book(validISBN, "It ends with us", "Coleen--Hoover");
+        library = new Library(Fixtures.discardingDatabaseService(), Fixtures.reviewService());
+    }
+
+    @Benchmark
+    public boolean validISBN() {
+        return IsbnValidator.isValid(validISBN);
+    }
+
+    @Benchmark
+    public boolean hyphenatedISBN() {
+        return IsbnValidator.isValid(hyphenatedISBN);
+    }
+
+    @Benchmark
+    public boolean invalidISBN() {
+        return IsbnValidator.isValid(invalidISBN);
+    }
+
+    @Benchmark
+    public String invalidAuthor() {
+        try {
+            library.addBook(invalidAuthorBook);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean validISBNContended() {
+        return IsbnValidator.isValid(validISBN);
+    }
+}
@@ -0,0 +1,89 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports the per-item outcome of a batch operation on the library.
+ *
+ * @param <T> The type of the items in the batch.
+ */
+public class BatchResult<T> {
+
+    // The items that were accepted and written, in input order.
+    private final List<T> accepted = new ArrayList<>();
+    // The items that were rejected, together with the reason, in input order.
+    private final List<Rejection<T>> rejected = new ArrayList<>();
+
+    void accept(T item) {
+        accepted.add(item);
+    }
+
+    void reject(T item, String reason) {
+        rejected.add(new Rejection<>(item, reason));
+    }
+
+    /**
+     * Retrieves the items that were accepted and written.
+     *
+     * @return An unmodifiable list of the accepted items.
+     */
+    public List<T> getAccepted() {
+        return Collections.unmodifiableList(accepted);
+    }
+
+    /**
+     * Retrieves the items that were rejected.
+     *
+     * @return An unmodifiable list of the rejections.
+     */
+    public List<Rejection<T>> getRejected() {
+        return Collections.unmodifiableList(rejected);
+    }
+
+    /**
+     * Checks whether every item in the batch was accepted.
+     *
+     * @return true if no item was rejected, otherwise false.
+     */
+    public boolean isFullySuccessful() {
+        return rejected.isEmpty();
+    }
+
+    /**
+     * Represents a single rejected item and the reason it was rejected.
+     *
+     * @param <T> The type of the rejected item.
+     */
+    public static final class Rejection<T> {
+
+        // The rejected item.
+        private final T item;
+        // The reason for the rejection, matching the message the single-item operation would throw.
+        private final String reason;
+
+        Rejection(T item, String reason) {
+            this.item = item;
+            this.reason = reason;
+        }
+
+        /**
+         * Retrieves the rejected item.
+         *
+         * @return The rejected item.
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Retrieves the reason for the rejection.
+         *
+         * @return The rejection reason.
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+}
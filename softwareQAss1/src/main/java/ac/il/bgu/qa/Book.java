@@ -1,5 +1,7 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Represents a book with its essential details and borrowing status.
  */
@@ -11,7 +13,8 @@ public class Book {
     // The name of the author of the book.
     private final String author;
     // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // Held atomically so that concurrent borrowers resolve with a single compare-and-set.
+    private final AtomicBoolean isBorrowed = new AtomicBoolean(false);
 
     /**
      * Constructs a new Book object.
@@ -24,7 +27,6 @@ public class Book {
         this.ISBN = ISBN;
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
     }
 
     // Getter methods
@@ -62,7 +64,7 @@ public class Book {
      * @return true if the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return isBorrowed.get();
     }
 
     /**
@@ -70,22 +72,36 @@ public class Book {
      * Throws an exception if the book is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        if (!tryBorrow()) {
             throw new IllegalStateException("Book is already borrowed!");
         }
     }
 
+    /**
+     * Atomically marks the book as borrowed if it is currently available.
+     *
+     * @return true if this call borrowed the book, false if it was already borrowed.
+     */
+    public boolean tryBorrow() {
+        return isBorrowed.compareAndSet(false, true);
+    }
+
     /**
      * Marks the book as returned/not borrowed.
      * Throws an exception if the book was not previously borrowed.
      */
     public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+        if (!tryReturn()) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
     }
+
+    /**
+     * Atomically marks the book as returned if it is currently borrowed.
+     *
+     * @return true if this call returned the book, false if it was not borrowed.
+     */
+    public boolean tryReturn() {
+        return isBorrowed.compareAndSet(true, false);
+    }
 }
@@ -0,0 +1,13 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents the availability of a book in the library's collection.
+ */
+public enum BookAvailability {
+    // The book exists and can be borrowed.
+    AVAILABLE,
+    // The book exists but is currently borrowed.
+    BORROWED,
+    // No book with the given ISBN exists in the library.
+    NOT_FOUND
+}
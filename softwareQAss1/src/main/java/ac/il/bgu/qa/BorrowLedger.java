@@ -0,0 +1,181 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Tracks which users hold which books, indexed in both directions.
+ * The forward index maps a book to its borrowers, and the reverse index maps a user to the books
+ * they hold, so both questions are answered in time proportional to the loans involved.
+ * A book has several borrowers only when the library holds several copies of it, and a user holds
+ * at most one copy of a book.
+ * <p>
+ * The changes of a book's loans run one at a time inside an atomic update of its entry, and never
+ * wait for the database. As loans of single-copy books are recorded once the database made them,
+ * a return may be recorded before the borrow it closes; the borrow is then not recorded at all.
+ */
+class BorrowLedger {
+
+    // The Ids of the users holding each book, keyed by ISBN. Every change of a book's loans runs inside
+    // an update of its entry here, which orders the changes of the same book.
+    private final ConcurrentHashMap<String, Set<String>> borrowers = new ConcurrentHashMap<>();
+    // The ISBNs of the books each user holds, keyed by user Id. Users without loans have no entry.
+    private final ConcurrentHashMap<String, Set<String>> loans = new ConcurrentHashMap<>();
+    // The Ids of the users whose returns were recorded before their borrows, keyed by ISBN.
+    // The lists are only changed inside the update of the book's entry in the borrowers.
+    private final Map<String, List<String>> earlyReturns = new ConcurrentHashMap<>();
+
+    /**
+     * Records that a user borrowed a book.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the borrowing user.
+     * @return true if the loan was recorded, or already closed by a return recorded before it,
+     *         false if the user already holds the book.
+     */
+    boolean recordBorrow(String ISBN, String userId) {
+        boolean[] recorded = new boolean[1];
+        borrowers.compute(ISBN, (key, holders) -> {
+            if (cancelEarlyReturn(key, userId)) {
+                recorded[0] = true;
+                return holders;
+            }
+            Set<String> updated = holders == null ? ConcurrentHashMap.<String>newKeySet() : holders;
+            recorded[0] = updated.add(userId);
+            if (recorded[0]) {
+                // Updating the user's set inside compute keeps it from being removed while it is added to.
+                loans.compute(userId, (id, ISBNs) -> {
+                    Set<String> held = ISBNs == null ? new ConcurrentSkipListSet<>() : ISBNs;
+                    held.add(key);
+                    return held;
+                });
+            }
+            return updated;
+        });
+        return recorded[0];
+    }
+
+    /**
+     * Records that a user returned a book, before the return is made in the database.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the returning user.
+     * @return true if the loan was closed, false if the user does not hold the book.
+     */
+    boolean recordReturn(String ISBN, String userId) {
+        boolean[] closed = new boolean[1];
+        borrowers.computeIfPresent(ISBN, (key, holders) -> {
+            closed[0] = closeLoan(key, holders, userId);
+            return holders.isEmpty() ? null : holders;
+        });
+        return closed[0];
+    }
+
+    /**
+     * Records a return the database already made. If the user's borrow of the book is not recorded
+     * yet, as it was made concurrently, the borrow is cancelled once it is recorded.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the user whose loan was closed.
+     */
+    void recordCompletedReturn(String ISBN, String userId) {
+        borrowers.compute(ISBN, (key, holders) -> {
+            if (holders == null || !closeLoan(key, holders, userId)) {
+                earlyReturns.computeIfAbsent(key, k -> new ArrayList<>()).add(userId);
+            }
+            return holders == null || holders.isEmpty() ? null : holders;
+        });
+    }
+
+    /**
+     * Records a return the database already made, without knowing whose loan was closed.
+     * This closes the loan of one of the book's borrowers, if any is recorded.
+     *
+     * @param ISBN The ISBN of the book.
+     */
+    void recordCompletedReturn(String ISBN) {
+        borrowers.computeIfPresent(ISBN, (key, holders) -> {
+            for (String userId : holders) {
+                closeLoan(key, holders, userId);
+                break;
+            }
+            return holders.isEmpty() ? null : holders;
+        });
+    }
+
+    /**
+     * Retrieves the books a user holds.
+     *
+     * @param userId The Id of the user.
+     * @return The ISBNs of the user's borrowed books, in ISBN order.
+     */
+    List<String> getLoans(String userId) {
+        Set<String> ISBNs = loans.get(userId);
+        return ISBNs == null ? Collections.<String>emptyList() : new ArrayList<>(ISBNs);
+    }
+
+    /**
+     * Retrieves a user holding a book.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The Id of one of the borrowing users, or null if the book is not borrowed.
+     */
+    String getBorrower(String ISBN) {
+        Set<String> holders = borrowers.get(ISBN);
+        if (holders != null) {
+            for (String userId : holders) {
+                return userId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the number of users holding a book.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The number of open loans of the book.
+     */
+    int getBorrowerCount(String ISBN) {
+        Set<String> holders = borrowers.get(ISBN);
+        return holders == null ? 0 : holders.size();
+    }
+
+    /**
+     * Closes a user's loan of a book. Called inside the update of the book's entry.
+     *
+     * @return true if the user held the book, false otherwise.
+     */
+    private boolean closeLoan(String ISBN, Set<String> holders, String userId) {
+        if (!holders.remove(userId)) {
+            return false;
+        }
+        loans.computeIfPresent(userId, (id, ISBNs) -> {
+            ISBNs.remove(ISBN);
+            return ISBNs.isEmpty() ? null : ISBNs;
+        });
+        return true;
+    }
+
+    /**
+     * Consumes a return of the user's loan of a book recorded before the borrow. Called inside the
+     * update of the book's entry.
+     *
+     * @return true if such a return was recorded, false otherwise.
+     */
+    private boolean cancelEarlyReturn(String ISBN, String userId) {
+        List<String> returned = earlyReturns.get(ISBN);
+        if (returned == null || !returned.remove(userId)) {
+            return false;
+        }
+        if (returned.isEmpty()) {
+            earlyReturns.remove(ISBN);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents the outcome of an attempt to borrow a book.
+ */
+public enum BorrowResult {
+    // The book was borrowed by the user.
+    BORROWED,
+    // No book with the given ISBN exists in the library.
+    BOOK_NOT_FOUND,
+    // The user is not registered with the library.
+    USER_NOT_REGISTERED,
+    // The book is currently borrowed, possibly by a concurrent request.
+    ALREADY_BORROWED
+}
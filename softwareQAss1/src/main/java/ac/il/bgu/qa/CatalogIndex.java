@@ -0,0 +1,84 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over the books added through a library, by author and by title.
+ * Authors are indexed in a hash map of normalized names, and titles in a sorted map of normalized
+ * titles, so both lookups cost time proportional to the size of their result.
+ */
+class CatalogIndex {
+
+    // Separates the title from the ISBN in title keys, and sorts before every other character.
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // The ISBNs of the books of each author, keyed by normalized author name.
+    private final ConcurrentHashMap<String, Set<String>> byAuthor = new ConcurrentHashMap<>();
+    // The ISBNs of the books, keyed by normalized title followed by the ISBN to keep keys unique.
+    private final ConcurrentSkipListMap<String, String> byTitle = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds a book to the indexes.
+     *
+     * @param book The book to be indexed.
+     */
+    void add(Book book) {
+        byAuthor.computeIfAbsent(normalize(book.getAuthor()), author -> new ConcurrentSkipListSet<>())
+                .add(book.getISBN());
+        byTitle.put(normalize(book.getTitle()) + KEY_SEPARATOR + book.getISBN(), book.getISBN());
+    }
+
+    /**
+     * Finds the books of an author, ignoring case and extra whitespace.
+     *
+     * @param author The name of the author.
+     * @return The ISBNs of the author's books, in ISBN order.
+     */
+    List<String> findByAuthor(String author) {
+        Set<String> ISBNs = byAuthor.get(normalize(author));
+        return ISBNs == null ? Collections.<String>emptyList() : new ArrayList<>(ISBNs);
+    }
+
+    /**
+     * Finds the books whose title starts with a prefix, ignoring case and extra whitespace.
+     *
+     * @param prefix The title prefix.
+     * @return The ISBNs of the matching books, in title order.
+     */
+    List<String> findByTitlePrefix(String prefix) {
+        String from = normalize(prefix);
+        // Every key starting with the prefix sorts before the prefix followed by the largest character.
+        return new ArrayList<>(byTitle.subMap(from, true, from + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * Normalizes a name or title for indexing: lower case, trimmed, with single spaces between words.
+     *
+     * @param text The text to be normalized.
+     * @return The normalized text.
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+}
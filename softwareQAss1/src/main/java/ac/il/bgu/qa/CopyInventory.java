@@ -0,0 +1,127 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Counts the copies the library holds of each book, and how many of them are on the shelf.
+ * <p>
+ * The available count of a book is changed with compare-and-set only, so concurrent checkouts of
+ * the same book never block on a lock, and the count can neither drop below zero nor exceed the
+ * number of copies. A book is tracked from its first use, starting from the number of copies and
+ * loans the library already knows of.
+ */
+class CopyInventory {
+
+    // The copies of each book, keyed by ISBN.
+    private final ConcurrentHashMap<String, Copies> copies = new ConcurrentHashMap<>();
+    // Provides the number of copies of a book that is not tracked yet, by ISBN.
+    private final ToIntFunction<String> copyCounts;
+    // Provides the number of borrowed copies of a book that is not tracked yet, by ISBN.
+    private final ToIntFunction<String> loanCounts;
+
+    /**
+     * Constructs a new inventory.
+     *
+     * @param copyCounts Provides the number of copies of a book that is not tracked yet, by ISBN.
+     * @param loanCounts Provides the number of borrowed copies of a book that is not tracked yet, by ISBN.
+     */
+    CopyInventory(ToIntFunction<String> copyCounts, ToIntFunction<String> loanCounts) {
+        this.copyCounts = copyCounts;
+        this.loanCounts = loanCounts;
+    }
+
+    /**
+     * Retrieves the copies of a book, starting to track it if needed.
+     * A book that is not tracked yet holds at least one copy, and its borrowed copies are off the shelf.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The copies of the book.
+     */
+    Copies copiesOf(String ISBN) {
+        Copies found = copies.get(ISBN);
+        if (found != null) {
+            return found;
+        }
+        return copies.computeIfAbsent(ISBN, key -> {
+            int total = Math.max(1, copyCounts.applyAsInt(key));
+            return new Copies(total, Math.max(0, total - loanCounts.applyAsInt(key)));
+        });
+    }
+
+    /**
+     * The copies of a single book.
+     */
+    static final class Copies {
+
+        // The number of copies the library holds.
+        private final AtomicInteger total;
+        // The number of copies on the shelf; never more than the total.
+        private final AtomicInteger available;
+
+        private Copies(int total, int available) {
+            this.total = new AtomicInteger(total);
+            this.available = new AtomicInteger(available);
+        }
+
+        /**
+         * Adds a copy, which is immediately available.
+         */
+        void addCopy() {
+            // Grow the total first, so that the available count never exceeds it.
+            total.incrementAndGet();
+            available.incrementAndGet();
+        }
+
+        /**
+         * Takes a copy off the shelf if one is available.
+         *
+         * @return true if a copy was taken, false if every copy is borrowed.
+         */
+        boolean tryCheckout() {
+            int current;
+            do {
+                current = available.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!available.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        /**
+         * Puts a borrowed copy back on the shelf.
+         *
+         * @return true if a copy was put back, false if every copy is already on the shelf.
+         */
+        boolean checkin() {
+            int current;
+            do {
+                current = available.get();
+                if (current >= total.get()) {
+                    return false;
+                }
+            } while (!available.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        /**
+         * Retrieves the number of copies on the shelf.
+         *
+         * @return The number of available copies.
+         */
+        int getAvailable() {
+            return available.get();
+        }
+
+        /**
+         * Retrieves the number of copies the library holds.
+         *
+         * @return The number of copies.
+         */
+        int getTotal() {
+            return total.get();
+        }
+    }
+}
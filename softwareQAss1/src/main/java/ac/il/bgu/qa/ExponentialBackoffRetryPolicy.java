@@ -0,0 +1,74 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link RetryPolicy} that waits exponentially longer between attempts, with random jitter,
+ * and optionally draws every retry from a per-destination {@link RetryBudget}.
+ * The delay before retry n (n = 1, 2, ...) is {@code min(maxDelay, baseDelay * 2^(n-1))},
+ * reduced by a random fraction of up to {@code jitter} so that clients do not retry in lockstep.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    // The maximum number of attempts, including the first one.
+    private final int maxAttempts;
+    // The delay before the first retry, in milliseconds.
+    private final long baseDelayMillis;
+    // The upper bound of any delay, in milliseconds.
+    private final long maxDelayMillis;
+    // The maximum fraction of a delay that is randomly removed, between 0 and 1.
+    private final double jitter;
+    // The per-destination budget retries are drawn from, or null if retries are unlimited.
+    private final RetryBudget budget;
+
+    /**
+     * Constructs a new exponential backoff policy.
+     *
+     * @param maxAttempts     The maximum number of attempts, including the first one.
+     * @param baseDelayMillis The delay before the first retry, in milliseconds.
+     * @param maxDelayMillis  The upper bound of any delay, in milliseconds.
+     * @param jitter          The maximum fraction of a delay that is randomly removed, between 0 and 1.
+     * @param budget          The per-destination retry budget, or null for no budget.
+     */
+    public ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                                         double jitter, RetryBudget budget) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid maximum attempts.");
+        }
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid delay.");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Invalid jitter.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.jitter = jitter;
+        this.budget = budget;
+    }
+
+    @Override
+    public long nextDelayMillis(String destination, int failedAttempts) {
+        if (failedAttempts >= maxAttempts) {
+            return -1;
+        }
+        if (budget != null && !budget.tryAcquire(destination)) {
+            return -1;
+        }
+
+        // Double the delay for every failed attempt, without overflowing past the cap.
+        int doublings = Math.min(failedAttempts - 1, 62);
+        long delay = baseDelayMillis;
+        for (int i = 0; i < doublings && delay < maxDelayMillis; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, maxDelayMillis);
+
+        // Remove a random share of the delay to spread retries from different callers apart.
+        if (jitter > 0 && delay > 0) {
+            delay -= (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,102 @@
+package ac.il.bgu.qa;
+
+/**
+ * Validates International Standard Book Numbers in the ISBN-13 format.
+ * Validation is done in a single pass over the input, skipping hyphens inline,
+ * without compiling regular expressions or allocating intermediate strings.
+ */
+public final class IsbnValidator {
+
+    // The number of digits in an ISBN-13.
+    private static final int ISBN_LENGTH = 13;
+
+    private IsbnValidator() {
+    }
+
+    /**
+     * Validates if input is of type ISBN-13.
+     * Hyphens may appear anywhere in the input and are ignored.
+     *
+     * @param isbn The International Standard Book Number to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(CharSequence isbn) {
+        // Check if the ISBN is null, return false if it is
+        if (isbn == null) {
+            return false;
+        }
+
+        // Calculate the sum based on the ISBN-13 rules while walking the input:
+        // Odd position numbers are multiplied by 1
+        // Even position numbers are multiplied by 3
+        // The 13th digit is the check digit and is kept aside.
+        int digits = 0;
+        int sum = 0;
+        int lastDigit = 0;
+        for (int i = 0, length = isbn.length(); i < length; i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == ISBN_LENGTH) {
+                return false;
+            }
+            lastDigit = c - '0';
+            if (digits < ISBN_LENGTH - 1) {
+                sum += (digits & 1) == 0 ? lastDigit : lastDigit * 3;
+            }
+            digits++;
+        }
+
+        // The sanitized ISBN must be exactly 13 digits long.
+        if (digits != ISBN_LENGTH) {
+            return false;
+        }
+
+        // Check if the calculated check digit matches the last digit of the ISBN
+        int checkDigit = (10 - (sum % 10)) % 10;
+        return checkDigit == lastDigit;
+    }
+
+    /**
+     * Packs a valid ISBN into a primitive key, suitable for fixed-width storage and indexing.
+     * Hyphens are ignored, so differently hyphenated forms of an ISBN map to the same key.
+     * Since an ISBN-13 has 13 digits, every valid ISBN maps to a distinct non-negative long.
+     *
+     * @param isbn The International Standard Book Number to be packed.
+     * @return The numeric value of the ISBN's digits.
+     * @throws IllegalArgumentException If the ISBN is not valid.
+     */
+    public static long toKey(CharSequence isbn) {
+        if (!isValid(isbn)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        long key = 0;
+        for (int i = 0, length = isbn.length(); i < length; i++) {
+            char c = isbn.charAt(i);
+            if (c != '-') {
+                key = key * 10 + (c - '0');
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Unpacks a key created by {@link #toKey(CharSequence)} into an ISBN without hyphens.
+     *
+     * @param key The packed ISBN.
+     * @return The 13 digits of the ISBN.
+     * @throws IllegalArgumentException If the key is out of range.
+     */
+    public static String fromKey(long key) {
+        if (key < 0 || key >= 10_000_000_000_000L) {
+            throw new IllegalArgumentException("Invalid ISBN key.");
+        }
+        char[] digits = new char[ISBN_LENGTH];
+        for (int i = ISBN_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + key % 10);
+            key /= 10;
+        }
+        return new String(digits);
+    }
+}
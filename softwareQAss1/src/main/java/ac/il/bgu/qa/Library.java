@@ -1,10 +1,23 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.search.InvertedIndex;
+import ac.il.bgu.qa.search.SearchHit;
+import ac.il.bgu.qa.services.CopyDatabaseService;
 import ac.il.bgu.qa.services.DatabaseService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewServicePool;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Represents a library which manages a collection of books and users.
@@ -14,13 +27,92 @@ public class Library {
     // Service to interact with the database
     private final DatabaseService databaseService;
 
-    // Service to fetch reviews for a book
-    private final ReviewService reviewService;
+    // Pool leasing sessions of the service that fetches reviews for a book
+    private final ReviewServicePool reviewServicePool;
 
-    // Constructor for Library, initializes both services
+    // Dispatcher running notifications in the background, or null if only synchronous notifications are used
+    private final NotificationDispatcher notificationDispatcher;
+
+    // Sends notifications to users, retrying failed attempts as the retry policy allows
+    private final NotificationRetrier notificationRetrier;
+
+    // Suppresses repeated background review notifications, or null if book lookups notify synchronously
+    private final NotificationDeduplicator reviewNotificationDeduplicator;
+
+    // Builds the review notification messages, within the configured size bounds
+    private final ReviewMessageBuilder reviewMessageBuilder;
+
+    // Receives the latency and failure measurements of the library's operations
+    private final LibraryMetrics metrics;
+
+    // Indexes the books added through this library by author and title, or null if not configured
+    private final CatalogIndex catalogIndex;
+
+    // Tracks the loans of the books, by book and by user, starting from those open in the database
+    private final BorrowLedger borrowLedger = new BorrowLedger();
+
+    // The database holding the copies of the books, or null if every book is a single copy
+    private final CopyDatabaseService copyDatabaseService;
+
+    // Counts the copies of each book, or null if every book is a single copy
+    private final CopyInventory copyInventory;
+
+    // Full-text index of the books added through this library, or null if not configured
+    private final InvertedIndex searchIndex;
+
+    // Fetches and indexes the reviews of added books in the background, or null if reviews are not indexed
+    private final Executor reviewIndexer;
+
+    // Constructor for Library, initializes both services.
+    // The review service is closed after every use, as it is not pooled.
     public Library(DatabaseService databaseService, ReviewService reviewService) {
-        this.databaseService = databaseService;
-        this.reviewService = reviewService;
+        this(databaseService, ReviewServicePool.closingAfterUse(reviewService));
+    }
+
+    // Constructor for Library, leasing review service sessions from a pool instead of reconnecting per call
+    public Library(DatabaseService databaseService, ReviewServicePool reviewServicePool) {
+        this(new Builder(databaseService).reviewServicePool(reviewServicePool));
+    }
+
+    // Constructor for Library, used by the builder for the optional components
+    private Library(Builder builder) {
+        this.databaseService = builder.databaseService;
+        this.reviewServicePool = builder.reviewServicePool;
+        this.notificationDispatcher = builder.notificationDispatcher;
+        this.metrics = builder.metrics;
+        this.notificationRetrier = new NotificationRetrier(builder.retryPolicy, builder.retryScheduler, builder.metrics);
+        this.reviewNotificationDeduplicator = builder.backgroundReviewNotifications
+                ? new NotificationDeduplicator(builder.deduplicationWindow, builder.deduplicationUnit, System::nanoTime)
+                : null;
+        this.reviewMessageBuilder = builder.reviewMessageBuilder;
+        this.catalogIndex = builder.catalogIndexes ? new CatalogIndex() : null;
+        this.searchIndex = builder.fullTextSearch ? new InvertedIndex() : null;
+        this.reviewIndexer = builder.reviewIndexer;
+        this.copyDatabaseService = builder.multiCopyInventory ? (CopyDatabaseService) databaseService : null;
+        this.copyInventory = builder.multiCopyInventory
+                ? new CopyInventory(copyDatabaseService::getCopyCount, borrowLedger::getBorrowerCount)
+                : null;
+        // Restore the loans that are still open, such as those of a database restored from storage.
+        for (Map.Entry<String, String> loan : databaseService.getLoans().entrySet()) {
+            borrowLedger.recordBorrow(loan.getKey(), loan.getValue());
+        }
+        if (copyDatabaseService != null) {
+            for (Map.Entry<String, Set<String>> loans : copyDatabaseService.getCopyLoans().entrySet()) {
+                for (String userId : loans.getValue()) {
+                    borrowLedger.recordBorrow(loans.getKey(), userId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a builder for a library with optional components.
+     *
+     * @param databaseService The service to interact with the database.
+     * @return A new builder.
+     */
+    public static Builder builder(DatabaseService databaseService) {
+        return new Builder(databaseService);
     }
 
     /**
@@ -29,68 +121,244 @@ public class Library {
      * @param book The book to be added.
      */
     public void addBook(Book book) {
+        timed(LibraryMetrics.Operation.ADD_BOOK, () -> doAddBook(book));
+    }
+
+    private void doAddBook(Book book) {
         // Multiple checks to validate the book object's properties
-        if (book == null) {
-            throw new IllegalArgumentException("Invalid book.");
-        } else if (!isISBNValid(book.getISBN())){
-            throw new IllegalArgumentException("Invalid ISBN.");
-        } else if (book.getTitle() == null || book.getTitle().equals("")) {
-            throw new IllegalArgumentException("Invalid title.");
-        } else if (!isAuthorValid(book.getAuthor())) {
-            throw new IllegalArgumentException("Invalid author.");
-        } else if (book.isBorrowed()) {
-            throw new IllegalArgumentException("Book with invalid borrowed state.");
+        String invalidReason = validateBook(book);
+        if (invalidReason != null) {
+            throw new IllegalArgumentException(invalidReason);
         }
 
-        // If book already exists in the database, throw exception
-        if (databaseService.getBookByISBN(book.getISBN()) != null)
-            throw new IllegalArgumentException("Book already exists.");
+        // If book already exists in the database, add it as another copy, or throw exception
+        String ISBN = book.getISBN();
+        Book existing = databaseService.getBookByISBN(ISBN);
+        if (existing != null) {
+            if (copyInventory == null) {
+                throw new IllegalArgumentException("Book already exists.");
+            }
+            if (!isSameBook(existing, book)) {
+                throw new IllegalArgumentException("Book does not match the existing copies.");
+            }
+            addCopy(ISBN);
+            return;
+        }
 
         // If all checks pass, add the book to the database
-        databaseService.addBook(book.getISBN(), book);
+        databaseService.addBook(ISBN, book);
+        indexBooks(Collections.singletonList(book));
     }
 
     /**
-     *  Validates if input is of type ISBN-13.
+     * Adds a batch of books to the library's collection.
+     * Books are validated in a single pass, checked for existence with one multi-get
+     * and written in one batch. Invalid or already existing books are skipped and reported,
+     * unless the library holds multiple copies, in which case they are added as further copies.
      *
-     *  @param isbn The International Standard Book Number to be validated.
-     *  @return true if valid, false otherwise.
-    */
-    private boolean isISBNValid(String isbn) {
-        // Check if the ISBN is null, return false if it is
-        if (isbn == null) {
-            return false;
+     * @param books The books to be added.
+     * @return A report of which books were added and why the others were rejected.
+     */
+    public BatchResult<Book> addBooks(Collection<Book> books) {
+        return timed(LibraryMetrics.Operation.ADD_BOOKS, () -> doAddBooks(books));
+    }
+
+    private BatchResult<Book> doAddBooks(Collection<Book> books) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid books.");
         }
 
-        // Remove any hyphen characters from the ISBN for standardization
-        isbn = isbn.replaceAll("-", "");
+        BatchResult<Book> result = new BatchResult<>();
 
-        // Check if the sanitized ISBN is of length 13 and if contains only digits
-        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
-            return false;
+        // Validate every book, rejecting duplicates within the batch itself
+        // or keeping them aside as further copies.
+        Map<String, Book> candidates = new LinkedHashMap<>();
+        List<Book> copies = new ArrayList<>();
+        for (Book book : books) {
+            String invalidReason = validateBook(book);
+            if (invalidReason != null) {
+                result.reject(book, invalidReason);
+            } else if (candidates.putIfAbsent(book.getISBN(), book) != null) {
+                if (copyInventory == null) {
+                    result.reject(book, "Book already exists.");
+                } else {
+                    copies.add(book);
+                }
+            }
         }
 
-        // Calculate the sum based on the ISBN-13 rules:
-        // Odd position numbers are multiplied by 1
-        // Even position numbers are multiplied by 3
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
-            if (i % 2 == 0) {
-                sum += digit;
+        // Look up all candidates at once, and skip the ones already in the database.
+        Map<String, Book> existing = databaseService.getBooksByISBN(candidates.keySet());
+        Map<String, Book> toAdd = new LinkedHashMap<>();
+        for (Map.Entry<String, Book> entry : candidates.entrySet()) {
+            if (!existing.containsKey(entry.getKey())) {
+                toAdd.put(entry.getKey(), entry.getValue());
+                result.accept(entry.getValue());
+            } else if (copyInventory == null) {
+                result.reject(entry.getValue(), "Book already exists.");
+            } else if (!isSameBook(existing.get(entry.getKey()), entry.getValue())) {
+                result.reject(entry.getValue(), "Book does not match the existing copies.");
             } else {
-                sum += digit * 3;
+                addCopy(entry.getKey());
+                result.accept(entry.getValue());
             }
         }
 
-        // Calculate the check digit
-        int checkDigit = 10 - (sum % 10);
-        if (checkDigit == 10) {
-            checkDigit = 0;
+        // Write all remaining books in a single batch.
+        if (!toAdd.isEmpty()) {
+            databaseService.addBooks(toAdd);
+            indexBooks(toAdd.values());
+        }
+
+        // Add the duplicates within the batch as copies of the books written or found above.
+        for (Book book : copies) {
+            String ISBN = book.getISBN();
+            Book stored = existing.containsKey(ISBN) ? existing.get(ISBN) : toAdd.get(ISBN);
+            if (!isSameBook(stored, book)) {
+                result.reject(book, "Book does not match the existing copies.");
+            } else {
+                addCopy(ISBN);
+                result.accept(book);
+            }
         }
+        return result;
+    }
 
-        // Check if the calculated check digit matches the last digit of the ISBN
-        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+    /**
+     * Checks whether a book is a copy of a stored book, having the same title and author.
+     *
+     * @param stored The book stored in the database.
+     * @param book   The book being added.
+     * @return true if the titles and the authors are equal, false otherwise.
+     */
+    private static boolean isSameBook(Book stored, Book book) {
+        return Objects.equals(stored.getTitle(), book.getTitle()) && Objects.equals(stored.getAuthor(), book.getAuthor());
+    }
+
+    /**
+     * Adds a copy of a book that is already in the database, first to the database and then to the inventory.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    private void addCopy(String ISBN) {
+        // Start tracking the book before the database counts the new copy, so that it is counted once.
+        CopyInventory.Copies copies = copyInventory.copiesOf(ISBN);
+        copyDatabaseService.addCopy(ISBN);
+        copies.addCopy();
+    }
+
+    /**
+     * Adds books to the configured indexes. When reviews are indexed, the books are added to the
+     * full-text index in the background, once their reviews are fetched, so adding books never
+     * waits for the review service.
+     *
+     * @param books The books to be indexed.
+     */
+    private void indexBooks(Collection<Book> books) {
+        if (catalogIndex != null) {
+            for (Book book : books) {
+                catalogIndex.add(book);
+            }
+        }
+        if (searchIndex == null) {
+            return;
+        }
+        if (reviewIndexer != null) {
+            List<Book> pending = new ArrayList<>(books);
+            try {
+                reviewIndexer.execute(() -> indexWithReviews(pending));
+                return;
+            } catch (RejectedExecutionException e) {
+                // Index the books without their reviews rather than not at all.
+            }
+        }
+        for (Book book : books) {
+            searchIndex.add(book.getISBN(), book.getTitle(), book.getAuthor(), Collections.<String>emptyList());
+        }
+    }
+
+    /**
+     * Fetches the reviews of books and adds the books to the full-text index. A single review
+     * session is leased for all the books and replaced only if it fails. Reviews are optional for
+     * indexing, so a book whose reviews cannot be fetched, for any reason, is indexed without them
+     * and the failure is reported to the metrics.
+     *
+     * @param books The books to be indexed.
+     */
+    private void indexWithReviews(List<Book> books) {
+        ReviewService reviewService = null;
+        try {
+            for (Book book : books) {
+                String ISBN = book.getISBN();
+                if (searchIndex.contains(ISBN)) {
+                    continue;
+                }
+                List<String> reviews = Collections.emptyList();
+                long fetchStart = System.nanoTime();
+                Throwable fetchFailure = null;
+                try {
+                    if (reviewService == null) {
+                        reviewService = reviewServicePool.acquire();
+                    }
+                    List<String> fetched = reviewService.getReviewsForBook(ISBN);
+                    if (fetched != null) {
+                        reviews = fetched;
+                    }
+                } catch (RuntimeException e) {
+                    // A failure of one book must not leave the rest of the batch unindexed.
+                    fetchFailure = e;
+                    if (reviewService != null) {
+                        reviewServicePool.invalidate(reviewService);
+                        reviewService = null;
+                    }
+                } finally {
+                    metrics.recordReviewFetch(System.nanoTime() - fetchStart, fetchFailure);
+                }
+                searchIndex.add(ISBN, book.getTitle(), book.getAuthor(), reviews);
+            }
+        } finally {
+            if (reviewService != null) {
+                reviewServicePool.release(reviewService);
+            }
+        }
+    }
+
+    /**
+     * Adds every book already in the database to the configured indexes, such as a catalog
+     * restored from storage that was not added through this library. Books that are already
+     * indexed keep their entries.
+     *
+     * @throws IllegalStateException         If no index is configured.
+     * @throws UnsupportedOperationException If the database cannot list its books.
+     */
+    public void indexExistingBooks() {
+        timed(LibraryMetrics.Operation.INDEX_EXISTING_BOOKS, () -> {
+            if (catalogIndex == null && searchIndex == null) {
+                throw new IllegalStateException("Indexes are not configured.");
+            }
+            indexBooks(databaseService.getAllBooks());
+        });
+    }
+
+    /**
+     * Validates a book's properties before it is added to the library.
+     *
+     * @param book The book to be validated.
+     * @return The reason the book is invalid, or null if it is valid.
+     */
+    private String validateBook(Book book) {
+        if (book == null) {
+            return "Invalid book.";
+        } else if (!IsbnValidator.isValid(book.getISBN())){
+            return "Invalid ISBN.";
+        } else if (book.getTitle() == null || book.getTitle().equals("")) {
+            return "Invalid title.";
+        } else if (!isAuthorValid(book.getAuthor())) {
+            return "Invalid author.";
+        } else if (book.isBorrowed()) {
+            return "Book with invalid borrowed state.";
+        }
+        return null;
     }
 
     /**
@@ -145,15 +413,14 @@ public class Library {
      * @param user The user to be registered.
      */
     public void registerUser(User user) {
+        timed(LibraryMetrics.Operation.REGISTER_USER, () -> doRegisterUser(user));
+    }
+
+    private void doRegisterUser(User user) {
         // Multiple checks to validate the user object's properties.
-        if (user == null) {
-            throw new IllegalArgumentException("Invalid user.");
-        } else if (user.getId() == null || !user.getId().matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
-        } else if (user.getName() == null || user.getName().equals("")) {
-            throw new IllegalArgumentException("Invalid user name.");
-        } else if (user.getNotificationService() == null) {
-            throw new IllegalArgumentException("Invalid notification service.");
+        String invalidReason = validateUser(user);
+        if (invalidReason != null) {
+            throw new IllegalArgumentException(invalidReason);
         }
 
         // Before registering, check if a user with the given Id already exists.
@@ -165,6 +432,74 @@ public class Library {
         databaseService.registerUser(user.getId(), user);
     }
 
+    /**
+     * Registers a batch of users with the library.
+     * Users are validated in a single pass, checked for existence with one multi-get
+     * and written in one batch. Invalid or already registered users are skipped and reported.
+     *
+     * @param users The users to be registered.
+     * @return A report of which users were registered and why the others were rejected.
+     */
+    public BatchResult<User> registerUsers(Collection<User> users) {
+        return timed(LibraryMetrics.Operation.REGISTER_USERS, () -> doRegisterUsers(users));
+    }
+
+    private BatchResult<User> doRegisterUsers(Collection<User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Invalid users.");
+        }
+
+        BatchResult<User> result = new BatchResult<>();
+
+        // Validate every user, rejecting duplicates within the batch itself.
+        Map<String, User> candidates = new LinkedHashMap<>();
+        for (User user : users) {
+            String invalidReason = validateUser(user);
+            if (invalidReason != null) {
+                result.reject(user, invalidReason);
+            } else if (candidates.putIfAbsent(user.getId(), user) != null) {
+                result.reject(user, "User already exists.");
+            }
+        }
+
+        // Look up all candidates at once, and skip the ones already registered.
+        Map<String, User> existing = databaseService.getUsersByIds(candidates.keySet());
+        Map<String, User> toRegister = new LinkedHashMap<>();
+        for (Map.Entry<String, User> entry : candidates.entrySet()) {
+            if (existing.containsKey(entry.getKey())) {
+                result.reject(entry.getValue(), "User already exists.");
+            } else {
+                toRegister.put(entry.getKey(), entry.getValue());
+                result.accept(entry.getValue());
+            }
+        }
+
+        // Write all remaining users in a single batch.
+        if (!toRegister.isEmpty()) {
+            databaseService.registerUsers(toRegister);
+        }
+        return result;
+    }
+
+    /**
+     * Validates a user's properties before they are registered with the library.
+     *
+     * @param user The user to be validated.
+     * @return The reason the user is invalid, or null if they are valid.
+     */
+    private String validateUser(User user) {
+        if (user == null) {
+            return "Invalid user.";
+        } else if (!UserIdValidator.isValid(user.getId())) {
+            return "Invalid user Id.";
+        } else if (user.getName() == null || user.getName().equals("")) {
+            return "Invalid user name.";
+        } else if (user.getNotificationService() == null) {
+            return "Invalid notification service.";
+        }
+        return null;
+    }
+
 
     /**
      * Borrows a book for a user.
@@ -173,9 +508,13 @@ public class Library {
      * @param userId The Id of the user borrowing the book.
      */
     public void borrowBook(String ISBN, String userId) {
+        timed(LibraryMetrics.Operation.BORROW_BOOK, () -> doBorrowBook(ISBN, userId));
+    }
+
+    private void doBorrowBook(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        if (!IsbnValidator.isValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
@@ -184,31 +523,70 @@ public class Library {
 
         // If no book is found for the given ISBN, throw an exception.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            throw new BookNotFoundException("Book not found!", false);
         }
 
         // Validate the user Id's format (should be a 12-digit number).
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!UserIdValidator.isValid(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
         // Check if the user Id's corresponds to a registered user in the database.
         // If not, throw an exception indicating the user is not registered.
         if (databaseService.getUserById(userId) == null) {
-            throw new UserNotRegisteredException("User not found!");
+            throw new UserNotRegisteredException("User not found!", false);
+        }
+
+        // With multiple copies, take one off the shelf instead of marking the book as borrowed.
+        if (copyInventory != null) {
+            if (!borrowCopy(ISBN, userId)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!", false);
+            }
+            return;
         }
 
         // If the book is already borrowed, throw an exception.
         if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            throw new BookAlreadyBorrowedException("Book is already borrowed!", false);
         }
 
-        // Mark the book as borrowed.
-        book.borrow();
+        // Mark the book as borrowed and record the borrowing transaction in the database in one
+        // atomic step. If a concurrent borrower won the race since the check above, report it as such.
+        if (!databaseService.tryBorrow(ISBN, userId, book)) {
+            throw new BookAlreadyBorrowedException("Book is already borrowed!", false);
+        }
+        borrowLedger.recordBorrow(ISBN, userId);
+    }
 
-        // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
-        databaseService.borrowBook(ISBN, userId);
+    /**
+     * Takes a copy of a book off the shelf for a user, unless every copy is borrowed
+     * or the user already holds one.
+     *
+     * The loan is recorded in the database once the copy is taken, and undone if that fails.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the copy.
+     * @return true if the copy was borrowed, false otherwise.
+     */
+    private boolean borrowCopy(String ISBN, String userId) {
+        CopyInventory.Copies copies = copyInventory.copiesOf(ISBN);
+        if (!copies.tryCheckout()) {
+            return false;
+        }
+        if (!borrowLedger.recordBorrow(ISBN, userId)) {
+            // The user already holds a copy, so put this one back.
+            copies.checkin();
+            return false;
+        }
+        try {
+            copyDatabaseService.borrowCopy(ISBN, userId);
+        } catch (RuntimeException e) {
+            borrowLedger.recordReturn(ISBN, userId);
+            copies.checkin();
+            throw e;
+        }
+        return true;
     }
 
     /**
@@ -217,31 +595,446 @@ public class Library {
      * @param ISBN The International Standard Book Number of the book.
      */
     public void returnBook(String ISBN) {
-        
-        // Validate the ISBN. If it's not valid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+        timed(LibraryMetrics.Operation.RETURN_BOOK, () -> {
+            requireValidISBN(ISBN);
+            doReturnBook(ISBN, null);
+        });
+    }
+
+    /**
+     * Returns a book previously borrowed by the given user.
+     * When the library holds several copies of a book, this closes that user's loan,
+     * and {@link #returnBook(String)} is rejected, since it cannot tell the borrowers apart.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user returning the book.
+     */
+    public void returnBook(String ISBN, String userId) {
+        timed(LibraryMetrics.Operation.RETURN_BOOK, () -> {
+            requireValidISBN(ISBN);
+            if (!UserIdValidator.isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
+            doReturnBook(ISBN, userId);
+        });
+    }
+
+    private void doReturnBook(String ISBN, String userId) {
+        requireReturningUser(userId);
 
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            throw new BookNotFoundException("Book not found!", false);
+        }
+
+        // With multiple copies, close the user's loan and put its copy back on the shelf.
+        if (copyInventory != null) {
+            if (!returnCopy(ISBN, userId)) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!", false);
+            }
+            return;
+        }
+
+        // If a specific borrower is given, only they can return the book.
+        if (userId != null && !userId.equals(borrowLedger.getBorrower(ISBN))) {
+            throw new BookNotBorrowedException("Book wasn't borrowed!", false);
         }
 
         // Check if the book is currently borrowed. If not, it means it was never borrowed
         // or it has already been returned, therefore throw an exception.
         if (!book.isBorrowed()) {
-            throw new BookNotBorrowedException("Book wasn't borrowed!");
+            throw new BookNotBorrowedException("Book wasn't borrowed!", false);
+        }
+
+        // Change the status of the book to not borrowed and update the database in one atomic step.
+        // If a concurrent return won the race since the check above, report it as not borrowed.
+        if (!closeLoan(ISBN, userId, book)) {
+            throw new BookNotBorrowedException("Book wasn't borrowed!", false);
+        }
+    }
+
+    /**
+     * Returns a single-copy book in the database and then closes its loan in the ledger.
+     * The ledger is checked before, as the database may not know the borrowers; the database checks
+     * the borrower again as it returns the book, if it does.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the returning user, or null to accept any borrower.
+     * @param book   The book stored in the database.
+     * @return true if the book was returned by this call, false if it is not borrowed.
+     */
+    private boolean closeLoan(String ISBN, String userId, Book book) {
+        String borrower = databaseService.tryReturn(ISBN, userId, book);
+        if (borrower == null) {
+            return false;
+        }
+        if (borrower.isEmpty()) {
+            borrowLedger.recordCompletedReturn(ISBN);
+        } else {
+            borrowLedger.recordCompletedReturn(ISBN, borrower);
+        }
+        return true;
+    }
+
+    /**
+     * Rejects an invalid ISBN, before any other argument of a return is checked.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    private static void requireValidISBN(String ISBN) {
+        // Validate the ISBN. If it's not valid, throw an exception.
+        if (!IsbnValidator.isValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+    }
+
+    /**
+     * Rejects a return without a user when the library holds several copies of books.
+     *
+     * @param userId The Id of the returning user, or null if none was given.
+     */
+    private void requireReturningUser(String userId) {
+        if (copyInventory != null && userId == null) {
+            throw new IllegalStateException("Returning a copy requires the user Id.");
+        }
+    }
+
+    /**
+     * Closes a user's loan of a book and puts its copy back on the shelf.
+     * The loan is closed in the database first, and reopened in the ledger if that fails.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the returning user.
+     * @return true if a copy was returned, false if the user does not hold the book.
+     */
+    private boolean returnCopy(String ISBN, String userId) {
+        if (!borrowLedger.recordReturn(ISBN, userId)) {
+            return false;
+        }
+        try {
+            copyDatabaseService.returnCopy(ISBN, userId);
+        } catch (RuntimeException e) {
+            borrowLedger.recordBorrow(ISBN, userId);
+            throw e;
+        }
+        copyInventory.copiesOf(ISBN).checkin();
+        return true;
+    }
+
+    /**
+     * Attempts to borrow a book for a user, reporting routine outcomes as a result instead of
+     * throwing an exception. Invalid arguments are still rejected with an exception.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return The outcome of the attempt.
+     */
+    public BorrowResult tryBorrowBook(String ISBN, String userId) {
+        return timed(LibraryMetrics.Operation.TRY_BORROW_BOOK, () -> doTryBorrowBook(ISBN, userId));
+    }
+
+    private BorrowResult doTryBorrowBook(String ISBN, String userId) {
+        // Validate the ISBN and the user Id's format. If either is invalid, throw an exception.
+        if (!IsbnValidator.isValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        if (!UserIdValidator.isValid(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+
+        // Retrieve the book, checking the same conditions as borrowBook in the same order.
+        Book book = databaseService.getBookByISBN(ISBN);
+        if (book == null) {
+            return BorrowResult.BOOK_NOT_FOUND;
+        }
+        if (databaseService.getUserById(userId) == null) {
+            return BorrowResult.USER_NOT_REGISTERED;
+        }
+        if (copyInventory != null) {
+            return borrowCopy(ISBN, userId) ? BorrowResult.BORROWED : BorrowResult.ALREADY_BORROWED;
+        }
+        if (book.isBorrowed()) {
+            return BorrowResult.ALREADY_BORROWED;
+        }
+
+        // Flip the book's state and record the borrow in one step. If a concurrent borrower won
+        // the race since the check above, report it as already borrowed.
+        if (!databaseService.tryBorrow(ISBN, userId, book)) {
+            return BorrowResult.ALREADY_BORROWED;
+        }
+        borrowLedger.recordBorrow(ISBN, userId);
+        return BorrowResult.BORROWED;
+    }
+
+    /**
+     * Attempts to return a previously borrowed book, reporting routine outcomes as a result instead
+     * of throwing an exception. An invalid ISBN is still rejected with an exception.
+     * When the library holds several copies of a book, use {@link #tryReturnBook(String, String)}.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The outcome of the attempt.
+     */
+    public ReturnResult tryReturnBook(String ISBN) {
+        return timed(LibraryMetrics.Operation.TRY_RETURN_BOOK, () -> {
+            requireValidISBN(ISBN);
+            return doTryReturnBook(ISBN, null);
+        });
+    }
+
+    /**
+     * Attempts to return a book previously borrowed by the given user, reporting routine outcomes
+     * as a result instead of throwing an exception. Invalid arguments are still rejected with an exception.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user returning the book.
+     * @return The outcome of the attempt.
+     */
+    public ReturnResult tryReturnBook(String ISBN, String userId) {
+        return timed(LibraryMetrics.Operation.TRY_RETURN_BOOK, () -> {
+            requireValidISBN(ISBN);
+            if (!UserIdValidator.isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
+            return doTryReturnBook(ISBN, userId);
+        });
+    }
+
+    private ReturnResult doTryReturnBook(String ISBN, String userId) {
+        requireReturningUser(userId);
+
+        // Retrieve the book associated with the ISBN from the database.
+        Book book = databaseService.getBookByISBN(ISBN);
+        if (book == null) {
+            return ReturnResult.BOOK_NOT_FOUND;
+        }
+        if (copyInventory != null) {
+            return returnCopy(ISBN, userId) ? ReturnResult.RETURNED : ReturnResult.NOT_BORROWED;
+        }
+
+        // Flip the book's state and record the return in one step, so that of two concurrent
+        // returns only one succeeds. If a specific borrower is given, only they can return the book.
+        if (userId != null && !userId.equals(borrowLedger.getBorrower(ISBN))) {
+            return ReturnResult.NOT_BORROWED;
+        }
+        return closeLoan(ISBN, userId, book) ? ReturnResult.RETURNED : ReturnResult.NOT_BORROWED;
+    }
+
+    /**
+     * Retrieves the books a user currently holds.
+     * Loans made through this library and loans open in the database when it was built are tracked.
+     *
+     * @param userId The Id of the user.
+     * @return The user's borrowed books, in ISBN order.
+     */
+    public List<Book> getLoansForUser(String userId) {
+        return timed(LibraryMetrics.Operation.GET_LOANS_FOR_USER, () -> doGetLoansForUser(userId));
+    }
+
+    private List<Book> doGetLoansForUser(String userId) {
+        if (!UserIdValidator.isValid(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return resolveBooks(borrowLedger.getLoans(userId));
+    }
+
+    /**
+     * Retrieves the user currently holding a book.
+     * Loans made through this library and loans open in the database when it was built are tracked.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The borrowing user, one of them if several copies are borrowed, or null if the book is not borrowed.
+     */
+    public User getBorrowerOf(String ISBN) {
+        return timed(LibraryMetrics.Operation.GET_BORROWER_OF, () -> doGetBorrowerOf(ISBN));
+    }
+
+    private User doGetBorrowerOf(String ISBN) {
+        if (!IsbnValidator.isValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
         }
+        String userId = borrowLedger.getBorrower(ISBN);
+        return userId == null ? null : databaseService.getUserById(userId);
+    }
+
+    /**
+     * Retrieves the number of copies of a book the library holds.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The number of copies, borrowed or not.
+     */
+    public int getCopyCount(String ISBN) {
+        return findCopies(ISBN).getTotal();
+    }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
+    /**
+     * Retrieves the number of copies of a book that can currently be borrowed.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The number of copies on the shelf.
+     */
+    public int getAvailableCopies(String ISBN) {
+        return findCopies(ISBN).getAvailable();
+    }
+
+    private CopyInventory.Copies findCopies(String ISBN) {
+        if (copyInventory == null) {
+            throw new IllegalStateException("Multi-copy inventory is not configured.");
+        }
+        if (!IsbnValidator.isValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        Book book = databaseService.getBookByISBN(ISBN);
+        if (book == null) {
+            throw new BookNotFoundException("Book not found!", false);
+        }
+        return copyInventory.copiesOf(ISBN);
+    }
 
-        // Update the database to reflect the returned status of the book.
-        databaseService.returnBook(ISBN);
+    /**
+     * Checks whether a book can currently be borrowed.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @param book The book stored in the database.
+     * @return true if a copy is on the shelf, false otherwise.
+     */
+    private boolean isAvailable(String ISBN, Book book) {
+        if (copyInventory != null) {
+            return copyInventory.copiesOf(ISBN).getAvailable() > 0;
+        }
+        return !book.isBorrowed();
+    }
+
+    /**
+     * Checks the availability of several books with a single database lookup.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books to check.
+     * @return The availability of each requested book, in the order the ISBNs were given.
+     */
+    public Map<String, BookAvailability> getAvailability(Collection<String> ISBNs) {
+        return timed(LibraryMetrics.Operation.GET_AVAILABILITY, () -> doGetAvailability(ISBNs));
+    }
+
+    private Map<String, BookAvailability> doGetAvailability(Collection<String> ISBNs) {
+        if (ISBNs == null) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+
+        // Validate every ISBN before touching the database.
+        for (String ISBN : ISBNs) {
+            if (!IsbnValidator.isValid(ISBN)) {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            }
+        }
+
+        // Retrieve all requested books at once and map each one to its availability.
+        Map<String, Book> books = databaseService.getBooksByISBN(ISBNs);
+        Map<String, BookAvailability> availability = new LinkedHashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = books.get(ISBN);
+            if (book == null) {
+                availability.put(ISBN, BookAvailability.NOT_FOUND);
+            } else if (!isAvailable(ISBN, book)) {
+                availability.put(ISBN, BookAvailability.BORROWED);
+            } else {
+                availability.put(ISBN, BookAvailability.AVAILABLE);
+            }
+        }
+        return availability;
+    }
+
+    /**
+     * Finds the books of an author, ignoring case and extra whitespace.
+     * Only books added through this library, or indexed with {@link #indexExistingBooks()}, are indexed.
+     *
+     * @param author The name of the author.
+     * @return The author's books, in ISBN order.
+     */
+    public List<Book> findBooksByAuthor(String author) {
+        return timed(LibraryMetrics.Operation.FIND_BOOKS_BY_AUTHOR, () -> doFindBooksByAuthor(author));
+    }
+
+    private List<Book> doFindBooksByAuthor(String author) {
+        if (author == null || author.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid author.");
+        }
+        return resolveBooks(requireCatalogIndex().findByAuthor(author));
+    }
+
+    /**
+     * Finds the books whose title starts with a prefix, ignoring case and extra whitespace.
+     * Only books added through this library, or indexed with {@link #indexExistingBooks()}, are indexed.
+     *
+     * @param prefix The beginning of the title.
+     * @return The matching books, in title order.
+     */
+    public List<Book> findBooksByTitlePrefix(String prefix) {
+        return timed(LibraryMetrics.Operation.FIND_BOOKS_BY_TITLE_PREFIX, () -> doFindBooksByTitlePrefix(prefix));
+    }
+
+    private List<Book> doFindBooksByTitlePrefix(String prefix) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid title prefix.");
+        }
+        return resolveBooks(requireCatalogIndex().findByTitlePrefix(prefix));
+    }
+
+    /**
+     * Searches the books by keywords in their title, author and, if configured, reviews.
+     * Only books containing every keyword match; they are ranked by relevance.
+     * Only books added through this library, or indexed with {@link #indexExistingBooks()}, are indexed.
+     *
+     * @param query The keywords to search for.
+     * @param limit The maximum number of books to return.
+     * @return The matching books, most relevant first.
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        return timed(LibraryMetrics.Operation.SEARCH_BOOKS, () -> doSearchBooks(query, limit));
+    }
+
+    private List<Book> doSearchBooks(String query, int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid query.");
+        }
+        if (searchIndex == null) {
+            throw new IllegalStateException("Full-text search is not configured.");
+        }
+        List<SearchHit> hits = searchIndex.search(query, limit);
+        List<String> ISBNs = new ArrayList<>(hits.size());
+        for (SearchHit hit : hits) {
+            ISBNs.add(hit.getISBN());
+        }
+        return resolveBooks(ISBNs);
+    }
+
+    private CatalogIndex requireCatalogIndex() {
+        if (catalogIndex == null) {
+            throw new IllegalStateException("Catalog indexes are not configured.");
+        }
+        return catalogIndex;
+    }
+
+    /**
+     * Retrieves indexed books with a single database lookup, keeping the order of the index.
+     *
+     * @param ISBNs The ISBNs of the books.
+     * @return The books that are still in the database.
+     */
+    private List<Book> resolveBooks(List<String> ISBNs) {
+        if (ISBNs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Book> found = databaseService.getBooksByISBN(ISBNs);
+        List<Book> books = new ArrayList<>(ISBNs.size());
+        for (String ISBN : ISBNs) {
+            Book book = found.get(ISBN);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
     }
 
     /**
@@ -251,15 +1044,74 @@ public class Library {
      * @param userId The Id of the user to whom the reviews are to be sent.
      */
     public void notifyUserWithBookReviews(String ISBN, String userId) {
+        timed(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, () -> awaitNotification(sendBookReviews(ISBN, userId)));
+    }
+
+    /**
+     * Runs an operation, reporting its latency and outcome to the library's metrics.
+     *
+     * @param operation The operation.
+     * @param action    The work of the operation.
+     * @param <T>       The type of the operation's result.
+     * @return The result of the operation.
+     */
+    private <T> T timed(LibraryMetrics.Operation operation, Supplier<T> action) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            recordOperation(operation, start, e);
+            throw e;
+        }
+        recordOperation(operation, start, null);
+        return result;
+    }
+
+    /**
+     * Runs an operation without a result, reporting its latency and outcome to the library's metrics.
+     *
+     * @param operation The operation.
+     * @param action    The work of the operation.
+     */
+    private void timed(LibraryMetrics.Operation operation, Runnable action) {
+        timed(operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Reports a completed operation to the library's metrics.
+     *
+     * @param operation The operation.
+     * @param start     The value of {@link System#nanoTime()} when the operation started.
+     * @param failure   The exception the operation failed with, or null if it succeeded.
+     */
+    private void recordOperation(LibraryMetrics.Operation operation, long start, Throwable failure) {
+        metrics.recordOperation(operation, System.nanoTime() - start, failure);
+    }
+
+    /**
+     * Fetches the reviews of a specified book and starts sending them to a user.
+     * Validation, lookups and the review fetch happen on the calling thread, and their failures
+     * are thrown directly; only the delivery of the notification may complete later.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed once the notification was sent, or completed exceptionally with a
+     *         notification exception once all retry attempts failed.
+     */
+    private CompletableFuture<Void> sendBookReviews(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        if (!IsbnValidator.isValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
         // Validate the user Id format (should be a 12-digit number).
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!UserIdValidator.isValid(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
@@ -268,51 +1120,172 @@ public class Library {
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            throw new BookNotFoundException("Book not found!", false);
         }
 
+        return sendBookReviews(ISBN, userId, book);
+    }
+
+    /**
+     * Fetches the reviews of an already validated and retrieved book and starts sending them to a user.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The validated Id of the user to whom the reviews are to be sent.
+     * @param book The book with the given ISBN.
+     * @return A future completed once the notification was sent, or completed exceptionally with a
+     *         notification exception once all retry attempts failed.
+     */
+    private CompletableFuture<Void> sendBookReviews(String ISBN, String userId, Book book) {
         // Retrieve the user associated with the user Id from the database.
         User user = databaseService.getUserById(userId);
 
         // If the user is not found in the database, throw an exception.
         if (user == null) {
-            throw new UserNotRegisteredException("User not found!");
+            throw new UserNotRegisteredException("User not found!", false);
         }
 
-        // Fetch the list of reviews for the specified book using the review service.
-        List<String> reviews;
+        // Lease a review service session. If none can be obtained, the service is unavailable.
+        ReviewService reviewService;
         try {
-            reviews = reviewService.getReviewsForBook(ISBN);
+            reviewService = reviewServicePool.acquire();
+        } catch (ReviewException e) {
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+
+        // Fetch the reviews for the specified book using the review service, and construct the
+        // notification message containing the book's title and its reviews.
+        String notificationMessage;
+        boolean sessionFailed = false;
+        long fetchStart = System.nanoTime();
+        Throwable fetchFailure = null;
+        try {
+            if (reviewMessageBuilder.isBounded()) {
+                // Stream only as many reviews as the message can hold, while the session is still leased.
+                try (Stream<String> reviews = reviewService.streamReviewsForBook(ISBN, reviewMessageBuilder.getMaxReviews())) {
+                    notificationMessage = reviews == null ? null
+                            : reviewMessageBuilder.build(book.getTitle(), reviews.iterator());
+                }
+            } else {
+                List<String> reviews = reviewService.getReviewsForBook(ISBN);
+                notificationMessage = reviews == null ? null
+                        : reviewMessageBuilder.build(book.getTitle(), reviews.iterator());
+            }
 
             // If no reviews are found or the review list is empty, throw an exception.
-            if (reviews == null || reviews.isEmpty()) {
+            if (notificationMessage == null) {
                 throw new NoReviewsFoundException("No reviews found!");
             }
         } catch (ReviewException e) {
             // If there's an issue fetching the reviews, throw a service unavailable exception.
+            sessionFailed = true;
+            fetchFailure = e;
             throw new ReviewServiceUnavailableException("Review service unavailable!");
         } finally {
-            // Always close the review service connection after attempting to fetch the reviews.
-            reviewService.close();
+            metrics.recordReviewFetch(System.nanoTime() - fetchStart, fetchFailure);
+
+            // Always hand the session back after attempting to fetch the reviews,
+            // discarding it if it failed.
+            if (sessionFailed) {
+                reviewServicePool.invalidate(reviewService);
+            } else {
+                reviewServicePool.release(reviewService);
+            }
         }
 
-        // Construct the notification message containing the book's title and its reviews.
-        String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
+        // Attempt to send the notification to the user, retrying as the retry policy allows.
+        // If all retry attempts fail, the future completes with a notification exception.
+        return notificationRetrier.send(userId, user, notificationMessage);
+    }
 
-        // Attempt to send the notification to the user. If it fails, retry up to 5 times.
-        int retryCount = 0;
-        while (retryCount < 5) {
-            try {
-                user.sendNotification(notificationMessage);
-                return;
-            } catch (NotificationException e) {
-                retryCount++;
-                System.err.println("Notification failed! Retrying attempt " + retryCount + "/5");
+    /**
+     * Schedules a review notification in the background without waiting for it.
+     * Notifications for the same user and book are sent at most once per deduplication window;
+     * if a notification fails, the next lookup may try again.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The validated Id of the user to whom the reviews are to be sent.
+     * @param book The book with the given ISBN.
+     */
+    private void scheduleBookReviews(String ISBN, String userId, Book book) {
+        Long claim = reviewNotificationDeduplicator.tryAcquire(userId, ISBN);
+        if (claim == null) {
+            return;
+        }
+        notificationDispatcher.submit(() -> {
+                    // Expired claims are purged here, off the thread looking the book up.
+                    reviewNotificationDeduplicator.purgeExpiredIfNeeded();
+                    return sendBookReviews(ISBN, userId, book);
+                })
+                .thenCompose(Function.identity())
+                .whenComplete((ignored, failure) -> {
+                    if (failure != null) {
+                        recordNotificationFailure(failure);
+                        reviewNotificationDeduplicator.release(userId, ISBN, claim);
+                    }
+                });
+    }
+
+    /**
+     * Reports a notification that failed after the lookup that triggered it returned.
+     *
+     * @param failure The exception the delivery completed with, possibly wrapped by a dependent stage.
+     */
+    private void recordNotificationFailure(Throwable failure) {
+        metrics.recordNotificationFailure(failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure);
+    }
+
+    /**
+     * Waits for a notification to be delivered, rethrowing the exception it failed with.
+     *
+     * @param delivery The pending notification delivery.
+     */
+    private static void awaitNotification(CompletableFuture<Void> delivery) {
+        try {
+            delivery.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new NotificationException("Notification failed!");
         }
+    }
 
-        // If all retry attempts fail, throw a notification exception.
-        throw new NotificationException("Notification failed!");
+    /**
+     * Retrieves the counters of notification attempts, retries and failures.
+     *
+     * @return A snapshot of the notification retry statistics.
+     */
+    public RetryStats getNotificationRetryStats() {
+        return notificationRetrier.stats();
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book in the background.
+     * The work is handed to the library's notification dispatcher, so the caller does not wait
+     * for the review fetch or the notification to be sent.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed once the user was notified, or completed exceptionally with the
+     *         exception {@link #notifyUserWithBookReviews(String, String)} would have thrown.
+     */
+    public CompletableFuture<Void> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        long start = System.nanoTime();
+        // Asynchronous notifications require a dispatcher to run them.
+        if (notificationDispatcher == null) {
+            IllegalStateException e = new IllegalStateException("Asynchronous notifications are not configured.");
+            recordOperation(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS_ASYNC, start, e);
+            throw e;
+        }
+        // The dispatcher only runs the lookups and the review fetch; delayed retries are scheduled
+        // separately, so no worker is held while waiting between attempts.
+        // The operation is timed until the notification is delivered or given up on.
+        CompletableFuture<Void> delivery = notificationDispatcher.submit(() -> sendBookReviews(ISBN, userId))
+                .thenCompose(Function.identity());
+        delivery.whenComplete((ignored, failure) -> recordOperation(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS_ASYNC, start,
+                failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure));
+        return delivery;
     }
 
     /**
@@ -323,14 +1296,18 @@ public class Library {
      * @return       The book with the given ISBN if found, and notifies the user with its reviews.
      */
     public Book getBookByISBN(String ISBN, String userId) {
+        return timed(LibraryMetrics.Operation.GET_BOOK_BY_ISBN, () -> doGetBookByISBN(ISBN, userId));
+    }
+
+    private Book doGetBookByISBN(String ISBN, String userId) {
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        if (!IsbnValidator.isValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
         // Validate the user Id format (should be a 12-digit number). 
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!UserIdValidator.isValid(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
@@ -339,24 +1316,237 @@ public class Library {
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            throw new BookNotFoundException("Book not found!", false);
         }
 
         // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book was already borrowed!");
+        if (!isAvailable(ISBN, book)) {
+            throw new BookAlreadyBorrowedException("Book was already borrowed!", false);
         }
 
         // Attempt to notify the user with the book's reviews.
         // This step is optional, so even if it fails, the book should still be returned.
-        try {
-            notifyUserWithBookReviews(ISBN, userId);
-        } catch (Exception e) {
-            System.out.println("Notification failed!");
+        // The ISBN and user Id were validated and the book retrieved above, so they are reused.
+        // Only the attempts made on this thread are awaited; delayed retries stay on the retry scheduler.
+        if (reviewNotificationDeduplicator != null) {
+            scheduleBookReviews(ISBN, userId, book);
+        } else {
+            try {
+                CompletableFuture<Void> delivery = sendBookReviews(ISBN, userId, book);
+                if (delivery.isDone()) {
+                    awaitNotification(delivery);
+                } else {
+                    delivery.whenComplete((ignored, failure) -> {
+                        if (failure != null) {
+                            recordNotificationFailure(failure);
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                metrics.recordNotificationFailure(e);
+            }
         }
 
         // Return the retrieved book.
         return book;
     }
-}
 
+    /**
+     * Builds a library together with its optional components.
+     */
+    public static class Builder {
+
+        private final DatabaseService databaseService;
+        private ReviewServicePool reviewServicePool;
+        private NotificationDispatcher notificationDispatcher;
+        private RetryPolicy retryPolicy = RetryPolicy.immediate(5);
+        private ScheduledExecutorService retryScheduler;
+        private boolean backgroundReviewNotifications;
+        private long deduplicationWindow;
+        private TimeUnit deduplicationUnit;
+        private ReviewMessageBuilder reviewMessageBuilder = ReviewMessageBuilder.unbounded();
+        private LibraryMetrics metrics = LibraryMetrics.NOOP;
+        private boolean catalogIndexes;
+        private boolean fullTextSearch;
+        private Executor reviewIndexer;
+        private boolean multiCopyInventory;
+
+        private Builder(DatabaseService databaseService) {
+            this.databaseService = databaseService;
+        }
+
+        /**
+         * Sets the review service, which is closed after every use.
+         *
+         * @param reviewService The service to fetch reviews for a book.
+         * @return This builder.
+         */
+        public Builder reviewService(ReviewService reviewService) {
+            this.reviewServicePool = ReviewServicePool.closingAfterUse(reviewService);
+            return this;
+        }
+
+        /**
+         * Sets the pool leasing review service sessions.
+         *
+         * @param reviewServicePool The pool of sessions of the service to fetch reviews for a book.
+         * @return This builder.
+         */
+        public Builder reviewServicePool(ReviewServicePool reviewServicePool) {
+            this.reviewServicePool = reviewServicePool;
+            return this;
+        }
+
+        /**
+         * Sets the dispatcher running notifications in the background.
+         *
+         * @param notificationDispatcher The dispatcher for asynchronous notifications.
+         * @return This builder.
+         */
+        public Builder notificationDispatcher(NotificationDispatcher notificationDispatcher) {
+            this.notificationDispatcher = notificationDispatcher;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding when failed notifications are retried.
+         * By default, a notification is attempted up to 5 times back-to-back.
+         *
+         * @param retryPolicy The policy deciding whether and when to retry.
+         * @param scheduler   The scheduler running delayed retries.
+         * @return This builder.
+         */
+        public Builder notificationRetryPolicy(RetryPolicy retryPolicy, ScheduledExecutorService scheduler) {
+            if (retryPolicy == null) {
+                throw new IllegalArgumentException("Invalid retry policy.");
+            }
+            if (scheduler == null) {
+                throw new IllegalArgumentException("Invalid scheduler.");
+            }
+            this.retryPolicy = retryPolicy;
+            this.retryScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Makes {@link Library#getBookByISBN(String, String)} return immediately and send the review
+         * notification in the background through the notification dispatcher. Notifications for the
+         * same user and book are sent at most once per deduplication window.
+         *
+         * @param deduplicationWindow The window within which repeated notifications are suppressed.
+         * @param unit                The time unit of the window.
+         * @return This builder.
+         */
+        public Builder backgroundReviewNotifications(long deduplicationWindow, TimeUnit unit) {
+            if (deduplicationWindow < 0 || unit == null) {
+                throw new IllegalArgumentException("Invalid deduplication window.");
+            }
+            this.backgroundReviewNotifications = true;
+            this.deduplicationWindow = deduplicationWindow;
+            this.deduplicationUnit = unit;
+            return this;
+        }
+
+        /**
+         * Sets the builder of review notification messages, which may cap their size.
+         * By default, every review is included in full.
+         *
+         * @param reviewMessageBuilder The builder of review notification messages.
+         * @return This builder.
+         */
+        public Builder reviewMessageBuilder(ReviewMessageBuilder reviewMessageBuilder) {
+            if (reviewMessageBuilder == null) {
+                throw new IllegalArgumentException("Invalid review message builder.");
+            }
+            this.reviewMessageBuilder = reviewMessageBuilder;
+            return this;
+        }
+
+        /**
+         * Sets the metrics receiving the latency and failure measurements of the library's operations.
+         * By default, nothing is measured.
+         *
+         * @param metrics The metrics to report to.
+         * @return This builder.
+         */
+        public Builder metrics(LibraryMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("Invalid metrics.");
+            }
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Enables the author and title indexes behind {@link Library#findBooksByAuthor(String)} and
+         * {@link Library#findBooksByTitlePrefix(String)}. The indexes are kept in memory and cover
+         * the books added through the library, and those indexed with {@link Library#indexExistingBooks()}.
+         *
+         * @return This builder.
+         */
+        public Builder catalogIndexes() {
+            this.catalogIndexes = true;
+            return this;
+        }
+
+        /**
+         * Enables the full-text index behind {@link Library#searchBooks(String, int)}.
+         * The index is kept in memory and covers the books added through the library, and those
+         * indexed with {@link Library#indexExistingBooks()}. Reviews are not indexed; use
+         * {@link #fullTextSearch(Executor)} to index them on an executor the caller owns.
+         *
+         * @return This builder.
+         */
+        public Builder fullTextSearch() {
+            this.fullTextSearch = true;
+            this.reviewIndexer = null;
+            return this;
+        }
+
+        /**
+         * Enables the full-text index behind {@link Library#searchBooks(String, int)}, including the
+         * reviews of every added book, fetched on the given executor. A book becomes searchable
+         * once its reviews are fetched.
+         *
+         * @param reviewIndexer The executor fetching and indexing the reviews of added books.
+         * @return This builder.
+         */
+        public Builder fullTextSearch(Executor reviewIndexer) {
+            if (reviewIndexer == null) {
+                throw new IllegalArgumentException("Invalid executor.");
+            }
+            this.fullTextSearch = true;
+            this.reviewIndexer = reviewIndexer;
+            return this;
+        }
+
+        /**
+         * Lets the library hold several copies of a book. Adding a book that already exists, with the
+         * same title and author, adds a copy, borrowing takes one of the available copies and returning
+         * puts it back. Copies and their loans are stored through the database's copy operations, so
+         * the database must be a {@link CopyDatabaseService}, a user holds at most one copy of a book,
+         * and returns must name the returning user.
+         *
+         * @return This builder.
+         */
+        public Builder multiCopyInventory() {
+            this.multiCopyInventory = true;
+            return this;
+        }
+
+        /**
+         * Builds the library.
+         *
+         * @return A new library using the configured components.
+         */
+        public Library build() {
+            if (backgroundReviewNotifications && notificationDispatcher == null) {
+                throw new IllegalStateException("Background notifications require a notification dispatcher.");
+            }
+            if (multiCopyInventory && !(databaseService instanceof CopyDatabaseService)) {
+                throw new IllegalStateException("Multi-copy inventory requires a database that holds copies.");
+            }
+            return new Library(this);
+        }
+    }
+}
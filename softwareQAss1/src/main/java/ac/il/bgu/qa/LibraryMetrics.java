@@ -0,0 +1,77 @@
+package ac.il.bgu.qa;
+
+/**
+ * Receives measurements of the library's operations.
+ * Implementations must be thread-safe and cheap, as they are called on every operation.
+ * Every method does nothing by default, so an implementation only overrides what it records.
+ */
+public interface LibraryMetrics {
+
+    /**
+     * The library operations that are measured.
+     */
+    enum Operation {
+        ADD_BOOK,
+        ADD_BOOKS,
+        REGISTER_USER,
+        REGISTER_USERS,
+        BORROW_BOOK,
+        RETURN_BOOK,
+        TRY_BORROW_BOOK,
+        TRY_RETURN_BOOK,
+        GET_BOOK_BY_ISBN,
+        GET_AVAILABILITY,
+        GET_LOANS_FOR_USER,
+        GET_BORROWER_OF,
+        FIND_BOOKS_BY_AUTHOR,
+        FIND_BOOKS_BY_TITLE_PREFIX,
+        SEARCH_BOOKS,
+        INDEX_EXISTING_BOOKS,
+        NOTIFY_USER_WITH_BOOK_REVIEWS,
+        NOTIFY_USER_WITH_BOOK_REVIEWS_ASYNC
+    }
+
+    // Metrics that discard every measurement.
+    LibraryMetrics NOOP = new LibraryMetrics() {
+    };
+
+    /**
+     * Records a completed library operation.
+     *
+     * @param operation     The operation.
+     * @param durationNanos The time the operation took, in nanoseconds.
+     * @param failure       The exception the operation failed with, or null if it succeeded.
+     */
+    default void recordOperation(Operation operation, long durationNanos, Throwable failure) {
+    }
+
+    /**
+     * Records a fetch of reviews from the review service.
+     *
+     * @param durationNanos The time the fetch took, in nanoseconds.
+     * @param failure       The exception the fetch failed with, or null if it succeeded.
+     */
+    default void recordReviewFetch(long durationNanos, Throwable failure) {
+    }
+
+    /**
+     * Records that a failed notification attempt is retried.
+     */
+    default void recordNotificationRetry() {
+    }
+
+    /**
+     * Records that a notification was given up on after its last failed attempt.
+     */
+    default void recordNotificationExhausted() {
+    }
+
+    /**
+     * Records a review notification that failed without failing the operation that sent it,
+     * such as the notification sent by a book lookup.
+     *
+     * @param failure The exception the notification failed with.
+     */
+    default void recordNotificationFailure(Throwable failure) {
+    }
+}
@@ -0,0 +1,98 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Suppresses repeated review notifications for the same user and book within a time window.
+ * <p>
+ * A claim older than the window is replaced when its pair is claimed again, so claiming never scans
+ * other pairs. Pairs that are not claimed again are dropped by {@link #purgeExpiredIfNeeded()}, which
+ * the library runs on its notification dispatcher rather than on the thread claiming.
+ */
+class NotificationDeduplicator {
+
+    // The number of claims kept before expired claims are first purged.
+    private static final int MIN_PURGE_THRESHOLD = 1024;
+
+    // The length of the deduplication window, in nanoseconds.
+    private final long windowNanos;
+    // The clock used to time the window, in nanoseconds.
+    private final LongSupplier clock;
+    // The time each (user, book) pair was last notified, keyed by "userId:ISBN".
+    private final ConcurrentHashMap<String, Long> lastNotified = new ConcurrentHashMap<>();
+    // The number of claims above which expired claims are purged, or Integer.MAX_VALUE during a purge.
+    private final AtomicInteger purgeThreshold = new AtomicInteger(MIN_PURGE_THRESHOLD);
+
+    NotificationDeduplicator(long window, TimeUnit unit, LongSupplier clock) {
+        this.windowNanos = unit.toNanos(window);
+        this.clock = clock;
+    }
+
+    /**
+     * Claims the right to notify a user about a book.
+     *
+     * @param userId The Id of the user to be notified.
+     * @param ISBN   The ISBN of the book.
+     * @return The claim, to be passed to {@link #release(String, String, Long)} if the notification
+     *         fails, or null if a notification for the pair was claimed within the window.
+     */
+    Long tryAcquire(String userId, String ISBN) {
+        Long now = clock.getAsLong();
+        String key = userId + ':' + ISBN;
+        Long previous = lastNotified.putIfAbsent(key, now);
+        if (previous == null) {
+            return now;
+        }
+        if (now - previous < windowNanos) {
+            return null;
+        }
+        return lastNotified.replace(key, previous, now) ? now : null;
+    }
+
+    /**
+     * Gives back a claim whose notification failed, so that the next attempt is not suppressed.
+     * A newer claim of the same pair is kept.
+     *
+     * @param userId The Id of the user.
+     * @param ISBN   The ISBN of the book.
+     * @param claim  The claim returned by {@link #tryAcquire(String, String)}.
+     */
+    void release(String userId, String ISBN, Long claim) {
+        lastNotified.remove(userId + ':' + ISBN, claim);
+    }
+
+    /**
+     * Drops the claims older than the window once the number of claims passes the threshold, then
+     * sets the threshold to twice the number kept, so the cost of a purge is spread over the claims
+     * made since the previous one. Only one caller purges at a time.
+     */
+    void purgeExpiredIfNeeded() {
+        int threshold = purgeThreshold.get();
+        if (lastNotified.size() <= threshold || !purgeThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+            return;
+        }
+        try {
+            long now = clock.getAsLong();
+            for (String key : lastNotified.keySet()) {
+                Long notifiedAt = lastNotified.get(key);
+                if (notifiedAt != null && now - notifiedAt >= windowNanos) {
+                    lastNotified.remove(key, notifiedAt);
+                }
+            }
+        } finally {
+            purgeThreshold.set((int) Math.min(Integer.MAX_VALUE - 1, Math.max(MIN_PURGE_THRESHOLD, 2L * lastNotified.size())));
+        }
+    }
+
+    /**
+     * Retrieves the number of (user, book) pairs with a claim.
+     *
+     * @return The number of claims kept.
+     */
+    int size() {
+        return lastNotified.size();
+    }
+}
@@ -0,0 +1,174 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs notification work in the background on an executor, with a bounded backlog.
+ * At most {@code capacity} tasks may be queued or running at once; when the backlog is full,
+ * the configured {@link OverflowPolicy} decides what happens to new tasks.
+ * Any executor may be used, including a virtual-thread-per-task executor on newer JVMs.
+ */
+public class NotificationDispatcher {
+
+    /**
+     * Decides what happens to a task submitted while the backlog is full.
+     */
+    public enum OverflowPolicy {
+        // Fail the task's future immediately with a RejectedExecutionException.
+        REJECT,
+        // Run the task synchronously on the submitting thread.
+        CALLER_RUNS,
+        // Block the submitting thread until the backlog has room.
+        BLOCK
+    }
+
+    // The executor that runs the notification tasks.
+    private final Executor executor;
+    // Permits for the tasks that may be queued or running at the same time.
+    private final Semaphore backlog;
+    // What to do with a task submitted while the backlog is full.
+    private final OverflowPolicy overflowPolicy;
+    // The executor created by this dispatcher, if any, which it is responsible for shutting down.
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Constructs a new dispatcher running on the given executor.
+     * The executor is not shut down by {@link #shutdown()}.
+     *
+     * @param executor       The executor that runs the notification tasks.
+     * @param capacity       The maximum number of tasks queued or running at the same time.
+     * @param overflowPolicy What to do with a task submitted while the backlog is full.
+     */
+    public NotificationDispatcher(Executor executor, int capacity, OverflowPolicy overflowPolicy) {
+        this(executor, capacity, overflowPolicy, null);
+    }
+
+    private NotificationDispatcher(Executor executor, int capacity, OverflowPolicy overflowPolicy,
+                                   ExecutorService ownedExecutor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Invalid overflow policy.");
+        }
+        this.executor = executor;
+        this.backlog = new Semaphore(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.ownedExecutor = ownedExecutor;
+    }
+
+    /**
+     * Creates a dispatcher backed by its own pool of daemon worker threads.
+     *
+     * @param workers        The number of worker threads.
+     * @param capacity       The maximum number of tasks queued or running at the same time.
+     * @param overflowPolicy What to do with a task submitted while the backlog is full.
+     * @return A new dispatcher, whose workers are stopped by {@link #shutdown()}.
+     */
+    public static NotificationDispatcher withWorkers(int workers, int capacity, OverflowPolicy overflowPolicy) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Invalid worker count.");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "library-notifier-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new NotificationDispatcher(pool, capacity, overflowPolicy, pool);
+    }
+
+    /**
+     * Submits a notification task.
+     *
+     * @param task The work to run in the background.
+     * @return A future completed when the task finishes, or completed exceptionally if it fails or is rejected.
+     */
+    public CompletableFuture<Void> dispatch(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Submits a notification task that produces a result.
+     *
+     * @param task The work to run in the background.
+     * @param <T>  The type of the task's result.
+     * @return A future completed with the task's result, or completed exceptionally if it fails or is rejected.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!backlog.tryAcquire()) {
+            switch (overflowPolicy) {
+                case CALLER_RUNS:
+                    run(task, future);
+                    return future;
+                case BLOCK:
+                    try {
+                        backlog.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        future.completeExceptionally(e);
+                        return future;
+                    }
+                    break;
+                default:
+                    future.completeExceptionally(new RejectedExecutionException("Notification backlog is full!"));
+                    return future;
+            }
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    run(task, future);
+                } finally {
+                    backlog.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            backlog.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Retrieves the number of additional tasks the backlog can currently accept.
+     *
+     * @return The remaining backlog capacity.
+     */
+    public int getRemainingCapacity() {
+        return backlog.availablePermits();
+    }
+
+    /**
+     * Stops the worker threads created by {@link #withWorkers}, letting queued tasks finish.
+     * Has no effect on an executor supplied by the caller.
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private static <T> void run(Supplier<T> task, CompletableFuture<T> future) {
+        try {
+            future.complete(task.get());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+}
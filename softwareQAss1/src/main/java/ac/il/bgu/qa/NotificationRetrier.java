@@ -0,0 +1,95 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends notifications to users, retrying failed attempts as a {@link RetryPolicy} allows.
+ * Immediate retries run on the calling thread; delayed retries are scheduled on a
+ * {@link ScheduledExecutorService}, so no thread is blocked while waiting for the next attempt.
+ */
+class NotificationRetrier {
+
+    // Decides whether and when to retry a failed attempt.
+    private final RetryPolicy retryPolicy;
+    // Runs delayed retries, or null if the policy only ever retries immediately.
+    private final ScheduledExecutorService scheduler;
+    // Receives the retry and exhaustion events.
+    private final LibraryMetrics metrics;
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    NotificationRetrier(RetryPolicy retryPolicy, ScheduledExecutorService scheduler, LibraryMetrics metrics) {
+        this.retryPolicy = retryPolicy;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends a notification to a user.
+     *
+     * @param userId  The Id of the user, used as the retry destination.
+     * @param user    The user to notify.
+     * @param message The content of the notification.
+     * @return A future completed once the notification was sent, or completed exceptionally with a
+     *         {@link NotificationException} once the retry policy gives up.
+     */
+    CompletableFuture<Void> send(String userId, User user, String message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        attempt(userId, user, message, 0, result);
+        return result;
+    }
+
+    /**
+     * Takes a snapshot of the delivery counters.
+     *
+     * @return The current retry statistics.
+     */
+    RetryStats stats() {
+        return new RetryStats(attempts.sum(), retries.sum(), exhausted.sum());
+    }
+
+    private void attempt(String userId, User user, String message, int failedAttempts, CompletableFuture<Void> result) {
+        while (true) {
+            attempts.increment();
+            try {
+                user.sendNotification(message);
+                result.complete(null);
+                return;
+            } catch (NotificationException e) {
+                failedAttempts++;
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            // Ask the policy whether to try again, and when.
+            long delay = retryPolicy.nextDelayMillis(userId, failedAttempts);
+            if (delay < 0) {
+                exhausted.increment();
+                metrics.recordNotificationExhausted();
+                result.completeExceptionally(new NotificationException("Notification failed!"));
+                return;
+            }
+            retries.increment();
+            metrics.recordNotificationRetry();
+            if (delay > 0) {
+                int failedSoFar = failedAttempts;
+                try {
+                    scheduler.schedule(() -> attempt(userId, user, message, failedSoFar, result), delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // The scheduler was shut down, so the retry would never run and the future never complete.
+                    result.completeExceptionally(e);
+                }
+                return;
+            }
+        }
+    }
+}
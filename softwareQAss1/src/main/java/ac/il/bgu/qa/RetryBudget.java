@@ -0,0 +1,153 @@
+package ac.il.bgu.qa;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how many retries may be spent on each destination over time.
+ * Every destination has its own token bucket: a retry consumes one token, and tokens are
+ * refilled at a fixed rate up to the bucket's capacity. When a destination's bucket is empty,
+ * its failed notifications are given up on instead of retried, which stops a degraded
+ * backend from being flooded with retries.
+ * <p>
+ * A full bucket is indistinguishable from one that was never created, so once the number of
+ * buckets doubles, buckets that have refilled are dropped. The memory held is thus proportional to
+ * the destinations that retried recently, not to every destination ever retried.
+ */
+public class RetryBudget {
+
+    // The maximum number of tokens, and thus back-to-back retries, per destination.
+    private final int capacity;
+    // The time it takes to refill one token, in nanoseconds.
+    private final long refillIntervalNanos;
+    // The clock used to refill tokens, in nanoseconds.
+    private final LongSupplier clock;
+    // The token buckets, keyed by destination.
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    // The number of buckets above which refilled buckets are dropped.
+    private final AtomicInteger pruneThreshold = new AtomicInteger(MIN_PRUNE_THRESHOLD);
+
+    // The number of buckets kept before the first time refilled buckets are dropped.
+    private static final int MIN_PRUNE_THRESHOLD = 1024;
+
+    /**
+     * Constructs a new retry budget.
+     *
+     * @param capacity       The maximum number of retries a destination can spend in a burst.
+     * @param refillInterval The time it takes to earn back one retry.
+     * @param unit           The time unit of the refill interval.
+     */
+    public RetryBudget(int capacity, long refillInterval, TimeUnit unit) {
+        this(capacity, refillInterval, unit, System::nanoTime);
+    }
+
+    RetryBudget(int capacity, long refillInterval, TimeUnit unit, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        if (refillInterval <= 0) {
+            throw new IllegalArgumentException("Invalid refill interval.");
+        }
+        this.capacity = capacity;
+        this.refillIntervalNanos = unit.toNanos(refillInterval);
+        this.clock = clock;
+    }
+
+    /**
+     * Attempts to spend one retry for a destination.
+     *
+     * @param destination The destination of the notification.
+     * @return true if the retry may proceed, false if the destination's budget is exhausted.
+     */
+    public boolean tryAcquire(String destination) {
+        while (true) {
+            Bucket bucket = buckets.get(destination);
+            boolean created = false;
+            if (bucket == null) {
+                Bucket fresh = new Bucket(capacity, clock.getAsLong());
+                bucket = buckets.putIfAbsent(destination, fresh);
+                if (bucket == null) {
+                    bucket = fresh;
+                    created = true;
+                }
+            }
+            boolean acquired;
+            synchronized (bucket) {
+                // A bucket dropped while this caller waited for it is replaced by a fresh one.
+                if (bucket.dropped) {
+                    continue;
+                }
+                refill(bucket, clock.getAsLong());
+                acquired = bucket.tokens > 0;
+                if (acquired) {
+                    bucket.tokens--;
+                }
+            }
+            if (created) {
+                pruneIfNeeded();
+            }
+            return acquired;
+        }
+    }
+
+    /**
+     * Retrieves the number of destinations whose budget is tracked.
+     *
+     * @return The number of token buckets.
+     */
+    int getTrackedCount() {
+        return buckets.size();
+    }
+
+    private void refill(Bucket bucket, long now) {
+        long earned = (now - bucket.refilledAt) / refillIntervalNanos;
+        if (earned > 0) {
+            bucket.tokens = (int) Math.min(capacity, bucket.tokens + earned);
+            bucket.refilledAt = bucket.tokens == capacity ? now : bucket.refilledAt + earned * refillIntervalNanos;
+        }
+    }
+
+    /**
+     * Drops the refilled buckets once the number of buckets passes the threshold, then sets the
+     * threshold to twice the number kept, so the cost of a sweep is spread over the buckets created
+     * since the previous one.
+     */
+    private void pruneIfNeeded() {
+        int threshold = pruneThreshold.get();
+        if (buckets.size() <= threshold || !pruneThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+            return;
+        }
+        long now = clock.getAsLong();
+        try {
+            for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                Bucket bucket = entry.getValue();
+                synchronized (bucket) {
+                    refill(bucket, now);
+                    if (bucket.tokens == capacity && buckets.remove(entry.getKey(), bucket)) {
+                        bucket.dropped = true;
+                    }
+                }
+            }
+        } finally {
+            pruneThreshold.set((int) Math.min(Integer.MAX_VALUE - 1, Math.max(MIN_PRUNE_THRESHOLD, 2L * buckets.size())));
+        }
+    }
+
+    /**
+     * The remaining tokens of a single destination.
+     */
+    private static final class Bucket {
+        int tokens;
+        long refilledAt;
+        // Whether the bucket was removed from the map, so that it must no longer be spent from.
+        boolean dropped;
+
+        Bucket(int tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ac.il.bgu.qa;
+
+/**
+ * Decides whether, and after what delay, a failed notification attempt is retried.
+ */
+public interface RetryPolicy {
+
+    /**
+     * Decides what to do after a failed attempt.
+     *
+     * @param destination    The destination of the notification (the user Id).
+     * @param failedAttempts The number of attempts made so far, all of which failed.
+     * @return The delay in milliseconds before the next attempt (0 to retry immediately),
+     *         or a negative value to give up.
+     */
+    long nextDelayMillis(String destination, int failedAttempts);
+
+    /**
+     * Creates a policy that retries immediately, without any delay, up to a fixed number of attempts.
+     *
+     * @param maxAttempts The maximum number of attempts, including the first one.
+     * @return A policy retrying back-to-back.
+     */
+    static RetryPolicy immediate(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid maximum attempts.");
+        }
+        return (destination, failedAttempts) -> failedAttempts < maxAttempts ? 0 : -1;
+    }
+}
@@ -0,0 +1,60 @@
+package ac.il.bgu.qa;
+
+/**
+ * An immutable snapshot of the library's notification delivery counters.
+ */
+public final class RetryStats {
+
+    // The number of send attempts made, including retries.
+    private final long attemptCount;
+    // The number of attempts that were retries of a failed attempt.
+    private final long retryCount;
+    // The number of notifications given up on after their last failed attempt.
+    private final long exhaustedCount;
+
+    /**
+     * Constructs a new RetryStats snapshot.
+     *
+     * @param attemptCount   The number of send attempts made, including retries.
+     * @param retryCount     The number of attempts that were retries.
+     * @param exhaustedCount The number of notifications given up on.
+     */
+    public RetryStats(long attemptCount, long retryCount, long exhaustedCount) {
+        this.attemptCount = attemptCount;
+        this.retryCount = retryCount;
+        this.exhaustedCount = exhaustedCount;
+    }
+
+    /**
+     * Retrieves the number of send attempts made, including retries.
+     *
+     * @return The attempt count.
+     */
+    public long getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * Retrieves the number of attempts that were retries of a failed attempt.
+     *
+     * @return The retry count.
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * Retrieves the number of notifications given up on after their last failed attempt.
+     *
+     * @return The exhausted count.
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryStats{attempts=" + attemptCount + ", retries=" + retryCount
+                + ", exhausted=" + exhaustedCount + "}";
+    }
+}
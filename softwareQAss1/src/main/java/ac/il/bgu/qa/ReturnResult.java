@@ -0,0 +1,13 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents the outcome of an attempt to return a book.
+ */
+public enum ReturnResult {
+    // The book was returned.
+    RETURNED,
+    // No book with the given ISBN exists in the library.
+    BOOK_NOT_FOUND,
+    // The book is not currently borrowed, possibly because a concurrent request returned it.
+    NOT_BORROWED
+}
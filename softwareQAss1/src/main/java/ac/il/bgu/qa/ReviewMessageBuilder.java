@@ -0,0 +1,118 @@
+package ac.il.bgu.qa;
+
+import java.util.Iterator;
+
+/**
+ * Builds the notification message listing a book's reviews, within optional size bounds.
+ * A bounded builder keeps at most a fixed number of reviews and a fixed number of characters,
+ * so the memory used per notification stays capped no matter how many reviews a book has.
+ * When the character limit cuts the message short, it ends with a truncation marker.
+ * The limit counts UTF-16 chars, as {@link String#length()} does, not encoded bytes; a cut never
+ * splits a surrogate pair.
+ */
+public class ReviewMessageBuilder {
+
+    // Appended to a message that was cut short by the character limit.
+    private static final String TRUNCATION_MARKER = "\n...";
+
+    // The maximum number of reviews included in a message.
+    private final int maxReviews;
+    // The maximum length of a message, in characters.
+    private final int maxChars;
+
+    /**
+     * Constructs a new bounded message builder.
+     *
+     * @param maxReviews The maximum number of reviews included in a message.
+     * @param maxChars   The maximum length of a message, in characters.
+     */
+    public ReviewMessageBuilder(int maxReviews, int maxChars) {
+        if (maxReviews <= 0) {
+            throw new IllegalArgumentException("Invalid maximum reviews.");
+        }
+        if (maxChars <= TRUNCATION_MARKER.length()) {
+            throw new IllegalArgumentException("Invalid maximum characters.");
+        }
+        this.maxReviews = maxReviews;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Creates a builder that includes every review in full.
+     *
+     * @return An unbounded message builder.
+     */
+    public static ReviewMessageBuilder unbounded() {
+        return new ReviewMessageBuilder(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether the builder limits the size of its messages.
+     *
+     * @return true if the number of reviews or characters is limited, otherwise false.
+     */
+    public boolean isBounded() {
+        return maxReviews != Integer.MAX_VALUE || maxChars != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Retrieves the maximum number of reviews included in a message.
+     *
+     * @return The maximum number of reviews.
+     */
+    public int getMaxReviews() {
+        return maxReviews;
+    }
+
+    /**
+     * Builds the notification message for a book, consuming only as many reviews as fit.
+     *
+     * @param title   The title of the book.
+     * @param reviews The reviews of the book, in the order they should be listed.
+     * @return The notification message, or null if there are no reviews.
+     */
+    public String build(String title, Iterator<String> reviews) {
+        if (!reviews.hasNext()) {
+            return null;
+        }
+
+        StringBuilder message = new StringBuilder();
+        if (!appendWithin(message, "Reviews for '") || !appendWithin(message, String.valueOf(title)) || !appendWithin(message, "':")) {
+            return message.toString();
+        }
+        int included = 0;
+        while (included < maxReviews && reviews.hasNext()) {
+            String review = reviews.next();
+            if (!appendWithin(message, "\n") || !appendWithin(message, String.valueOf(review))) {
+                break;
+            }
+            included++;
+        }
+        return message.toString();
+    }
+
+    /**
+     * Appends text to a message if it fits the character limit; otherwise appends only as much as
+     * fits next to the truncation marker, followed by the marker. Text that does not fit is never
+     * copied into the message.
+     *
+     * @param message The message built so far, which fits the limit.
+     * @param text    The text to append.
+     * @return true if the text was appended in full, false if the message was cut short.
+     */
+    private boolean appendWithin(StringBuilder message, String text) {
+        if (text.length() <= maxChars - message.length()) {
+            message.append(text);
+            return true;
+        }
+        int end = Math.max(0, maxChars - TRUNCATION_MARKER.length() - message.length());
+        if (end > 0 && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        if (end == 0 && message.length() > maxChars - TRUNCATION_MARKER.length()) {
+            message.setLength(maxChars - TRUNCATION_MARKER.length());
+        }
+        message.append(text, 0, end).append(TRUNCATION_MARKER);
+        return false;
+    }
+}
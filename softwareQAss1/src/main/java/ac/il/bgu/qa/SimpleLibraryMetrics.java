@@ -0,0 +1,139 @@
+package ac.il.bgu.qa;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A dependency-free {@link LibraryMetrics} that keeps everything in memory:
+ * a latency histogram per operation and for review fetches, a failure counter per exception type,
+ * and counters of notification retries and failures.
+ */
+public class SimpleLibraryMetrics implements LibraryMetrics {
+
+    // The latency of each operation, created up front so lookups never allocate.
+    private final Map<Operation, LatencyHistogram> operationLatencies = new EnumMap<>(Operation.class);
+    // The latency of review fetches.
+    private final LatencyHistogram reviewFetchLatency = new LatencyHistogram();
+    // The number of failures of each exception type, across operations, review fetches and notifications.
+    private final ConcurrentHashMap<Class<? extends Throwable>, LongAdder> failures = new ConcurrentHashMap<>();
+
+    private final LongAdder notificationRetries = new LongAdder();
+    private final LongAdder notificationsExhausted = new LongAdder();
+    private final LongAdder notificationFailures = new LongAdder();
+
+    /**
+     * Constructs new, empty metrics.
+     */
+    public SimpleLibraryMetrics() {
+        for (Operation operation : Operation.values()) {
+            operationLatencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void recordOperation(Operation operation, long durationNanos, Throwable failure) {
+        operationLatencies.get(operation).record(durationNanos);
+        countFailure(failure);
+    }
+
+    @Override
+    public void recordReviewFetch(long durationNanos, Throwable failure) {
+        reviewFetchLatency.record(durationNanos);
+        countFailure(failure);
+    }
+
+    @Override
+    public void recordNotificationRetry() {
+        notificationRetries.increment();
+    }
+
+    @Override
+    public void recordNotificationExhausted() {
+        notificationsExhausted.increment();
+    }
+
+    @Override
+    public void recordNotificationFailure(Throwable failure) {
+        notificationFailures.increment();
+        countFailure(failure);
+    }
+
+    /**
+     * Retrieves the latency histogram of an operation, in nanoseconds.
+     *
+     * @param operation The operation.
+     * @return The operation's latency histogram.
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        return operationLatencies.get(operation);
+    }
+
+    /**
+     * Retrieves the latency histogram of review fetches, in nanoseconds.
+     *
+     * @return The review fetch latency histogram.
+     */
+    public LatencyHistogram getReviewFetchLatency() {
+        return reviewFetchLatency;
+    }
+
+    /**
+     * Retrieves the number of failures with exactly the given exception type.
+     *
+     * @param type The exception type.
+     * @return The failure count.
+     */
+    public long getFailureCount(Class<? extends Throwable> type) {
+        LongAdder counter = failures.get(type);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Takes a snapshot of the failure counters, keyed by the simple name of the exception type.
+     *
+     * @return The failure counts.
+     */
+    public Map<String, Long> getFailureCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<Class<? extends Throwable>, LongAdder> entry : failures.entrySet()) {
+            counts.merge(entry.getKey().getSimpleName(), entry.getValue().sum(), Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Retrieves the number of failed notification attempts that were retried.
+     *
+     * @return The retry count.
+     */
+    public long getNotificationRetryCount() {
+        return notificationRetries.sum();
+    }
+
+    /**
+     * Retrieves the number of notifications given up on after their last failed attempt.
+     *
+     * @return The exhausted count.
+     */
+    public long getNotificationExhaustedCount() {
+        return notificationsExhausted.sum();
+    }
+
+    /**
+     * Retrieves the number of review notifications that failed without failing their operation.
+     *
+     * @return The notification failure count.
+     */
+    public long getNotificationFailureCount() {
+        return notificationFailures.sum();
+    }
+
+    private void countFailure(Throwable failure) {
+        if (failure != null) {
+            failures.computeIfAbsent(failure.getClass(), type -> new LongAdder()).increment();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ac.il.bgu.qa;
+
+/**
+ * Validates library user Ids, which consist of exactly 12 decimal digits.
+ * Checks are done on the characters directly, without regular expressions or allocations.
+ */
+public final class UserIdValidator {
+
+    // The number of digits in a user Id.
+    private static final int USER_ID_LENGTH = 12;
+
+    private UserIdValidator() {
+    }
+
+    /**
+     * Validates if the input is a well-formed user Id (a 12-digit number).
+     *
+     * @param userId The user Id to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(CharSequence userId) {
+        if (userId == null || userId.length() != USER_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < USER_ID_LENGTH; i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a user Id into a primitive key, suitable for indexing.
+     * Since a user Id has 12 digits, every valid Id maps to a distinct non-negative long.
+     *
+     * @param userId The user Id to be parsed.
+     * @return The numeric value of the user Id.
+     * @throws IllegalArgumentException If the user Id is not valid.
+     */
+    public static long toLong(CharSequence userId) {
+        if (!isValid(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        long key = 0;
+        for (int i = 0; i < USER_ID_LENGTH; i++) {
+            key = key * 10 + (userId.charAt(i) - '0');
+        }
+        return key;
+    }
+}
@@ -14,4 +14,14 @@ public class BookAlreadyBorrowedException extends RuntimeException {
     public BookAlreadyBorrowedException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new BookAlreadyBorrowedException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public BookAlreadyBorrowedException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+    }
 }
@@ -14,4 +14,14 @@ public class BookNotBorrowedException extends RuntimeException {
     public BookNotBorrowedException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new BookNotBorrowedException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public BookNotBorrowedException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+    }
 }
@@ -14,4 +14,14 @@ public class BookNotFoundException extends RuntimeException {
     public BookNotFoundException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new BookNotFoundException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public BookNotFoundException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+    }
 }
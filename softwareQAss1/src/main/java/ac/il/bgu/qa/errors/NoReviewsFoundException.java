@@ -14,4 +14,14 @@ public class NoReviewsFoundException extends RuntimeException {
     public NoReviewsFoundException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new NoReviewsFoundException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public NoReviewsFoundException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+    }
 }
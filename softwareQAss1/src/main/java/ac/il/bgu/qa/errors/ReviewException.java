@@ -14,4 +14,14 @@ public class ReviewException extends RuntimeException {
     public ReviewException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new ReviewException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public ReviewException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+    }
 }
@@ -14,4 +14,14 @@ public class UserNotRegisteredException extends RuntimeException {
     public UserNotRegisteredException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new UserNotRegisteredException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public UserNotRegisteredException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+    }
 }
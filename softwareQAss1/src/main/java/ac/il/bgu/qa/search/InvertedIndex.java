@@ -0,0 +1,248 @@
+package ac.il.bgu.qa.search;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory inverted index over the title, author and reviews of books.
+ * <p>
+ * Each term maps to a posting list of the books containing it, in the order the books were added,
+ * so a query intersects the posting lists of its terms starting from the shortest one and skips
+ * through the others with galloping search. Matches are ranked with BM25, where a term counts
+ * three times in a title, twice in an author name and once in a review, and only the best
+ * {@code limit} matches are kept while scoring.
+ * <p>
+ * Books are added incrementally by a single writer at a time, while searches run concurrently
+ * without locking.
+ */
+public class InvertedIndex {
+
+    // The BM25 term frequency saturation parameter.
+    private static final double K1 = 1.2;
+    // The BM25 document length normalization parameter.
+    private static final double B = 0.75;
+    // The weights of a term occurring in each field.
+    private static final int TITLE_WEIGHT = 3;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int REVIEW_WEIGHT = 1;
+
+    // The ISBNs of the indexed books.
+    private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+    // The posting list of each term.
+    private final ConcurrentHashMap<String, PostingList> postings = new ConcurrentHashMap<>();
+    // The ISBN of each document, by document number.
+    private volatile String[] ISBNs = new String[16];
+    // The weighted length of each document, by document number.
+    private volatile int[] lengths = new int[16];
+    // The number of documents; published after the arrays and before the postings that refer to them.
+    private volatile int documentCount;
+    // The sum of the weighted lengths of all documents.
+    private volatile long totalLength;
+
+    /**
+     * Adds a book to the index, unless it is already indexed.
+     *
+     * @param ISBN    The ISBN of the book.
+     * @param title   The title of the book.
+     * @param author  The author of the book.
+     * @param reviews The reviews of the book, or an empty collection to index the book without them.
+     * @return true if the book was added, false if it was already indexed.
+     */
+    public synchronized boolean add(String ISBN, String title, String author, Collection<String> reviews) {
+        if (!indexed.add(ISBN)) {
+            return false;
+        }
+
+        // Count the weighted occurrences of each term in the book.
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = count(frequencies, title, TITLE_WEIGHT)
+                + count(frequencies, author, AUTHOR_WEIGHT);
+        for (String review : reviews) {
+            length += count(frequencies, review, REVIEW_WEIGHT);
+        }
+
+        // Register the document before any posting refers to it.
+        int document = documentCount;
+        if (document == ISBNs.length) {
+            ISBNs = Arrays.copyOf(ISBNs, document * 2);
+            lengths = Arrays.copyOf(lengths, document * 2);
+        }
+        ISBNs[document] = ISBN;
+        lengths[document] = length;
+        totalLength += length;
+        documentCount = document + 1;
+
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new PostingList()).add(document, entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a book is indexed.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return true if the book was added to the index, otherwise false.
+     */
+    public boolean contains(String ISBN) {
+        return indexed.contains(ISBN);
+    }
+
+    /**
+     * Finds the books containing every term of a query, most relevant first.
+     *
+     * @param query The words to search for.
+     * @param limit The maximum number of results.
+     * @return Up to {@code limit} matching books, ordered by decreasing score.
+     */
+    public List<SearchHit> search(String query, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+        Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenize(query));
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Take a consistent view of every posting list; a missing term means nothing matches.
+        int termCount = terms.size();
+        int[] sizes = new int[termCount];
+        int[][] documents = new int[termCount][];
+        int[][] frequencies = new int[termCount][];
+        Integer[] order = new Integer[termCount];
+        int t = 0;
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                return Collections.emptyList();
+            }
+            sizes[t] = list.size();
+            documents[t] = list.documents();
+            frequencies[t] = list.frequencies();
+            order[t] = t;
+            t++;
+        }
+        // Read after the postings, so that every document they refer to is covered.
+        int count = documentCount;
+        String[] ISBNs = this.ISBNs;
+        int[] lengths = this.lengths;
+        double averageLength = Math.max(1.0, (double) totalLength / count);
+
+        // Intersect starting from the rarest term, which bounds the work.
+        Arrays.sort(order, Comparator.comparingInt(i -> sizes[i]));
+        double[] idf = new double[termCount];
+        for (int i = 0; i < termCount; i++) {
+            idf[i] = Math.log(1 + (count - sizes[i] + 0.5) / (sizes[i] + 0.5));
+        }
+
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Math.min(limit, 64) + 1);
+        int[] cursors = new int[termCount];
+        int rarest = order[0];
+        for (int r = 0; r < sizes[rarest]; r++) {
+            int document = documents[rarest][r];
+            double score = score(idf[rarest], frequencies[rarest][r], lengths[document], averageLength);
+            boolean matches = true;
+            for (int o = 1; o < termCount && matches; o++) {
+                int i = order[o];
+                cursors[i] = advance(documents[i], cursors[i], sizes[i], document);
+                if (cursors[i] == sizes[i]) {
+                    // This list is exhausted, so no later document can match either.
+                    return ranked(best, ISBNs);
+                }
+                matches = documents[i][cursors[i]] == document;
+                if (matches) {
+                    score += score(idf[i], frequencies[i][cursors[i]], lengths[document], averageLength);
+                }
+            }
+            // Only keep the match if it beats the least relevant of the best found so far.
+            if (matches && (best.size() < limit || score > best.peek().score)) {
+                best.add(new Candidate(document, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        return ranked(best, ISBNs);
+    }
+
+    /**
+     * Retrieves the number of books in the index.
+     *
+     * @return The number of indexed books.
+     */
+    public int size() {
+        return documentCount;
+    }
+
+    private static int count(Map<String, Integer> frequencies, String text, int weight) {
+        List<String> terms = Tokenizer.tokenize(text);
+        for (String term : terms) {
+            frequencies.merge(term, weight, Integer::sum);
+        }
+        return terms.size() * weight;
+    }
+
+    private static double score(double idf, int frequency, int length, double averageLength) {
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    /**
+     * Finds the first position at or after a cursor holding a document not before the target,
+     * doubling the step until it overshoots and then searching the last step binarily.
+     *
+     * @return The position, or {@code size} if every remaining document comes before the target.
+     */
+    private static int advance(int[] documents, int cursor, int size, int target) {
+        if (cursor >= size || documents[cursor] >= target) {
+            return cursor;
+        }
+        int step = 1;
+        int low = cursor;
+        int high = cursor + 1;
+        while (high < size && documents[high] < target) {
+            low = high;
+            step <<= 1;
+            high = cursor + step;
+        }
+        high = Math.min(high, size);
+        // documents[low] < target, and documents[high] >= target or high == size.
+        while (low + 1 < high) {
+            int middle = (low + high) >>> 1;
+            if (documents[middle] < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private static List<SearchHit> ranked(PriorityQueue<Candidate> best, String[] ISBNs) {
+        SearchHit[] hits = new SearchHit[best.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            Candidate candidate = best.poll();
+            hits[i] = new SearchHit(ISBNs[candidate.document], candidate.score);
+        }
+        return Arrays.asList(hits);
+    }
+
+    /**
+     * A scored document, ordered so that the least relevant is at the head of the queue.
+     * Among equal scores, the document added later is considered less relevant.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final int document;
+        private final double score;
+
+        Candidate(int document, double score) {
+            this.document = document;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(other.document, document);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ac.il.bgu.qa.search;
+
+import java.util.Arrays;
+
+/**
+ * The documents containing a term, in increasing document order, with the term's weighted
+ * frequency in each. A single writer appends while any number of readers search: readers read the
+ * size first, and the arrays are always published before the size that covers them.
+ */
+final class PostingList {
+
+    // The documents containing the term, in increasing order.
+    private volatile int[] documents = new int[2];
+    // The weighted frequency of the term in each document.
+    private volatile int[] frequencies = new int[2];
+    // The number of documents in the list.
+    private volatile int size;
+
+    /**
+     * Appends a document, which must come after every document already in the list.
+     * Only one thread may append at a time.
+     *
+     * @param document  The document.
+     * @param frequency The weighted frequency of the term in the document.
+     */
+    void add(int document, int frequency) {
+        int n = size;
+        int[] docs = documents;
+        int[] freqs = frequencies;
+        if (n == docs.length) {
+            docs = Arrays.copyOf(docs, n * 2);
+            freqs = Arrays.copyOf(freqs, n * 2);
+            documents = docs;
+            frequencies = freqs;
+        }
+        docs[n] = document;
+        freqs[n] = frequency;
+        size = n + 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] documents() {
+        return documents;
+    }
+
+    int[] frequencies() {
+        return frequencies;
+    }
+}
@@ -0,0 +1,41 @@
+package ac.il.bgu.qa.search;
+
+/**
+ * A book matching a search, with its relevance score.
+ */
+public final class SearchHit {
+
+    // The ISBN of the matching book.
+    private final String ISBN;
+    // The relevance of the book to the query; higher is more relevant.
+    private final double score;
+
+    /**
+     * Constructs a new SearchHit.
+     *
+     * @param ISBN  The ISBN of the matching book.
+     * @param score The relevance of the book to the query.
+     */
+    public SearchHit(String ISBN, double score) {
+        this.ISBN = ISBN;
+        this.score = score;
+    }
+
+    /**
+     * Retrieves the ISBN of the matching book.
+     *
+     * @return The ISBN.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the relevance of the book to the query.
+     *
+     * @return The score; higher is more relevant.
+     */
+    public double getScore() {
+        return score;
+    }
+}
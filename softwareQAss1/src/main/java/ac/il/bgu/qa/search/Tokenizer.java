@@ -0,0 +1,50 @@
+package ac.il.bgu.qa.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits text into lower case search terms.
+ * A term is a maximal run of letters and digits; everything else separates terms.
+ * Common English stop words are dropped, as they match almost every document.
+ */
+public final class Tokenizer {
+
+    // Words too common to be useful as search terms.
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it",
+            "of", "on", "or", "that", "the", "this", "to", "was", "with"));
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Splits text into search terms.
+     *
+     * @param text The text to be split, may be null.
+     * @return The terms, in the order they appear, including repetitions.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        for (int i = 0, length = text.length(); i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(Character.toLowerCase(c));
+            } else if (term.length() > 0) {
+                String word = term.toString();
+                if (!STOP_WORDS.contains(word)) {
+                    terms.add(word);
+                }
+                term.setLength(0);
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,207 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.LibraryMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link NotificationService} decorator that coalesces the notifications sent to each user.
+ * Messages for a user are collected for a short window, or until a size limit is reached,
+ * and then delivered to the upstream service as a single digest.
+ * <p>
+ * Since delivery happens after {@link #notifyUser(String, String)} has returned, upstream failures
+ * cannot be reported to the caller; they are counted and reported to the metrics instead. This
+ * decorator should therefore wrap the service closest to the provider, beneath any retrying or
+ * circuit breaking layer. If the scheduler rejects the flush at the end of a window, the batch is
+ * delivered right away instead.
+ */
+public class BatchingNotificationService implements NotificationService {
+
+    // The separator placed between the messages of a digest.
+    private static final String DIGEST_SEPARATOR = "\n\n";
+
+    // The upstream notification service.
+    private final NotificationService delegate;
+    // The maximum number of messages combined into one digest.
+    private final int maxBatchSize;
+    // How long the first message of a batch waits for others, in nanoseconds.
+    private final long windowNanos;
+    // Runs the delayed flushes at the end of each window.
+    private final ScheduledExecutorService scheduler;
+    // Receives the failures of digests the upstream service could not deliver.
+    private final LibraryMetrics metrics;
+    // The open batches, keyed by user Id.
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder digestsSent = new LongAdder();
+    private final LongAdder digestsFailed = new LongAdder();
+
+    /**
+     * Constructs a new batching decorator.
+     *
+     * @param delegate     The upstream notification service.
+     * @param maxBatchSize The maximum number of messages combined into one digest.
+     * @param window       How long the first message of a batch waits for others.
+     * @param unit         The time unit of the window.
+     * @param scheduler    Runs the delayed flushes at the end of each window.
+     */
+    public BatchingNotificationService(NotificationService delegate, int maxBatchSize, long window, TimeUnit unit,
+                                       ScheduledExecutorService scheduler) {
+        this(delegate, maxBatchSize, window, unit, scheduler, LibraryMetrics.NOOP);
+    }
+
+    /**
+     * Constructs a new batching decorator reporting failed digests to the given metrics.
+     *
+     * @param delegate     The upstream notification service.
+     * @param maxBatchSize The maximum number of messages combined into one digest.
+     * @param window       How long the first message of a batch waits for others.
+     * @param unit         The time unit of the window.
+     * @param scheduler    Runs the delayed flushes at the end of each window.
+     * @param metrics      Receives the failure of every digest the upstream service could not deliver.
+     */
+    public BatchingNotificationService(NotificationService delegate, int maxBatchSize, long window, TimeUnit unit,
+                                       ScheduledExecutorService scheduler, LibraryMetrics metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum batch size.");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid window.");
+        }
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("Invalid metrics.");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a message for the user's next digest.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     */
+    @Override
+    public void notifyUser(String userId, String message) {
+        messagesReceived.increment();
+        while (true) {
+            Batch batch = batches.computeIfAbsent(userId, id -> new Batch());
+            List<String> full = null;
+            boolean first;
+            synchronized (batch) {
+                // The batch was flushed after we looked it up; start over with a fresh one.
+                if (batch.flushed) {
+                    continue;
+                }
+                batch.messages.add(message);
+                first = batch.messages.size() == 1;
+                if (batch.messages.size() >= maxBatchSize) {
+                    full = detach(userId, batch);
+                }
+            }
+            if (full != null) {
+                deliver(userId, full);
+            } else if (first) {
+                try {
+                    scheduler.schedule(() -> flush(userId, batch), windowNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // No flush would ever end this window, so the batch is delivered now rather than stranded.
+                    flush(userId, batch);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Delivers every pending batch immediately.
+     */
+    public void flush() {
+        for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+            flush(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Retrieves the number of messages accepted for batching.
+     *
+     * @return The number of messages received.
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    /**
+     * Retrieves the number of digests delivered to the upstream service.
+     *
+     * @return The number of digests sent.
+     */
+    public long getDigestsSent() {
+        return digestsSent.sum();
+    }
+
+    /**
+     * Retrieves the number of digests the upstream service failed to deliver.
+     *
+     * @return The number of failed digests.
+     */
+    public long getDigestsFailed() {
+        return digestsFailed.sum();
+    }
+
+    private void flush(String userId, Batch batch) {
+        List<String> messages;
+        synchronized (batch) {
+            if (batch.flushed) {
+                return;
+            }
+            messages = detach(userId, batch);
+        }
+        deliver(userId, messages);
+    }
+
+    // Must be called while holding the batch's lock.
+    private List<String> detach(String userId, Batch batch) {
+        batch.flushed = true;
+        batches.remove(userId, batch);
+        return batch.messages;
+    }
+
+    private void deliver(String userId, List<String> messages) {
+        String digest = messages.size() == 1 ? messages.get(0) : String.join(DIGEST_SEPARATOR, messages);
+        try {
+            delegate.notifyUser(userId, digest);
+            digestsSent.increment();
+        } catch (RuntimeException e) {
+            // The batch was already detached, so a failure of any kind is reported rather than thrown
+            // at a scheduler thread that would discard it.
+            digestsFailed.increment();
+            metrics.recordNotificationFailure(e);
+        }
+    }
+
+    /**
+     * The messages collected for one user during one window.
+     */
+    private static final class Batch {
+        final List<String> messages = new ArrayList<>();
+        boolean flushed;
+    }
+}
@@ -0,0 +1,119 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ReviewServicePool} that keeps up to a fixed number of sessions open and reuses them.
+ * Sessions are created lazily through a factory, released sessions are kept idle for the next
+ * caller, and failed sessions are closed and replaced on demand.
+ */
+public class BoundedReviewServicePool implements ReviewServicePool {
+
+    // Creates a new, connected review service session.
+    private final Supplier<ReviewService> factory;
+    // Permits for the sessions that may be leased at the same time.
+    private final Semaphore leases;
+    // The sessions that are open and waiting to be leased, most recently used first.
+    private final ConcurrentLinkedDeque<ReviewService> idle = new ConcurrentLinkedDeque<>();
+    // How long acquire() waits for a session before giving up, in nanoseconds.
+    private final long acquireTimeoutNanos;
+    // Whether the pool has been closed.
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new pool.
+     *
+     * @param factory        Creates a new, connected review service session.
+     * @param maximumSize    The maximum number of sessions leased at the same time.
+     * @param acquireTimeout How long to wait for a free session before failing.
+     * @param unit           The time unit of the acquire timeout.
+     */
+    public BoundedReviewServicePool(Supplier<ReviewService> factory, int maximumSize, long acquireTimeout, TimeUnit unit) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid review service factory.");
+        }
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size.");
+        }
+        this.factory = factory;
+        this.leases = new Semaphore(maximumSize);
+        this.acquireTimeoutNanos = unit.toNanos(acquireTimeout);
+    }
+
+    @Override
+    public ReviewService acquire() throws ReviewException {
+        if (closed) {
+            throw new ReviewException("Review service pool is closed!");
+        }
+        try {
+            if (!leases.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new ReviewException("Review service pool exhausted!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReviewException("Interrupted while waiting for a review service!");
+        }
+
+        ReviewService session = idle.pollFirst();
+        if (session != null) {
+            return session;
+        }
+        try {
+            session = factory.get();
+        } catch (RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+        if (session == null) {
+            leases.release();
+            throw new ReviewException("Review service unavailable!");
+        }
+        return session;
+    }
+
+    @Override
+    public void release(ReviewService session) {
+        if (closed) {
+            session.close();
+        } else {
+            idle.offerFirst(session);
+            // The pool may have been closed while the session was being handed back.
+            if (closed && idle.remove(session)) {
+                session.close();
+            }
+        }
+        leases.release();
+    }
+
+    @Override
+    public void invalidate(ReviewService session) {
+        try {
+            session.close();
+        } finally {
+            leases.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ReviewService session;
+        while ((session = idle.pollFirst()) != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * Retrieves the number of open sessions waiting to be leased.
+     *
+     * @return The number of idle sessions.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+}
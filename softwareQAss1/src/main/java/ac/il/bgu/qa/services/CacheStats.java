@@ -0,0 +1,70 @@
+package ac.il.bgu.qa.services;
+
+/**
+ * An immutable snapshot of a cache's hit, miss and eviction counters.
+ */
+public final class CacheStats {
+
+    // The number of lookups served from the cache.
+    private final long hitCount;
+    // The number of lookups that had to go to the backing service.
+    private final long missCount;
+    // The number of entries removed to keep the cache within its size bound or TTL.
+    private final long evictionCount;
+
+    /**
+     * Constructs a new CacheStats snapshot.
+     *
+     * @param hitCount      The number of lookups served from the cache.
+     * @param missCount     The number of lookups that went to the backing service.
+     * @param evictionCount The number of entries evicted from the cache.
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * Retrieves the number of lookups served from the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Retrieves the number of lookups that went to the backing service.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Retrieves the number of entries evicted from the cache.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Calculates the ratio of lookups served from the cache.
+     *
+     * @return The hit rate between 0 and 1, or 1 if there were no lookups.
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + ", hitRate=" + getHitRate() + "}";
+    }
+}
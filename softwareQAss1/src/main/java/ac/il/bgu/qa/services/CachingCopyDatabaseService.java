@@ -0,0 +1,73 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A read-through caching decorator for a {@link CopyDatabaseService}.
+ * Lookups are cached as by {@link CachingDatabaseService}, and a book is invalidated whenever its
+ * copies are changed through this decorator, as that may change whether it reads as borrowed.
+ */
+public class CachingCopyDatabaseService extends CachingDatabaseService implements CopyDatabaseService {
+
+    // The backing database service.
+    private final CopyDatabaseService delegate;
+
+    /**
+     * Constructs a new caching decorator whose entries never expire.
+     *
+     * @param delegate    The backing database service.
+     * @param maximumSize The maximum number of books, and separately users, to cache.
+     */
+    public CachingCopyDatabaseService(CopyDatabaseService delegate, int maximumSize) {
+        this(delegate, maximumSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a new caching decorator.
+     *
+     * @param delegate    The backing database service.
+     * @param maximumSize The maximum number of books, and separately users, to cache.
+     * @param ttl         The time-to-live of a cached entry, or 0 if entries never expire.
+     * @param unit        The time unit of the time-to-live.
+     */
+    public CachingCopyDatabaseService(CopyDatabaseService delegate, int maximumSize, long ttl, TimeUnit unit) {
+        this(delegate, maximumSize, ttl, unit, System::nanoTime);
+    }
+
+    CachingCopyDatabaseService(CopyDatabaseService delegate, int maximumSize, long ttl, TimeUnit unit,
+                               LongSupplier clock) {
+        super(delegate, maximumSize, ttl, unit, clock);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void addCopy(String ISBN) {
+        delegate.addCopy(ISBN);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public int getCopyCount(String ISBN) {
+        return delegate.getCopyCount(ISBN);
+    }
+
+    @Override
+    public void borrowCopy(String ISBN, String userId) {
+        delegate.borrowCopy(ISBN, userId);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public void returnCopy(String ISBN, String userId) {
+        delegate.returnCopy(ISBN, userId);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public Map<String, Set<String>> getCopyLoans() {
+        return delegate.getCopyLoans();
+    }
+}
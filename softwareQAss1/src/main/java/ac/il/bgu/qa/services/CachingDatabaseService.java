@@ -0,0 +1,221 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A read-through caching decorator for a {@link DatabaseService}.
+ * Book and user lookups are served from bounded LRU caches with an optional time-to-live,
+ * and entries are invalidated whenever they are written through this decorator.
+ * A lookup that raced with such a write does not cache what it loaded.
+ * Lookups that find nothing are not cached, so a newly added book or user is visible immediately.
+ */
+public class CachingDatabaseService implements DatabaseService {
+
+    // The backing database service.
+    private final DatabaseService delegate;
+    // The cached books, keyed by ISBN.
+    private final LruCache<String, Book> books;
+    // The cached users, keyed by user Id.
+    private final LruCache<String, User> users;
+
+    /**
+     * Constructs a new caching decorator whose entries never expire.
+     *
+     * @param delegate    The backing database service.
+     * @param maximumSize The maximum number of books, and separately users, to cache.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maximumSize) {
+        this(delegate, maximumSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a new caching decorator.
+     *
+     * @param delegate    The backing database service.
+     * @param maximumSize The maximum number of books, and separately users, to cache.
+     * @param ttl         The time-to-live of a cached entry, or 0 if entries never expire.
+     * @param unit        The time unit of the time-to-live.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maximumSize, long ttl, TimeUnit unit) {
+        this(delegate, maximumSize, ttl, unit, System::nanoTime);
+    }
+
+    CachingDatabaseService(DatabaseService delegate, int maximumSize, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        this.books = new LruCache<>(maximumSize, ttl, unit, clock);
+        this.users = new LruCache<>(maximumSize, ttl, unit, clock);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        books.invalidate(ISBN);
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        delegate.addBooks(books);
+        for (String ISBN : books.keySet()) {
+            this.books.invalidate(ISBN);
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+        users.invalidate(id);
+    }
+
+    @Override
+    public void registerUsers(Map<String, User> users) {
+        delegate.registerUsers(users);
+        for (String id : users.keySet()) {
+            this.users.invalidate(id);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        Book book = books.get(ISBN);
+        if (book == null) {
+            long stamp = books.stamp(ISBN);
+            book = delegate.getBookByISBN(ISBN);
+            if (book != null) {
+                books.putIfUnchanged(ISBN, book, stamp);
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        User user = users.get(userId);
+        if (user == null) {
+            long stamp = users.stamp(userId);
+            user = delegate.getUserById(userId);
+            if (user != null) {
+                users.putIfUnchanged(userId, user, stamp);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        // Serve what we can from the cache and fetch the rest with a single multi-get.
+        Map<String, Book> found = new HashMap<>();
+        Map<String, Long> missing = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = books.get(ISBN);
+            if (book != null) {
+                found.put(ISBN, book);
+            } else {
+                missing.put(ISBN, books.stamp(ISBN));
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Book> fetched = delegate.getBooksByISBN(missing.keySet());
+            for (Map.Entry<String, Book> entry : fetched.entrySet()) {
+                books.putIfUnchanged(entry.getKey(), entry.getValue(), missing.get(entry.getKey()));
+            }
+            found.putAll(fetched);
+        }
+        return found;
+    }
+
+    @Override
+    public Map<String, User> getUsersByIds(Collection<String> userIds) {
+        // Serve what we can from the cache and fetch the rest with a single multi-get.
+        Map<String, User> found = new HashMap<>();
+        Map<String, Long> missing = new HashMap<>();
+        for (String userId : userIds) {
+            User user = users.get(userId);
+            if (user != null) {
+                found.put(userId, user);
+            } else {
+                missing.put(userId, users.stamp(userId));
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, User> fetched = delegate.getUsersByIds(missing.keySet());
+            for (Map.Entry<String, User> entry : fetched.entrySet()) {
+                users.putIfUnchanged(entry.getKey(), entry.getValue(), missing.get(entry.getKey()));
+            }
+            found.putAll(fetched);
+        }
+        return found;
+    }
+
+    @Override
+    public Collection<Book> getAllBooks() {
+        return delegate.getAllBooks();
+    }
+
+    @Override
+    public Map<String, String> getLoans() {
+        return delegate.getLoans();
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+        books.invalidate(ISBN);
+    }
+
+    @Override
+    public boolean tryBorrow(String ISBN, String userId, Book book) {
+        boolean borrowed = delegate.tryBorrow(ISBN, userId, book);
+        books.invalidate(ISBN);
+        return borrowed;
+    }
+
+    @Override
+    public String tryReturn(String ISBN, String userId, Book book) {
+        String returned = delegate.tryReturn(ISBN, userId, book);
+        books.invalidate(ISBN);
+        return returned;
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+        books.invalidate(ISBN);
+    }
+
+    /**
+     * Takes a snapshot of the book cache's hit, miss and eviction counters.
+     *
+     * @return The book cache statistics.
+     */
+    public CacheStats getBookCacheStats() {
+        return books.stats();
+    }
+
+    /**
+     * Takes a snapshot of the user cache's hit, miss and eviction counters.
+     *
+     * @return The user cache statistics.
+     */
+    public CacheStats getUserCacheStats() {
+        return users.stats();
+    }
+
+    /**
+     * Drops the cached copy of a book, after it was changed in the backing database.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    void invalidateBook(String ISBN) {
+        books.invalidate(ISBN);
+    }
+}
@@ -0,0 +1,292 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * A caching decorator for a {@link ReviewService}.
+ * Reviews are cached per ISBN with a time-to-live, and concurrent misses for the same ISBN
+ * are coalesced into a single upstream call whose result is shared by all waiting callers.
+ * Books without reviews are cached as well, with their own (usually shorter) time-to-live.
+ * Failures are never cached.
+ * <p>
+ * Streamed fetches ask upstream for no more reviews than the caller's limit and cache at most that
+ * many. A streamed fetch that ended before the limit holds every review of the book and is cached as
+ * such; otherwise it is cached as a prefix, which only serves streams up to its length. Streamed
+ * misses are not coalesced.
+ * <p>
+ * Upstream fetches lease a session from a {@link ReviewServicePool} and hand it back afterwards,
+ * so fetches for different ISBNs never share a session. A single upstream service may be given
+ * instead, in which case it must be safe for concurrent use; it is then never closed by the
+ * decorator, and closing it is left to its owner.
+ */
+public class CachingReviewService implements ReviewService {
+
+    // The pool leasing upstream review service sessions.
+    private final ReviewServicePool upstream;
+    // The cached non-empty review lists, keyed by ISBN.
+    private final LruCache<String, List<String>> reviews;
+    // The ISBNs known to have no reviews.
+    private final LruCache<String, Boolean> noReviews;
+    // The first reviews of books whose streamed fetch reached its limit, keyed by ISBN.
+    private final LruCache<String, List<String>> reviewPrefixes;
+    // The upstream fetches currently in progress, keyed by ISBN.
+    private final ConcurrentHashMap<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new caching decorator over a single upstream service, shared by all fetches.
+     *
+     * @param delegate    The upstream review service, which must be safe for concurrent use.
+     * @param maximumSize The maximum number of ISBNs to cache reviews for.
+     * @param ttl         The time-to-live of cached reviews.
+     * @param negativeTtl The time-to-live of a cached "no reviews" result.
+     * @param unit        The time unit of both time-to-live values.
+     */
+    public CachingReviewService(ReviewService delegate, int maximumSize, long ttl, long negativeTtl, TimeUnit unit) {
+        this(shared(delegate), maximumSize, ttl, negativeTtl, unit, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new caching decorator leasing a session from a pool for each upstream fetch.
+     *
+     * @param upstream    The pool of upstream review service sessions.
+     * @param maximumSize The maximum number of ISBNs to cache reviews for.
+     * @param ttl         The time-to-live of cached reviews.
+     * @param negativeTtl The time-to-live of a cached "no reviews" result.
+     * @param unit        The time unit of both time-to-live values.
+     */
+    public CachingReviewService(ReviewServicePool upstream, int maximumSize, long ttl, long negativeTtl, TimeUnit unit) {
+        this(upstream, maximumSize, ttl, negativeTtl, unit, System::nanoTime);
+    }
+
+    CachingReviewService(ReviewService delegate, int maximumSize, long ttl, long negativeTtl, TimeUnit unit,
+                         LongSupplier clock) {
+        this(shared(delegate), maximumSize, ttl, negativeTtl, unit, clock);
+    }
+
+    CachingReviewService(ReviewServicePool upstream, int maximumSize, long ttl, long negativeTtl, TimeUnit unit,
+                         LongSupplier clock) {
+        if (upstream == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        if (ttl <= 0 || negativeTtl <= 0) {
+            throw new IllegalArgumentException("Invalid time-to-live.");
+        }
+        this.upstream = upstream;
+        this.reviews = new LruCache<>(maximumSize, ttl, unit, clock);
+        this.noReviews = new LruCache<>(maximumSize, negativeTtl, unit, clock);
+        this.reviewPrefixes = new LruCache<>(maximumSize, ttl, unit, clock);
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        List<String> cached = reviews.get(ISBN);
+        if (cached != null) {
+            return cached;
+        }
+        // The miss was counted above, so the negative lookup only counts its hits.
+        if (noReviews.getIfPresent(ISBN) != null) {
+            return Collections.emptyList();
+        }
+
+        // Join an upstream fetch already in progress for this ISBN, or become the one performing it.
+        CompletableFuture<List<String>> fetch = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inFlight.putIfAbsent(ISBN, fetch);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            // A previous leader may have finished between the lookups above and this one taking over.
+            List<String> result = cachedResult(ISBN);
+            if (result == null) {
+                result = fetch(ISBN);
+            }
+            fetch.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(ISBN, fetch);
+        }
+    }
+
+    @Override
+    public Stream<String> streamReviewsForBook(String ISBN, int limit) throws ReviewException {
+        List<String> cached = reviews.get(ISBN);
+        if (cached == null) {
+            if (noReviews.getIfPresent(ISBN) != null) {
+                return Stream.empty();
+            }
+            List<String> prefix = reviewPrefixes.getIfPresent(ISBN);
+            cached = prefix != null && prefix.size() >= limit ? prefix : fetchFirst(ISBN, limit);
+        }
+        return cached.stream().limit(limit);
+    }
+
+    /**
+     * Does nothing; upstream sessions are handed back after each fetch, and a single shared
+     * upstream service is closed by its owner.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Takes a snapshot of the review cache's hit, miss and eviction counters.
+     *
+     * @return The review cache statistics.
+     */
+    public CacheStats getStats() {
+        return reviews.stats();
+    }
+
+    /**
+     * Takes a snapshot of the "no reviews" cache's hit and eviction counters.
+     * Its misses are not counted, since every miss is already counted by {@link #getStats()}.
+     *
+     * @return The negative cache statistics.
+     */
+    public CacheStats getNegativeStats() {
+        return noReviews.stats();
+    }
+
+    /**
+     * Looks the reviews of a book up in both caches, counting only hits.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The cached reviews, an empty list if the book is known to have none, or null.
+     */
+    private List<String> cachedResult(String ISBN) {
+        List<String> cached = reviews.getIfPresent(ISBN);
+        if (cached != null) {
+            return cached;
+        }
+        return noReviews.getIfPresent(ISBN) != null ? Collections.<String>emptyList() : null;
+    }
+
+    /**
+     * Fetches the reviews of a book upstream with a leased session and caches the result.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The fetched reviews, or an empty list if the book has none.
+     */
+    private List<String> fetch(String ISBN) {
+        ReviewService session = upstream.acquire();
+        List<String> fetched;
+        try {
+            fetched = session.getReviewsForBook(ISBN);
+        } catch (RuntimeException e) {
+            upstream.invalidate(session);
+            throw e;
+        }
+        upstream.release(session);
+        return cache(ISBN, fetched);
+    }
+
+    /**
+     * Streams the first reviews of a book upstream with a leased session and caches them.
+     * The session stays leased until the stream was consumed and closed.
+     *
+     * @param ISBN  The ISBN of the book.
+     * @param limit The maximum number of reviews to fetch.
+     * @return The fetched reviews, at most {@code limit} of them.
+     */
+    private List<String> fetchFirst(String ISBN, int limit) {
+        ReviewService session = upstream.acquire();
+        List<String> fetched = new ArrayList<>();
+        try (Stream<String> streamed = session.streamReviewsForBook(ISBN, limit)) {
+            if (streamed != null) {
+                streamed.limit(limit).forEach(fetched::add);
+            }
+        } catch (RuntimeException e) {
+            upstream.invalidate(session);
+            throw e;
+        }
+        upstream.release(session);
+
+        // Fewer reviews than the limit are every review of the book.
+        if (fetched.size() < limit) {
+            return cache(ISBN, fetched);
+        }
+        List<String> prefix = Collections.unmodifiableList(fetched);
+        reviewPrefixes.put(ISBN, prefix);
+        return prefix;
+    }
+
+    /**
+     * Caches every review of a book, or that it has none.
+     *
+     * @param ISBN    The ISBN of the book.
+     * @param fetched The reviews fetched upstream, or null if the book has none.
+     * @return The cached reviews, or an empty list if the book has none.
+     */
+    private List<String> cache(String ISBN, List<String> fetched) {
+        List<String> result;
+        if (fetched == null || fetched.isEmpty()) {
+            result = Collections.emptyList();
+            noReviews.put(ISBN, Boolean.TRUE);
+        } else {
+            result = Collections.unmodifiableList(new ArrayList<>(fetched));
+            reviews.put(ISBN, result);
+        }
+        return result;
+    }
+
+    /**
+     * Wraps a single upstream service, shared by all fetches and never closed by the decorator.
+     *
+     * @param delegate The upstream review service.
+     * @return A pool that always leases the given service.
+     */
+    private static ReviewServicePool shared(ReviewService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        return new ReviewServicePool() {
+            @Override
+            public ReviewService acquire() {
+                return delegate;
+            }
+
+            @Override
+            public void release(ReviewService session) {
+            }
+
+            @Override
+            public void invalidate(ReviewService session) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Waits for an upstream fetch performed by another caller and shares its outcome.
+     *
+     * @param fetch The fetch in progress.
+     * @return The fetched reviews.
+     */
+    private static List<String> await(CompletableFuture<List<String>> fetch) {
+        try {
+            return fetch.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ReviewException("Review fetch failed!");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ac.il.bgu.qa.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker that stops calls to a failing downstream service.
+ * <p>
+ * While CLOSED, every call is permitted and its outcome is recorded in a sliding window of the
+ * most recent calls. Once the window holds at least the minimum number of calls and the share
+ * of failures reaches the threshold, the breaker turns OPEN and rejects every call without
+ * reaching the service. After the open duration it turns HALF_OPEN and lets a limited number of
+ * trial calls through: if they all succeed, it closes again; if any fails, it re-opens.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        // Calls are permitted and their outcomes are recorded.
+        CLOSED,
+        // Calls are rejected without reaching the service.
+        OPEN,
+        // A limited number of trial calls is permitted to probe the service.
+        HALF_OPEN
+    }
+
+    // The share of failed calls, between 0 and 1, at which the breaker opens.
+    private final double failureRateThreshold;
+    // The minimum number of recorded calls before the failure rate is evaluated.
+    private final int minimumCalls;
+    // How long the breaker stays open before probing the service, in nanoseconds.
+    private final long openDurationNanos;
+    // The number of successful trial calls required to close the breaker again.
+    private final int halfOpenTrialCalls;
+    // The clock used to time the open state, in nanoseconds.
+    private final LongSupplier clock;
+
+    // The outcomes of the most recent calls, as a ring buffer (true means failed).
+    private final boolean[] window;
+    private int windowNext;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsPermitted;
+    private int trialsSucceeded;
+
+    /**
+     * Constructs a new circuit breaker.
+     *
+     * @param failureRateThreshold The share of failed calls, between 0 and 1, at which the breaker opens.
+     * @param windowSize           The number of most recent calls the failure rate is computed over.
+     * @param minimumCalls         The minimum number of recorded calls before the failure rate is evaluated.
+     * @param openDuration         How long the breaker stays open before probing the service.
+     * @param unit                 The time unit of the open duration.
+     * @param halfOpenTrialCalls   The number of successful trial calls required to close the breaker again.
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls,
+                          long openDuration, TimeUnit unit, int halfOpenTrialCalls) {
+        this(failureRateThreshold, windowSize, minimumCalls, openDuration, unit, halfOpenTrialCalls, System::nanoTime);
+    }
+
+    CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls,
+                   long openDuration, TimeUnit unit, int halfOpenTrialCalls, LongSupplier clock) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("Invalid failure rate threshold.");
+        }
+        if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Invalid window size.");
+        }
+        if (openDuration <= 0) {
+            throw new IllegalArgumentException("Invalid open duration.");
+        }
+        if (halfOpenTrialCalls <= 0) {
+            throw new IllegalArgumentException("Invalid half-open trial calls.");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.openDurationNanos = unit.toNanos(openDuration);
+        this.halfOpenTrialCalls = halfOpenTrialCalls;
+        this.clock = clock;
+    }
+
+    /**
+     * Asks for permission to call the service.
+     * Every permitted call must be followed by {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return true if the call may proceed, false if it must fail fast.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDurationNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsPermitted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsPermitted >= halfOpenTrialCalls) {
+                return false;
+            }
+            trialsPermitted++;
+        }
+        return true;
+    }
+
+    /**
+     * Records a successful call.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            trialsSucceeded++;
+            if (trialsSucceeded >= halfOpenTrialCalls) {
+                state = State.CLOSED;
+                resetWindow();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Records a failed call.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the current state of the breaker.
+     *
+     * @return The breaker's state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (windowCount == window.length) {
+            if (window[windowNext]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowNext = (windowNext + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowNext = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
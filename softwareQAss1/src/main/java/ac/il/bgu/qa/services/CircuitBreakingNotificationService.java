@@ -0,0 +1,53 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+/**
+ * A {@link NotificationService} decorator that fails fast while its {@link CircuitBreaker} is open.
+ * A rejected call throws a {@link NotificationException} immediately, so retries against an
+ * unavailable notification backend cost nothing instead of adding to its load.
+ */
+public class CircuitBreakingNotificationService implements NotificationService {
+
+    // The upstream notification service.
+    private final NotificationService delegate;
+    // The breaker guarding the upstream service.
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructs a new circuit breaking decorator.
+     *
+     * @param delegate       The upstream notification service.
+     * @param circuitBreaker The breaker guarding the upstream service.
+     */
+    public CircuitBreakingNotificationService(NotificationService delegate, CircuitBreaker circuitBreaker) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        if (circuitBreaker == null) {
+            throw new IllegalArgumentException("Invalid circuit breaker.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new NotificationException("Notification service circuit is open!", false);
+        }
+        // Every permitted call reports its outcome, even one ending in an Error, so that a half-open
+        // breaker never waits forever for a trial call that will not report back.
+        boolean succeeded = false;
+        try {
+            delegate.notifyUser(userId, message);
+            succeeded = true;
+        } finally {
+            if (succeeded) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link ReviewService} decorator that fails fast while its {@link CircuitBreaker} is open.
+ * A rejected call throws a {@link ReviewException} immediately, without waiting on the
+ * unavailable upstream service. When review sessions are pooled, all sessions should share
+ * one breaker so that they see the same failure rate.
+ * <p>
+ * A streamed fetch reports its outcome when the stream is closed, as a paginated source may fail
+ * while the stream is consumed; such a stream must always be closed.
+ */
+public class CircuitBreakingReviewService implements ReviewService {
+
+    // The upstream review service.
+    private final ReviewService delegate;
+    // The breaker guarding the upstream service.
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructs a new circuit breaking decorator.
+     *
+     * @param delegate       The upstream review service.
+     * @param circuitBreaker The breaker guarding the upstream service.
+     */
+    public CircuitBreakingReviewService(ReviewService delegate, CircuitBreaker circuitBreaker) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        if (circuitBreaker == null) {
+            throw new IllegalArgumentException("Invalid circuit breaker.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new ReviewException("Review service circuit is open!", false);
+        }
+        // Every permitted call reports its outcome, even one ending in an Error, so that a half-open
+        // breaker never waits forever for a trial call that will not report back.
+        boolean succeeded = false;
+        try {
+            List<String> reviews = delegate.getReviewsForBook(ISBN);
+            succeeded = true;
+            return reviews;
+        } finally {
+            if (succeeded) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
+        }
+    }
+
+    @Override
+    public Stream<String> streamReviewsForBook(String ISBN, int limit) throws ReviewException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new ReviewException("Review service circuit is open!", false);
+        }
+        Stream<String> reviews;
+        try {
+            reviews = delegate.streamReviewsForBook(ISBN, limit);
+        } catch (RuntimeException | Error e) {
+            circuitBreaker.onFailure();
+            throw e;
+        }
+        if (reviews == null) {
+            circuitBreaker.onSuccess();
+            return null;
+        }
+
+        // Remember whether consuming the stream failed, and report the outcome once it is closed.
+        boolean[] failed = new boolean[1];
+        Iterator<String> source = reviews.iterator();
+        Iterator<String> guarded = new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return source.hasNext();
+                } catch (RuntimeException | Error e) {
+                    failed[0] = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public String next() {
+                try {
+                    return source.next();
+                } catch (RuntimeException | Error e) {
+                    failed[0] = true;
+                    throw e;
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(guarded, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        reviews.close();
+                    } catch (RuntimeException | Error e) {
+                        failed[0] = true;
+                        throw e;
+                    } finally {
+                        if (failed[0]) {
+                            circuitBreaker.onFailure();
+                        } else {
+                            circuitBreaker.onSuccess();
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,51 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides an interface for databases that can hold several copies of a book, each lent to a
+ * different user. A library with a multi-copy inventory requires its database to implement it.
+ */
+public interface CopyDatabaseService extends DatabaseService {
+
+    /**
+     * Adds a further copy of a book that is already in the database.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    void addCopy(String ISBN);
+
+    /**
+     * Retrieves the number of copies of a book. A book that was never given further copies has one.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The number of copies, borrowed or not.
+     */
+    int getCopyCount(String ISBN);
+
+    /**
+     * Records that a user borrowed one of the copies of a book.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The unique identifier for the user borrowing the copy.
+     */
+    void borrowCopy(String ISBN, String userId);
+
+    /**
+     * Records that a user returned their copy of a book. Returning a copy the user does not hold
+     * has no effect.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The unique identifier for the user returning the copy.
+     */
+    void returnCopy(String ISBN, String userId);
+
+    /**
+     * Retrieves the open loans of copies, for example to restore the borrowers of a catalog that was
+     * restored from storage.
+     *
+     * @return A snapshot mapping the ISBN of each book with borrowed copies to the Ids of their borrowers.
+     */
+    Map<String, Set<String>> getCopyLoans();
+}
@@ -3,6 +3,11 @@ package ac.il.bgu.qa.services;
 import ac.il.bgu.qa.Book;
 import ac.il.bgu.qa.User;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Provides an interface for services responsible for managing the database of books and users.
  */
@@ -24,6 +29,30 @@ public interface DatabaseService {
      */
     void registerUser(String id, User user);
 
+    /**
+     * Adds a batch of books to the database in a single write.
+     * The default implementation falls back to calling {@link #addBook(String, Book)} for each entry.
+     *
+     * @param books The books to be added, keyed by ISBN.
+     */
+    default void addBooks(Map<String, Book> books) {
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            addBook(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Registers a batch of users with the database in a single write.
+     * The default implementation falls back to calling {@link #registerUser(String, User)} for each entry.
+     *
+     * @param users The users to be registered, keyed by user Id.
+     */
+    default void registerUsers(Map<String, User> users) {
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            registerUser(entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Fetches a book from the database using its ISBN.
      *
@@ -40,6 +69,42 @@ public interface DatabaseService {
      */
     User getUserById(String userId);
 
+    /**
+     * Fetches several books from the database in a single lookup.
+     * The default implementation falls back to calling {@link #getBookByISBN(String)} for each ISBN.
+     *
+     * @param ISBNs The International Standard Book Numbers to look up.
+     * @return A map from ISBN to book, containing only the books that exist in the database.
+     */
+    default Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> found = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = getBookByISBN(ISBN);
+            if (book != null) {
+                found.put(ISBN, book);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Fetches several users from the database in a single lookup.
+     * The default implementation falls back to calling {@link #getUserById(String)} for each Id.
+     *
+     * @param userIds The unique identifiers of the users to look up.
+     * @return A map from user Id to user, containing only the users registered in the database.
+     */
+    default Map<String, User> getUsersByIds(Collection<String> userIds) {
+        Map<String, User> found = new HashMap<>();
+        for (String userId : userIds) {
+            User user = getUserById(userId);
+            if (user != null) {
+                found.put(userId, user);
+            }
+        }
+        return found;
+    }
+
     /**
      * Borrows a book identified by its ISBN for a user identified by their userId.
      * This method should appropriately mark the book as borrowed and associate it with the user.
@@ -49,6 +114,44 @@ public interface DatabaseService {
      */
     void borrowBook(String ISBN, String userId);
 
+    /**
+     * Atomically borrows a book for a user if it is currently available.
+     * The default implementation looks the book up and calls {@link #tryBorrow(String, String, Book)}.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return true if the book was borrowed by this call, false if it does not exist or is already borrowed.
+     */
+    default boolean tryBorrow(String ISBN, String userId) {
+        Book book = getBookByISBN(ISBN);
+        return book != null && tryBorrow(ISBN, userId, book);
+    }
+
+    /**
+     * Atomically borrows a book the caller already retrieved for a user, if it is currently available.
+     * The default implementation flips the given book's borrowed state with a single compare-and-set
+     * and records the borrow through {@link #borrowBook(String, String)} only when it wins.
+     * If recording fails, the book's state is flipped back before the failure is rethrown.
+     * Databases that keep the loans themselves decide the borrow on their own state instead.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @param book   The book with the given ISBN, as retrieved from this database.
+     * @return true if the book was borrowed by this call, false if it does not exist or is already borrowed.
+     */
+    default boolean tryBorrow(String ISBN, String userId, Book book) {
+        if (!book.tryBorrow()) {
+            return false;
+        }
+        try {
+            borrowBook(ISBN, userId);
+        } catch (RuntimeException e) {
+            book.tryReturn();
+            throw e;
+        }
+        return true;
+    }
+
     /**
      * Marks a book identified by its ISBN as returned in the database.
      * This should update the book's status to not being borrowed.
@@ -56,4 +159,67 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Atomically returns a book if it is currently borrowed, by the given user if one is given.
+     * The default implementation looks the book up and calls {@link #tryReturn(String, String, Book)}.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be returned.
+     * @param userId The unique identifier for the user returning the book, or null to accept any borrower.
+     * @return The Id of the user whose loan was closed, as for {@link #tryReturn(String, String, Book)},
+     *         or null if the book does not exist or is not borrowed.
+     */
+    default String tryReturn(String ISBN, String userId) {
+        Book book = getBookByISBN(ISBN);
+        return book == null ? null : tryReturn(ISBN, userId, book);
+    }
+
+    /**
+     * Atomically returns a book the caller already retrieved, if it is currently borrowed, by the given
+     * user if one is given. The default implementation flips the given book's borrowed state back with
+     * a single compare-and-set and records the return through {@link #returnBook(String)} only when it
+     * wins. If recording fails, the book's state is flipped again before the failure is rethrown.
+     * As the default implementation does not know the borrowers, it cannot check the user, and reports
+     * an empty Id if none was given; databases that keep the loans themselves check the borrower and
+     * flip the book in one step instead.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be returned.
+     * @param userId The unique identifier for the user returning the book, or null to accept any borrower.
+     * @param book   The book with the given ISBN, as retrieved from this database.
+     * @return The Id of the user whose loan was closed, empty if the borrower is unknown, or null if the
+     *         book was not returned by this call because it does not exist or is not borrowed.
+     */
+    default String tryReturn(String ISBN, String userId, Book book) {
+        if (!book.tryReturn()) {
+            return null;
+        }
+        try {
+            returnBook(ISBN);
+        } catch (RuntimeException e) {
+            book.tryBorrow();
+            throw e;
+        }
+        return userId == null ? "" : userId;
+    }
+
+    /**
+     * Retrieves every book in the database, for example to index a catalog that was restored
+     * from storage. The default implementation does not support listing the books.
+     *
+     * @return A snapshot of the books in the database, in no particular order.
+     * @throws UnsupportedOperationException If the database cannot list its books.
+     */
+    default Collection<Book> getAllBooks() {
+        throw new UnsupportedOperationException("Listing books is not supported.");
+    }
+
+    /**
+     * Retrieves the open loans, for example to restore the borrowers of a catalog that was restored
+     * from storage. The default implementation reports no loans.
+     *
+     * @return A snapshot mapping the ISBN of each borrowed book to the Id of its borrower.
+     */
+    default Map<String, String> getLoans() {
+        return Collections.emptyMap();
+    }
 }
@@ -0,0 +1,616 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A durable local implementation of {@link DatabaseService}.
+ * Every change is appended to a write-ahead log and made durable before it is applied to the
+ * state, so a read never observes a change that a crash could still lose; concurrent writers share
+ * a single fsync through group commit, and their changes are applied in log order. The state
+ * itself is kept in an {@link InMemoryDatabaseService}, which serves all reads. Changes are
+ * validated before they are logged, so a logged change is always applied.
+ * <p>
+ * After a configurable number of logged changes, the state is written to a compacted snapshot and
+ * the log is truncated. On startup, the snapshot is loaded and the log tail replayed on top of it.
+ * Notification services cannot be persisted, so users are restored with the notification service
+ * a resolver provides for their Id. I/O failures are reported as {@link UncheckedIOException}.
+ */
+public class DurableDatabaseService implements CopyDatabaseService, Closeable {
+
+    // The default number of logged changes after which a snapshot is taken.
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+
+    // The record types of the log and the snapshot.
+    private static final byte ADD_BOOK = 1;
+    private static final byte REGISTER_USER = 2;
+    private static final byte BORROW_BOOK = 3;
+    private static final byte RETURN_BOOK = 4;
+    private static final byte COPY_COUNT = 5;
+    private static final byte BORROW_COPY = 6;
+    private static final byte RETURN_COPY = 7;
+
+    // Marks a book in pendingLoans whose return is logged but not yet applied; never a valid user Id.
+    private static final String PENDING_RETURN = "";
+
+    // The current state, serving all reads.
+    private final InMemoryDatabaseService state = new InMemoryDatabaseService();
+    // Provides the notification service of a restored user, by user Id.
+    private final Function<String, NotificationService> notificationServices;
+    // The snapshot file.
+    private final Path snapshotFile;
+    // The write-ahead log of changes since the last snapshot.
+    private final WriteAheadLog log;
+    // The number of logged changes after which a snapshot is taken.
+    private final int snapshotInterval;
+    // The number of changes logged since the last snapshot.
+    private final AtomicInteger changesSinceSnapshot = new AtomicInteger();
+    // The borrowers of books whose borrow is logged but not yet applied, or PENDING_RETURN for a
+    // pending return, keyed by ISBN.
+    private final ConcurrentHashMap<String, String> pendingLoans = new ConcurrentHashMap<>();
+    // The borrowers of copies whose borrow is logged but not yet applied, keyed by ISBN. The sets
+    // are only accessed inside the map's compute methods.
+    private final ConcurrentHashMap<String, Set<String>> pendingCopyLoans = new ConcurrentHashMap<>();
+    // Serializes the additions of copies, so that each logged copy count follows the previous one.
+    private final Object copyCountLock = new Object();
+    // Guards the applied position, so that changes are applied in log order.
+    private final Object applyLock = new Object();
+    // The logical log position up to which changes were applied to the state (guarded by applyLock).
+    private long appliedPosition;
+
+    /**
+     * Opens a durable database in the given directory, restoring its previous state.
+     *
+     * @param directory            The directory holding the snapshot and the log, created if missing.
+     * @param notificationServices Provides the notification service of a restored user, by user Id.
+     */
+    public DurableDatabaseService(Path directory, Function<String, NotificationService> notificationServices) {
+        this(directory, notificationServices, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens a durable database in the given directory, restoring its previous state.
+     *
+     * @param directory            The directory holding the snapshot and the log, created if missing.
+     * @param notificationServices Provides the notification service of a restored user, by user Id.
+     * @param snapshotInterval     The number of logged changes after which a snapshot is taken.
+     */
+    public DurableDatabaseService(Path directory, Function<String, NotificationService> notificationServices,
+                                  int snapshotInterval) {
+        this(directory, notificationServices, snapshotInterval, WriteAheadLog::new);
+    }
+
+    /**
+     * Opens a durable database in the given directory over a log opened by the given opener.
+     *
+     * @param directory            The directory holding the snapshot and the log, created if missing.
+     * @param notificationServices Provides the notification service of a restored user, by user Id.
+     * @param snapshotInterval     The number of logged changes after which a snapshot is taken.
+     * @param logOpener            Opens the write-ahead log.
+     */
+    DurableDatabaseService(Path directory, Function<String, NotificationService> notificationServices,
+                           int snapshotInterval, WriteAheadLog.Opener logOpener) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Invalid directory.");
+        }
+        if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification services.");
+        }
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Invalid snapshot interval.");
+        }
+        this.notificationServices = notificationServices;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotFile = directory.resolve("snapshot.dat");
+        try {
+            Files.createDirectories(directory);
+            WriteAheadLog.replaySnapshot(snapshotFile, this::apply);
+            this.log = logOpener.open(directory.resolve("wal.log"), this::apply);
+            this.appliedPosition = log.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        commit(bookRecord(ISBN, book), 1, () -> state.addBook(ISBN, book));
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            byte[] record = bookRecord(entry.getKey(), entry.getValue());
+            records.write(record, 0, record.length);
+        }
+        commit(records.toByteArray(), books.size(), () -> state.addBooks(books));
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        commit(userRecord(id, user), 1, () -> state.registerUser(id, user));
+    }
+
+    @Override
+    public void registerUsers(Map<String, User> users) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            byte[] record = userRecord(entry.getKey(), entry.getValue());
+            records.write(record, 0, record.length);
+        }
+        commit(records.toByteArray(), users.size(), () -> state.registerUsers(users));
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return state.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return state.getUserById(userId);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return state.getBooksByISBN(ISBNs);
+    }
+
+    @Override
+    public Map<String, User> getUsersByIds(Collection<String> userIds) {
+        return state.getUsersByIds(userIds);
+    }
+
+    @Override
+    public Collection<Book> getAllBooks() {
+        return state.getAllBooks();
+    }
+
+    @Override
+    public Map<String, String> getLoans() {
+        return state.getLoans();
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        // Books are never removed, so a borrow of a missing book can be rejected before it is logged.
+        if (state.getBookByISBN(ISBN) == null) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        // Reserve the book until the borrow is applied, so that a borrow by another user is rejected
+        // before it is logged rather than when it is applied.
+        String pending = pendingLoans.putIfAbsent(ISBN, userId);
+        if (pending != null && !pending.equals(userId)) {
+            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+        try {
+            String borrower = state.getBorrowerId(ISBN);
+            if (borrower != null && !borrower.equals(userId)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            commit(record(BORROW_BOOK, ISBN, userId), 1, () -> state.borrowBook(ISBN, userId));
+        } finally {
+            if (pending == null) {
+                pendingLoans.remove(ISBN, userId);
+            }
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        commit(record(RETURN_BOOK, ISBN), 1, () -> state.returnBook(ISBN));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The borrow is decided against both the applied and the pending loans, and the stored book is
+     * flipped only when the logged borrow is applied, so a borrow that never became durable leaves
+     * the book untouched.
+     *
+     * @throws UncheckedIOException If the borrow cannot be made durable.
+     */
+    @Override
+    public boolean tryBorrow(String ISBN, String userId, Book book) {
+        Book stored = state.getBookByISBN(ISBN);
+        if (stored == null) {
+            return false;
+        }
+        // Only a borrow that passes the checks reserves the book, so a failed attempt never blocks another.
+        boolean[] reserved = new boolean[1];
+        pendingLoans.compute(ISBN, (key, pending) -> {
+            if (pending != null || state.getBorrowerId(key) != null || stored.isBorrowed()) {
+                return pending;
+            }
+            reserved[0] = true;
+            return userId;
+        });
+        if (!reserved[0]) {
+            return false;
+        }
+        try {
+            boolean[] borrowed = new boolean[1];
+            commit(record(BORROW_BOOK, ISBN, userId), 1, () -> borrowed[0] = state.tryBorrow(ISBN, userId, stored));
+            return borrowed[0];
+        } finally {
+            pendingLoans.remove(ISBN, userId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The borrower is checked against the applied loans while no other change of the book is pending,
+     * and the stored book is flipped back only when the logged return is applied.
+     *
+     * @throws UncheckedIOException If the return cannot be made durable.
+     */
+    @Override
+    public String tryReturn(String ISBN, String userId, Book book) {
+        Book stored = state.getBookByISBN(ISBN);
+        if (stored == null) {
+            return null;
+        }
+        String[] borrower = new String[1];
+        pendingLoans.compute(ISBN, (key, pending) -> {
+            String current = state.getBorrowerId(key);
+            if (pending != null || current == null || (userId != null && !current.equals(userId))) {
+                return pending;
+            }
+            borrower[0] = current;
+            return PENDING_RETURN;
+        });
+        if (borrower[0] == null) {
+            return null;
+        }
+        try {
+            String[] returned = new String[1];
+            commit(record(RETURN_BOOK, ISBN), 1, () -> returned[0] = state.tryReturn(ISBN, borrower[0], stored));
+            return returned[0];
+        } finally {
+            pendingLoans.remove(ISBN, PENDING_RETURN);
+        }
+    }
+
+    @Override
+    public void addCopy(String ISBN) {
+        if (state.getBookByISBN(ISBN) == null) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        // The new count is logged rather than the addition, so that replaying the log is harmless.
+        synchronized (copyCountLock) {
+            int count = state.getCopyCount(ISBN) + 1;
+            commit(record(COPY_COUNT, ISBN, Integer.toString(count)), 1, () -> state.setCopyCount(ISBN, count));
+        }
+    }
+
+    @Override
+    public int getCopyCount(String ISBN) {
+        return state.getCopyCount(ISBN);
+    }
+
+    @Override
+    public void borrowCopy(String ISBN, String userId) {
+        if (state.getBookByISBN(ISBN) == null) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        // Reserve a copy until the borrow is applied, so that a borrow beyond the copies left is
+        // rejected before it is logged rather than when it is applied.
+        boolean reserved = reserveCopy(ISBN, userId);
+        try {
+            commit(record(BORROW_COPY, ISBN, userId), 1, () -> state.borrowCopy(ISBN, userId));
+        } finally {
+            if (reserved) {
+                pendingCopyLoans.computeIfPresent(ISBN, (key, pending) -> {
+                    pending.remove(userId);
+                    return pending.isEmpty() ? null : pending;
+                });
+            }
+        }
+    }
+
+    @Override
+    public void returnCopy(String ISBN, String userId) {
+        if (state.getCopyHolders(ISBN).contains(userId)) {
+            commit(record(RETURN_COPY, ISBN, userId), 1, () -> state.returnCopy(ISBN, userId));
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> getCopyLoans() {
+        return state.getCopyLoans();
+    }
+
+    /**
+     * Retrieves the Id of the user currently holding a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        return state.getBorrowerId(ISBN);
+    }
+
+    /**
+     * Reserves a copy of a book for a user, counting both the applied and the pending loans.
+     *
+     * @return true if a copy was reserved, false if the user already holds or awaits one.
+     * @throws BookAlreadyBorrowedException If every copy is taken.
+     */
+    private boolean reserveCopy(String ISBN, String userId) {
+        boolean[] reserved = new boolean[1];
+        pendingCopyLoans.compute(ISBN, (key, pending) -> {
+            Set<String> holders = state.getCopyHolders(key);
+            if (holders.contains(userId) || (pending != null && pending.contains(userId))) {
+                return pending;
+            }
+            int taken = holders.size() + (pending == null ? 0 : pending.size());
+            if (taken >= state.getCopyCount(key)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            Set<String> updated = pending == null ? new HashSet<>() : pending;
+            updated.add(userId);
+            reserved[0] = true;
+            return updated;
+        });
+        return reserved[0];
+    }
+
+    /**
+     * Writes the current state to a compacted snapshot and truncates the log.
+     * Changes are blocked while the snapshot is written.
+     */
+    public void snapshot() {
+        changesSinceSnapshot.set(0);
+        compact();
+    }
+
+    /**
+     * Retrieves the size of the log of changes since the last snapshot.
+     *
+     * @return The size of the log, in bytes.
+     */
+    public long getLogSize() {
+        return log.size();
+    }
+
+    /**
+     * Closes the log. Every change that was acknowledged is already durable.
+     *
+     * @throws IOException If the log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Logs changes, waits for them to become durable, and then applies them to the state in log order.
+     * If the log cannot be forced, the changes are not applied, but later changes still are.
+     *
+     * @param records The framed records of the changes.
+     * @param changes The number of changes.
+     * @param apply   Applies the changes to the state.
+     */
+    private void commit(byte[] records, int changes, Runnable apply) {
+        long position = log.append(records);
+        long start = position - records.length;
+        boolean durable = false;
+        try {
+            log.awaitDurable(position);
+            durable = true;
+        } finally {
+            applyInOrder(start, position, durable ? apply : null);
+        }
+
+        // Take a snapshot once enough changes were logged; only the thread that resets the counter does so.
+        if (changesSinceSnapshot.addAndGet(changes) >= snapshotInterval
+                && changesSinceSnapshot.getAndSet(0) >= snapshotInterval) {
+            compact();
+        }
+    }
+
+    /**
+     * Applies logged changes once every change logged before them was applied.
+     *
+     * @param start    The logical log position of the changes.
+     * @param position The logical log position after the changes.
+     * @param apply    Applies the changes to the state, or null to skip them.
+     */
+    private void applyInOrder(long start, long position, Runnable apply) {
+        boolean interrupted = false;
+        synchronized (applyLock) {
+            while (appliedPosition < start) {
+                try {
+                    applyLock.wait();
+                } catch (InterruptedException e) {
+                    // Skipping the turn would stall every later change, so the interrupt is restored afterwards.
+                    interrupted = true;
+                }
+            }
+            try {
+                if (apply != null) {
+                    apply.run();
+                }
+            } finally {
+                appliedPosition = position;
+                applyLock.notifyAll();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a snapshot and truncates the log, once every logged change was applied to the state.
+     */
+    private void compact() {
+        log.compact(snapshotFile, out -> {
+            // Appends are blocked while the snapshot is written, so the logged changes still being
+            // applied are the last ones, and the snapshot waits for them.
+            awaitApplied(log.position());
+            writeSnapshot(out);
+        });
+    }
+
+    private void awaitApplied(long position) throws InterruptedIOException {
+        synchronized (applyLock) {
+            while (appliedPosition < position) {
+                try {
+                    applyLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while awaiting pending changes.");
+                }
+            }
+        }
+    }
+
+    private void writeSnapshot(OutputStream out) throws IOException {
+        for (Map.Entry<String, Book> entry : state.books().entrySet()) {
+            out.write(bookRecord(entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, User> entry : state.users().entrySet()) {
+            out.write(userRecord(entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, String> entry : state.loans().entrySet()) {
+            out.write(record(BORROW_BOOK, entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, Integer> entry : state.copyCounts().entrySet()) {
+            out.write(record(COPY_COUNT, entry.getKey(), Integer.toString(entry.getValue())));
+        }
+        for (Map.Entry<String, Set<String>> entry : state.getCopyLoans().entrySet()) {
+            for (String userId : entry.getValue()) {
+                out.write(record(BORROW_COPY, entry.getKey(), userId));
+            }
+        }
+    }
+
+    /**
+     * Applies a replayed record to the state.
+     *
+     * @param payload The payload of the record.
+     * @throws IOException If the record is malformed.
+     */
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String ISBN;
+        Book book;
+        switch (type) {
+            case ADD_BOOK:
+                ISBN = readString(in);
+                book = new Book(ISBN, readString(in), readString(in));
+                // Replaying a log over a snapshot that already contains it must keep the book's loans.
+                if (state.getBorrowerId(ISBN) != null || state.isEveryCopyBorrowed(ISBN)) {
+                    book.tryBorrow();
+                }
+                state.addBook(ISBN, book);
+                break;
+            case REGISTER_USER:
+                String id = readString(in);
+                state.registerUser(id, new User(readString(in), id, notificationServices.apply(id)));
+                break;
+            case BORROW_BOOK:
+                ISBN = readString(in);
+                String userId = readString(in);
+                book = state.getBookByISBN(ISBN);
+                if (book != null) {
+                    // A replayed borrow replaces the current borrower, which a snapshot newer than the
+                    // log may already hold.
+                    book.tryBorrow();
+                    state.returnBook(ISBN);
+                    state.borrowBook(ISBN, userId);
+                }
+                break;
+            case RETURN_BOOK:
+                ISBN = readString(in);
+                book = state.getBookByISBN(ISBN);
+                if (book != null) {
+                    book.tryReturn();
+                }
+                state.returnBook(ISBN);
+                break;
+            case COPY_COUNT:
+                ISBN = readString(in);
+                int count;
+                try {
+                    count = Integer.parseInt(readString(in));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed record.");
+                }
+                if (state.getBookByISBN(ISBN) != null) {
+                    state.setCopyCount(ISBN, count);
+                }
+                break;
+            case BORROW_COPY:
+                ISBN = readString(in);
+                state.restoreCopyLoan(ISBN, readString(in));
+                break;
+            case RETURN_COPY:
+                ISBN = readString(in);
+                state.returnCopy(ISBN, readString(in));
+                break;
+            default:
+                throw new IOException("Unknown record type.");
+        }
+    }
+
+    private static byte[] bookRecord(String ISBN, Book book) {
+        return record(ADD_BOOK, ISBN, book.getTitle(), book.getAuthor());
+    }
+
+    private static byte[] userRecord(String id, User user) {
+        return record(REGISTER_USER, id, user.getName());
+    }
+
+    /**
+     * Encodes a record. Every field is written as its UTF-8 length, or -1 for null, followed by its
+     * UTF-8 bytes, so fields are not limited to the 64KB of {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static byte[] record(byte type, String... fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            for (String field : fields) {
+                if (field == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] encoded = field.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return WriteAheadLog.frame(bytes.toByteArray());
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Malformed record.");
+        }
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+}
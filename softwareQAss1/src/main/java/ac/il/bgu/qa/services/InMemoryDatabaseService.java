@@ -0,0 +1,316 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An in-memory implementation of {@link DatabaseService} built on concurrent maps.
+ * Borrow and return operations are single atomic map updates keyed by ISBN, so requests for
+ * different books proceed in parallel instead of serializing on a single lock, and a book
+ * never has more than one borrower.
+ * <p>
+ * Books may also be held in several copies, each lent to a different user. The copies of a book
+ * are changed in a single atomic update of its copy loans, and the book reads as borrowed while
+ * every copy is.
+ */
+public class InMemoryDatabaseService implements CopyDatabaseService {
+
+    // The books in the database, keyed by ISBN.
+    private final ConcurrentHashMap<String, Book> books = new ConcurrentHashMap<>();
+    // The registered users, keyed by user Id.
+    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+    // The borrowing associations, mapping a book's ISBN to the Id of the user holding it.
+    private final ConcurrentHashMap<String, String> loans = new ConcurrentHashMap<>();
+    // The number of copies of the books held in more than one, keyed by ISBN.
+    private final ConcurrentHashMap<String, Integer> copyCounts = new ConcurrentHashMap<>();
+    // The Ids of the users holding copies of each book, keyed by ISBN. The sets are replaced rather
+    // than modified, so snapshots can share them.
+    private final ConcurrentHashMap<String, Set<String>> copyLoans = new ConcurrentHashMap<>();
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        books.put(ISBN, book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        users.put(id, user);
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        this.books.putAll(books);
+    }
+
+    @Override
+    public void registerUsers(Map<String, User> users) {
+        this.users.putAll(users);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return books.get(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return users.get(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        // A borrow can only be recorded for a book that exists in the database.
+        if (!books.containsKey(ISBN)) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        // Recording the same loan again is allowed, so that replaying a log is harmless.
+        String borrower = loans.putIfAbsent(ISBN, userId);
+        if (borrower != null && !borrower.equals(userId)) {
+            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The stored book is flipped inside the atomic update that records the loan, so the book reads as
+     * borrowed exactly while its loan is recorded.
+     */
+    @Override
+    public boolean tryBorrow(String ISBN, String userId, Book book) {
+        Book stored = books.get(ISBN);
+        if (stored == null) {
+            return false;
+        }
+        boolean[] borrowed = new boolean[1];
+        loans.computeIfAbsent(ISBN, key -> {
+            borrowed[0] = stored.tryBorrow();
+            return borrowed[0] ? userId : null;
+        });
+        return borrowed[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     * The borrower is checked and the stored book flipped back inside the atomic update that removes
+     * the loan.
+     */
+    @Override
+    public String tryReturn(String ISBN, String userId, Book book) {
+        Book stored = books.get(ISBN);
+        if (stored == null) {
+            return null;
+        }
+        String[] returned = new String[1];
+        loans.computeIfPresent(ISBN, (key, borrower) -> {
+            if ((userId != null && !borrower.equals(userId)) || !stored.tryReturn()) {
+                return borrower;
+            }
+            returned[0] = borrower;
+            return null;
+        });
+        return returned[0];
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        loans.remove(ISBN);
+    }
+
+    /**
+     * Retrieves the Id of the user currently holding a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        return loans.get(ISBN);
+    }
+
+    @Override
+    public void addCopy(String ISBN) {
+        updateCopyCount(ISBN, count -> count + 1);
+    }
+
+    @Override
+    public int getCopyCount(String ISBN) {
+        return copyCounts.getOrDefault(ISBN, 1);
+    }
+
+    @Override
+    public void borrowCopy(String ISBN, String userId) {
+        Book book = requireBook(ISBN);
+        copyLoans.compute(ISBN, (key, holders) -> {
+            // Recording the same loan again is allowed, so that replaying a log is harmless.
+            if (holders != null && !holders.contains(userId) && holders.size() >= getCopyCount(key)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            return withHolder(book, key, holders, userId);
+        });
+    }
+
+    @Override
+    public void returnCopy(String ISBN, String userId) {
+        Book book = books.get(ISBN);
+        if (book == null) {
+            return;
+        }
+        copyLoans.computeIfPresent(ISBN, (key, holders) -> {
+            if (!holders.contains(userId)) {
+                return holders;
+            }
+            Set<String> remaining = new HashSet<>(holders);
+            remaining.remove(userId);
+            updateShelf(book, remaining.size(), getCopyCount(key));
+            return remaining.isEmpty() ? null : Collections.unmodifiableSet(remaining);
+        });
+    }
+
+    @Override
+    public Map<String, Set<String>> getCopyLoans() {
+        return new HashMap<>(copyLoans);
+    }
+
+    /**
+     * Sets the number of copies of a book, for restoring it from a log.
+     *
+     * @param ISBN  The International Standard Book Number of the book.
+     * @param count The number of copies.
+     */
+    void setCopyCount(String ISBN, int count) {
+        updateCopyCount(ISBN, current -> count);
+    }
+
+    /**
+     * Records a loan of a copy without checking that a copy is left, for replaying a log over a
+     * snapshot that may already hold later loans of the book.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the borrowing user.
+     */
+    void restoreCopyLoan(String ISBN, String userId) {
+        Book book = books.get(ISBN);
+        if (book != null) {
+            copyLoans.compute(ISBN, (key, holders) -> withHolder(book, key, holders, userId));
+        }
+    }
+
+    /**
+     * Retrieves the Ids of the users holding copies of a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return A read-only set of the borrowers' Ids, empty if no copy is borrowed.
+     */
+    Set<String> getCopyHolders(String ISBN) {
+        Set<String> holders = copyLoans.get(ISBN);
+        return holders == null ? Collections.<String>emptySet() : holders;
+    }
+
+    /**
+     * Checks whether every copy of a book is borrowed.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return true if no copy is left, false otherwise.
+     */
+    boolean isEveryCopyBorrowed(String ISBN) {
+        Set<String> holders = copyLoans.get(ISBN);
+        return holders != null && holders.size() >= getCopyCount(ISBN);
+    }
+
+    /**
+     * Retrieves a read-only view of the copy counts of the books held in more than one copy.
+     *
+     * @return The copy counts, keyed by ISBN.
+     */
+    Map<String, Integer> copyCounts() {
+        return Collections.unmodifiableMap(copyCounts);
+    }
+
+    private Book requireBook(String ISBN) {
+        Book book = books.get(ISBN);
+        if (book == null) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        return book;
+    }
+
+    private void updateCopyCount(String ISBN, IntUnaryOperator update) {
+        Book book = requireBook(ISBN);
+        // The update runs inside the compute on the book's copy loans, which serializes it with them.
+        copyLoans.compute(ISBN, (key, holders) -> {
+            int count = update.applyAsInt(getCopyCount(key));
+            copyCounts.put(key, count);
+            updateShelf(book, holders == null ? 0 : holders.size(), count);
+            return holders;
+        });
+    }
+
+    private Set<String> withHolder(Book book, String ISBN, Set<String> holders, String userId) {
+        if (holders != null && holders.contains(userId)) {
+            return holders;
+        }
+        Set<String> updated = holders == null ? new HashSet<>() : new HashSet<>(holders);
+        updated.add(userId);
+        updateShelf(book, updated.size(), getCopyCount(ISBN));
+        return Collections.unmodifiableSet(updated);
+    }
+
+    /**
+     * Marks a book as borrowed while every copy is, and as available otherwise.
+     */
+    private static void updateShelf(Book book, int borrowed, int count) {
+        if (borrowed >= count) {
+            book.tryBorrow();
+        } else {
+            book.tryReturn();
+        }
+    }
+
+    @Override
+    public Collection<Book> getAllBooks() {
+        return new ArrayList<>(books.values());
+    }
+
+    @Override
+    public Map<String, String> getLoans() {
+        return new HashMap<>(loans);
+    }
+
+    /**
+     * Retrieves a read-only view of the books, keyed by ISBN.
+     *
+     * @return The books in the database.
+     */
+    Map<String, Book> books() {
+        return Collections.unmodifiableMap(books);
+    }
+
+    /**
+     * Retrieves a read-only view of the registered users, keyed by user Id.
+     *
+     * @return The users in the database.
+     */
+    Map<String, User> users() {
+        return Collections.unmodifiableMap(users);
+    }
+
+    /**
+     * Retrieves a read-only view of the loans, mapping a book's ISBN to the Id of its borrower.
+     *
+     * @return The current loans.
+     */
+    Map<String, String> loans() {
+        return Collections.unmodifiableMap(loans);
+    }
+}
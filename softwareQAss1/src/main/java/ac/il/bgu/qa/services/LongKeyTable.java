@@ -0,0 +1,433 @@
+package ac.il.bgu.qa.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A concurrent open-addressing hash table keyed by non-negative longs.
+ * <p>
+ * Keys and values are kept in parallel arrays and probed linearly, so an entry costs a primitive
+ * key and a reference instead of a boxed or string key and a map node. Each entry may also carry a
+ * primitive long attribute in a third array. The table is split into segments selected by the key's
+ * hash; each segment is guarded by its own {@link StampedLock}, where lookups are optimistic and only
+ * take the read lock if a write raced with them. Entries cannot be removed.
+ *
+ * @param <V> The type of the values.
+ */
+class LongKeyTable<V> {
+
+    // Marks an empty slot, and an entry without an attribute.
+    static final long NONE = -1;
+    // The bounds of a segment's capacity; a segment grows once it is more than three quarters full.
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    // The segments, selected by the high bits of the key's hash.
+    private final Segment<V>[] segments;
+    // The number of hash bits used to select a segment.
+    private final int segmentShift;
+    // Whether the entries carry an attribute.
+    private final boolean withAttributes;
+
+    /**
+     * Constructs a new table.
+     *
+     * @param segmentCount   The minimum number of segments, rounded up to a power of two.
+     * @param expectedSize   The number of entries the table should hold without growing.
+     * @param withAttributes Whether to store a long attribute with every entry.
+     */
+    @SuppressWarnings("unchecked")
+    LongKeyTable(int segmentCount, int expectedSize, boolean withAttributes) {
+        if (segmentCount <= 0 || segmentCount > 1 << 16) {
+            throw new IllegalArgumentException("Invalid segment count.");
+        }
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Invalid expected size.");
+        }
+        int count = powerOfTwoAtLeast(segmentCount);
+        this.segments = (Segment<V>[]) new Segment<?>[count];
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+        this.withAttributes = withAttributes;
+        // Size each segment so that its share of the expected entries fills it at most three quarters.
+        long perSegment = ((long) expectedSize + count - 1) / count;
+        int capacity = powerOfTwoAtLeast((int) Math.min(MAX_SEGMENT_CAPACITY, Math.max(MIN_SEGMENT_CAPACITY, perSegment * 4 / 3 + 1)));
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(capacity, withAttributes);
+        }
+    }
+
+    /**
+     * Retrieves the value of a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key is not in the table.
+     */
+    V get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, (int) hash);
+    }
+
+    /**
+     * Retrieves the attribute of a key.
+     *
+     * @param key The key.
+     * @return The attribute, or {@link #NONE} if the key is not in the table or has no attribute.
+     */
+    long getAttribute(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).getAttribute(key, (int) hash);
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value but keeping its attribute.
+     *
+     * @param key   The key, which must not be negative.
+     * @param value The value.
+     */
+    void put(long key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid key.");
+        }
+        long hash = hash(key);
+        segmentFor(hash).put(key, (int) hash, value);
+    }
+
+    /**
+     * Sets the attribute of a key already in the table.
+     *
+     * @param key       The key.
+     * @param attribute The attribute, or {@link #NONE} to clear it.
+     * @return true if the key was found, false otherwise.
+     */
+    boolean setAttribute(long key, long attribute) {
+        if (!withAttributes) {
+            throw new IllegalStateException("Attributes are not enabled.");
+        }
+        long hash = hash(key);
+        return segmentFor(hash).setAttribute(key, (int) hash, attribute);
+    }
+
+    /**
+     * Sets the attribute of a key if its entry passes a test. The test and the update run under the
+     * segment's write lock, so a reader that observes the test's effect on the value and then reads
+     * the attribute waits for the update instead of seeing the old attribute.
+     *
+     * @param key       The key.
+     * @param test      The test of the value and its current attribute, which may change the value's own state.
+     * @param attribute The attribute to set if the test passes.
+     * @return true if the key was found and its entry passed the test, false otherwise.
+     */
+    boolean setAttributeIf(long key, EntryTest<? super V> test, long attribute) {
+        if (!withAttributes) {
+            throw new IllegalStateException("Attributes are not enabled.");
+        }
+        long hash = hash(key);
+        return segmentFor(hash).setAttributeIf(key, (int) hash, test, attribute);
+    }
+
+    /**
+     * Retrieves the values of the table. Each segment is copied under its read lock, so the result
+     * is consistent per segment, but not across segments written to concurrently.
+     *
+     * @return A snapshot of the values, in no particular order.
+     */
+    List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        for (Segment<V> segment : segments) {
+            segment.copyValuesTo(values);
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves the attributes of the table, with the same consistency as {@link #values()}.
+     *
+     * @return A snapshot mapping each key that carries an attribute to its attribute.
+     */
+    Map<Long, Long> attributes() {
+        if (!withAttributes) {
+            throw new IllegalStateException("Attributes are not enabled.");
+        }
+        Map<Long, Long> attributes = new HashMap<>();
+        for (Segment<V> segment : segments) {
+            segment.copyAttributesTo(attributes);
+        }
+        return attributes;
+    }
+
+    /**
+     * Retrieves the number of entries in the table.
+     *
+     * @return The number of keys.
+     */
+    int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * A test of an entry of the table.
+     *
+     * @param <V> The type of the values.
+     */
+    interface EntryTest<V> {
+
+        /**
+         * Tests an entry.
+         *
+         * @param value     The value of the entry.
+         * @param attribute The attribute of the entry, or {@link #NONE} if it has none.
+         * @return true if the entry passes the test, false otherwise.
+         */
+        boolean test(V value, long attribute);
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    /**
+     * Spreads the bits of a key, since consecutive ISBNs and user Ids differ in their low digits only.
+     * This is the finalizer of MurmurHash3.
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int powerOfTwoAtLeast(int value) {
+        int size = Integer.highestOneBit(value);
+        return size < value ? size << 1 : size;
+    }
+
+    /**
+     * A part of the table with its own arrays and lock.
+     */
+    private static final class Segment<V> {
+
+        // Guards the arrays: writes are exclusive, lookups are optimistic.
+        private final StampedLock lock = new StampedLock();
+        // The key of each slot, or NONE if the slot is empty.
+        private long[] keys;
+        // The value of each slot.
+        private Object[] values;
+        // The attribute of each slot, or null if attributes are not enabled.
+        private long[] attributes;
+        // The number of occupied slots.
+        private int size;
+
+        Segment(int capacity, boolean withAttributes) {
+            allocate(capacity, withAttributes);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Object value = valueAt(key, hash);
+                if (lock.validate(stamp)) {
+                    return (V) value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return (V) valueAt(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long getAttribute(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                long attribute = attributeAt(key, hash);
+                if (lock.validate(stamp)) {
+                    return attribute;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return attributeAt(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void put(long key, int hash, Object value) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(keys, key, hash);
+                if (slot >= 0) {
+                    values[slot] = value;
+                    return;
+                }
+                if (size + 1 > keys.length / 4 * 3) {
+                    grow();
+                }
+                slot = find(keys, key, hash);
+                slot = -slot - 1;
+                values[slot] = value;
+                keys[slot] = key;
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean setAttribute(long key, int hash, long attribute) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(keys, key, hash);
+                if (slot < 0) {
+                    return false;
+                }
+                attributes[slot] = attribute;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean setAttributeIf(long key, int hash, EntryTest<? super V> test, long attribute) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(keys, key, hash);
+                if (slot < 0 || !test.test((V) values[slot], attributes[slot])) {
+                    return false;
+                }
+                attributes[slot] = attribute;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void copyValuesTo(List<V> target) {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != NONE) {
+                        target.add((V) values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void copyAttributesTo(Map<Long, Long> target) {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != NONE && attributes[i] != NONE) {
+                        target.put(keys[i], attributes[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Looks a key up without locking. The arrays may be swapped by a concurrent resize, so they
+         * are read once and checked for consistency; an inconsistent view fails validation anyway.
+         */
+        private Object valueAt(long key, int hash) {
+            long[] keys = this.keys;
+            Object[] values = this.values;
+            if (keys == null || values == null || keys.length != values.length) {
+                return null;
+            }
+            int slot = find(keys, key, hash);
+            return slot >= 0 ? values[slot] : null;
+        }
+
+        private long attributeAt(long key, int hash) {
+            long[] keys = this.keys;
+            long[] attributes = this.attributes;
+            if (keys == null || attributes == null || keys.length != attributes.length) {
+                return NONE;
+            }
+            int slot = find(keys, key, hash);
+            return slot >= 0 ? attributes[slot] : NONE;
+        }
+
+        /**
+         * Probes for a key.
+         *
+         * @return The slot holding the key, or {@code -(slot + 1)} for the empty slot where it belongs.
+         */
+        private static int find(long[] keys, long key, int hash) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            // Bound the probe, since an unlocked lookup may observe a table that is being filled.
+            for (int probes = 0; probes < keys.length; probes++) {
+                long candidate = keys[slot];
+                if (candidate == key) {
+                    return slot;
+                }
+                if (candidate == NONE) {
+                    return -slot - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        private void grow() {
+            if (keys.length == MAX_SEGMENT_CAPACITY) {
+                throw new IllegalStateException("Table is full.");
+            }
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] oldAttributes = attributes;
+            allocate(oldKeys.length * 2, oldAttributes != null);
+            for (int i = 0; i < oldKeys.length; i++) {
+                long key = oldKeys[i];
+                if (key != NONE) {
+                    int slot = -find(keys, key, (int) hash(key)) - 1;
+                    keys[slot] = key;
+                    values[slot] = oldValues[i];
+                    if (oldAttributes != null) {
+                        attributes[slot] = oldAttributes[i];
+                    }
+                }
+            }
+        }
+
+        private void allocate(int capacity, boolean withAttributes) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, NONE);
+            long[] attributes = null;
+            if (withAttributes) {
+                attributes = new long[capacity];
+                Arrays.fill(attributes, NONE);
+            }
+            this.values = new Object[capacity];
+            this.attributes = attributes;
+            this.keys = keys;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ac.il.bgu.qa.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, thread-safe least-recently-used cache with an optional time-to-live.
+ * The cache is split into independently locked segments, which share the capacity between them,
+ * so that concurrent lookups of different keys rarely contend.
+ * <p>
+ * A value loaded from a backing store can be stored with {@link #putIfUnchanged(Object, Object, long)},
+ * which drops it if the key may have been invalidated since the load started, so that a slow load
+ * cannot bring back a value that a concurrent write has just replaced.
+ *
+ * @param <K> The type of the cache keys.
+ * @param <V> The type of the cached values.
+ */
+class LruCache<K, V> {
+
+    // The independently locked segments of the cache.
+    private final Segment<K, V>[] segments;
+    // Mask used to map a key hash onto a segment index (segment count is a power of two).
+    private final int segmentMask;
+    // The time-to-live of an entry in nanoseconds, or 0 if entries never expire.
+    private final long ttlNanos;
+    // The clock used to timestamp entries, in nanoseconds.
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maximumSize The maximum number of entries held by the cache.
+     * @param ttl         The time-to-live of an entry, or 0 if entries never expire.
+     * @param unit        The time unit of the time-to-live.
+     * @param clock       The clock used to timestamp entries, in nanoseconds.
+     */
+    @SuppressWarnings("unchecked")
+    LruCache(int maximumSize, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size.");
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Invalid time-to-live.");
+        }
+        // Use one segment per 64 entries, up to 16 segments, so small caches keep an exact LRU order.
+        int segmentCount = Math.min(16, Integer.highestOneBit(Math.max(1, maximumSize / 64)));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        // Spread the remainder over the first segments, so that the capacities add up to the maximum size.
+        for (int i = 0; i < segmentCount; i++) {
+            int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment<>(capacity, evictions);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+    }
+
+    /**
+     * Looks up a value, counting the lookup as a hit or a miss.
+     *
+     * @param key The key to look up.
+     * @return The cached value, or null if it is absent or expired.
+     */
+    V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            CacheEntry<V> entry = segment.get(key);
+            if (entry != null && ttlNanos > 0 && clock.getAsLong() - entry.writtenAt >= ttlNanos) {
+                segment.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Looks up a value, counting the lookup as a hit only if the value is found.
+     * This suits a secondary lookup made after a miss has already been counted elsewhere.
+     *
+     * @param key The key to look up.
+     * @return The cached value, or null if it is absent or expired.
+     */
+    V getIfPresent(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            CacheEntry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (ttlNanos > 0 && clock.getAsLong() - entry.writtenAt >= ttlNanos) {
+                segment.remove(key);
+                evictions.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Stores a value, evicting the least recently used entry of its segment if it is full.
+     *
+     * @param key   The key to store the value under.
+     * @param value The value to store.
+     */
+    void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new CacheEntry<>(value, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Takes a stamp to be passed to {@link #putIfUnchanged(Object, Object, long)} before loading a value.
+     *
+     * @param key The key about to be loaded.
+     * @return The current invalidation stamp of the key.
+     */
+    long stamp(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.generation;
+        }
+    }
+
+    /**
+     * Stores a loaded value, unless the key may have been invalidated since the stamp was taken.
+     * Invalidations are counted per segment, so an invalidation of another key of the same
+     * segment also drops the value; it is then simply loaded again on the next lookup.
+     *
+     * @param key   The key to store the value under.
+     * @param value The loaded value.
+     * @param stamp The stamp taken with {@link #stamp(Object)} before the value was loaded.
+     */
+    void putIfUnchanged(K key, V value, long stamp) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.generation == stamp) {
+                segment.put(key, new CacheEntry<>(value, clock.getAsLong()));
+            }
+        }
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key The key to remove.
+     */
+    void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+            segment.generation++;
+        }
+    }
+
+    /**
+     * Retrieves the number of entries currently held by the cache.
+     *
+     * @return The number of cached entries.
+     */
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Takes a snapshot of the cache's counters.
+     *
+     * @return The current cache statistics.
+     */
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * A cached value together with the time it was written.
+     */
+    private static final class CacheEntry<V> {
+        final V value;
+        final long writtenAt;
+
+        CacheEntry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    /**
+     * An access-ordered map that drops its eldest entry once it grows past its capacity.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, CacheEntry<V>> {
+        private final int capacity;
+        private final LongAdder evictions;
+        // The number of invalidations in this segment, guarded by the segment's lock.
+        private long generation;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnValidator;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserIdValidator;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link DatabaseService} that keeps the book catalog off-heap, in memory-mapped files.
+ * <p>
+ * Books are stored in a fixed-capacity open-addressing table keyed by the ISBN packed into a long
+ * (see {@link IsbnValidator#toKey(CharSequence)}). Titles and authors live in an append-only string
+ * heap, and the borrowed state of every slot is a byte next to the table. The heap offsets of
+ * recently written titles and authors are kept in a bounded pool, so books sharing a title or an
+ * author added close together share one copy of it; a string evicted from the pool, or written
+ * before the catalog was reopened, is stored again. Opening an existing catalog only maps the files,
+ * and no per-book objects are kept on the heap: a lookup materializes a fresh {@link Book} view,
+ * which is not written back when modified. Since views are not shared, borrowing a book that is
+ * already borrowed is rejected here rather than by the view.
+ * <p>
+ * Borrows and returns are decided by a compare-and-set on the state of the book's slot, so they
+ * proceed in parallel with each other and with lookups; only adding books and closing the catalog
+ * exclude them. Java 8 offers no atomic operations on mapped memory, so the compare-and-set runs on
+ * a copy of the states kept on the heap at two bits per slot, and its winner then writes the slot's
+ * mapped state byte.
+ * <p>
+ * Users are kept on the heap only and are not persisted: after reopening a catalog, they must be
+ * registered again.
+ * <p>
+ * Changes are written to the mapped files directly and reach the disk when the operating system
+ * flushes them, or on {@link #close()}. I/O failures are reported as {@link UncheckedIOException}.
+ */
+public class MappedCatalogDatabaseService implements DatabaseService, Closeable {
+
+    // Identifies a catalog file.
+    private static final int MAGIC = 0x4C494243;
+    // The size of the catalog header: magic, capacity, size and the end of the string heap.
+    private static final int HEADER_SIZE = 32;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int SIZE_OFFSET = 8;
+    private static final int HEAP_END_OFFSET = 16;
+    // The size of a slot: key + 1 (0 marks an empty slot), title, author and borrower.
+    private static final int SLOT_SIZE = 32;
+    private static final int TITLE_OFFSET = 8;
+    private static final int AUTHOR_OFFSET = 16;
+    private static final int BORROWER_OFFSET = 24;
+    // Marks a missing string or borrower.
+    private static final long NONE = -1;
+    // The number of titles and authors whose heap offsets are pooled for reuse.
+    private static final int POOLED_STRINGS = 4096;
+    // The largest table that fits in a single mapping.
+    private static final int MAX_CAPACITY = 1 << 25;
+    // The string heap is mapped in segments of this size; a string never spans two segments.
+    private static final int SEGMENT_BITS = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    // The states of a slot. Only FREE and BORROWED are written to the file; LENDING and RETURNING
+    // mark a change in progress, owned by the thread that set them.
+    private static final int FREE = 0;
+    private static final int BORROWED = 1;
+    private static final int LENDING = 2;
+    private static final int RETURNING = 3;
+
+    // The channel of the catalog table.
+    private final FileChannel catalogChannel;
+    // The channel of the string heap.
+    private final FileChannel heapChannel;
+    // The mapped catalog: header, slots and their state bytes.
+    private final MappedByteBuffer catalog;
+    // The mapped segments of the string heap, in order.
+    private final List<MappedByteBuffer> heapSegments = new ArrayList<>();
+    // The number of slots in the table (a power of two).
+    private final int capacity;
+    // The position of the slots' state bytes in the catalog.
+    private final int statesOffset;
+    // The states of the slots, at two bits per slot, where borrows and returns are decided.
+    private final AtomicLongArray states;
+    // The heap offsets of recently written titles and authors.
+    private final LruCache<String, Long> stringOffsets = new LruCache<>(POOLED_STRINGS, 0, TimeUnit.NANOSECONDS, System::nanoTime);
+    // The registered users, keyed by user Id.
+    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+    // Guards the mapped files: lookups, borrows and returns share it, other changes are exclusive.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the catalog in the given directory, creating it if it does not exist.
+     *
+     * @param directory The directory holding the catalog files, created if missing.
+     * @param capacity  The number of books a new catalog can hold. It is rounded so that the table
+     *                  stays at most three quarters full, and is ignored if the catalog exists.
+     */
+    public MappedCatalogDatabaseService(Path directory, int capacity) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Invalid directory.");
+        }
+        if (capacity <= 0 || capacity > MAX_CAPACITY / 4 * 3) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        FileChannel catalogChannel = null;
+        FileChannel heapChannel = null;
+        try {
+            Files.createDirectories(directory);
+            Path catalogFile = directory.resolve("catalog.slots");
+            boolean exists = Files.exists(catalogFile) && Files.size(catalogFile) > 0;
+            catalogChannel = FileChannel.open(catalogFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            heapChannel = FileChannel.open(directory.resolve("catalog.strings"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.catalogChannel = catalogChannel;
+            this.heapChannel = heapChannel;
+
+            if (exists) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                catalogChannel.read(header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a catalog file.");
+                }
+                this.capacity = header.getInt(CAPACITY_OFFSET);
+                // Mapping beyond the end would grow the file, so a damaged header is rejected first.
+                int size = header.getInt(SIZE_OFFSET);
+                long heapEnd = header.getLong(HEAP_END_OFFSET);
+                if (this.capacity < 64 || this.capacity > MAX_CAPACITY || Integer.bitCount(this.capacity) != 1
+                        || catalogChannel.size() < catalogSize(this.capacity)
+                        || size < 0 || size > this.capacity
+                        || heapEnd < 0 || heapEnd > heapChannel.size()) {
+                    throw new IOException("Corrupt catalog header.");
+                }
+            } else {
+                this.capacity = tableSizeFor(capacity);
+            }
+            this.statesOffset = HEADER_SIZE + this.capacity * SLOT_SIZE;
+            this.catalog = catalogChannel.map(FileChannel.MapMode.READ_WRITE, 0, catalogSize(this.capacity));
+            if (!exists) {
+                catalog.putInt(0, MAGIC);
+                catalog.putInt(CAPACITY_OFFSET, this.capacity);
+            }
+            this.states = new AtomicLongArray(this.capacity / 32);
+            for (int slot = 0; slot < this.capacity; slot++) {
+                if (catalog.get(statesOffset + slot) == BORROWED) {
+                    setState(slot, BORROWED);
+                }
+            }
+
+            // Map the heap segments written so far.
+            long heapEnd = catalog.getLong(HEAP_END_OFFSET);
+            for (long segment = 0; segment <= heapEnd >>> SEGMENT_BITS; segment++) {
+                mapSegment();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nothing refers to a half-opened catalog, so its files are closed here.
+            closeQuietly(catalogChannel, e);
+            closeQuietly(heapChannel, e);
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        long key = IsbnValidator.toKey(ISBN);
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(key);
+            boolean occupied = catalog.getLong(slotOffset(slot)) != 0;
+            if (!occupied && size() >= capacity / 4 * 3) {
+                throw new IllegalStateException("Catalog is full.");
+            }
+
+            // Write the contents first and the key last, so a slot is complete once it is occupied.
+            int offset = slotOffset(slot);
+            catalog.putLong(offset + TITLE_OFFSET, writePooled(book.getTitle()));
+            catalog.putLong(offset + AUTHOR_OFFSET, writePooled(book.getAuthor()));
+            catalog.putLong(offset + BORROWER_OFFSET, NONE);
+            // Borrows and returns are excluded, so the state is replaced without a compare-and-set.
+            int state = book.isBorrowed() ? BORROWED : FREE;
+            catalog.put(statesOffset + slot, (byte) state);
+            setState(slot, state);
+            if (!occupied) {
+                catalog.putLong(offset, key + 1);
+                catalog.putInt(SIZE_OFFSET, size() + 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        users.put(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        if (!IsbnValidator.isValid(ISBN)) {
+            return null;
+        }
+        long key = IsbnValidator.toKey(ISBN);
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(key);
+            int offset = slotOffset(slot);
+            if (catalog.getLong(offset) == 0) {
+                return null;
+            }
+
+            return bookAt(slot, key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return users.get(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        lock.readLock().lock();
+        try {
+            int slot = occupiedSlot(ISBN);
+            if (slot < 0) {
+                throw new BookNotFoundException("Book not found!");
+            }
+            if (!lend(slot, userId)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean tryBorrow(String ISBN, String userId, Book book) {
+        lock.readLock().lock();
+        try {
+            int slot = occupiedSlot(ISBN);
+            return slot >= 0 && lend(slot, userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String tryReturn(String ISBN, String userId, Book book) {
+        lock.readLock().lock();
+        try {
+            int slot = occupiedSlot(ISBN);
+            if (slot < 0) {
+                return null;
+            }
+            // The borrower is read once the state shows the loan, and checked again once the return
+            // is claimed, in case the book was returned and lent to someone else in between.
+            if (state(slot) != BORROWED || !isBorrowedBy(slot, userId)) {
+                return null;
+            }
+            if (!compareAndSetState(slot, BORROWED, RETURNING)) {
+                return null;
+            }
+            long borrower = catalog.getLong(slotOffset(slot) + BORROWER_OFFSET);
+            if (!isBorrowedBy(slot, userId)) {
+                compareAndSetState(slot, RETURNING, BORROWED);
+                return null;
+            }
+            release(slot);
+            return borrower == NONE ? "" : String.format("%012d", borrower);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        lock.readLock().lock();
+        try {
+            int slot = occupiedSlot(ISBN);
+            if (slot >= 0 && compareAndSetState(slot, BORROWED, RETURNING)) {
+                release(slot);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<Book> getAllBooks() {
+        lock.readLock().lock();
+        try {
+            List<Book> books = new ArrayList<>(size());
+            for (int slot = 0; slot < capacity; slot++) {
+                long stored = catalog.getLong(slotOffset(slot));
+                if (stored != 0) {
+                    books.add(bookAt(slot, stored - 1));
+                }
+            }
+            return books;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, String> getLoans() {
+        lock.readLock().lock();
+        try {
+            Map<String, String> loans = new HashMap<>();
+            for (int slot = 0; slot < capacity; slot++) {
+                long stored = catalog.getLong(slotOffset(slot));
+                if (stored == 0 || !isBorrowed(slot)) {
+                    continue;
+                }
+                long borrower = catalog.getLong(slotOffset(slot) + BORROWER_OFFSET);
+                if (borrower != NONE) {
+                    loans.put(IsbnValidator.fromKey(stored - 1), String.format("%012d", borrower));
+                }
+            }
+            return loans;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the Id of the user currently holding a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        lock.readLock().lock();
+        try {
+            int slot = occupiedSlot(ISBN);
+            if (slot < 0 || !isBorrowed(slot)) {
+                return null;
+            }
+            long borrower = catalog.getLong(slotOffset(slot) + BORROWER_OFFSET);
+            return borrower == NONE ? null : String.format("%012d", borrower);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of books in the catalog.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        lock.readLock().lock();
+        try {
+            return size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the mapped files to the disk and closes them.
+     *
+     * @throws IOException If the files cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            catalog.force();
+            for (MappedByteBuffer segment : heapSegments) {
+                segment.force();
+            }
+            catalogChannel.close();
+            heapChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of bytes used by the string heap.
+     *
+     * @return The end of the string heap.
+     */
+    long getStringHeapSize() {
+        return catalog.getLong(HEAP_END_OFFSET);
+    }
+
+    private int size() {
+        return catalog.getInt(SIZE_OFFSET);
+    }
+
+    private static int tableSizeFor(int books) {
+        // Keep the table at most three quarters full, with room for a whole word of slot states.
+        long slots = Math.max(64, (long) books * 4 / 3 + 1);
+        return (int) Math.min(MAX_CAPACITY, Long.highestOneBit(slots - 1) << 1);
+    }
+
+    private static long catalogSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE + capacity;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would be inserted.
+     *
+     * @param key The packed ISBN.
+     * @return The slot index.
+     */
+    private int findSlot(long key) {
+        int mask = capacity - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (true) {
+            long stored = catalog.getLong(slotOffset(slot));
+            if (stored == 0 || stored == key + 1) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Materializes a view of the book stored in an occupied slot.
+     */
+    private Book bookAt(int slot, long key) {
+        int offset = slotOffset(slot);
+        Book book = new Book(IsbnValidator.fromKey(key),
+                readString(catalog.getLong(offset + TITLE_OFFSET)),
+                readString(catalog.getLong(offset + AUTHOR_OFFSET)));
+        if (isBorrowed(slot)) {
+            book.borrow();
+        }
+        return book;
+    }
+
+    private int occupiedSlot(String ISBN) {
+        if (!IsbnValidator.isValid(ISBN)) {
+            return -1;
+        }
+        int slot = findSlot(IsbnValidator.toKey(ISBN));
+        return catalog.getLong(slotOffset(slot)) == 0 ? -1 : slot;
+    }
+
+    /**
+     * Lends the book in a slot to a user, unless it is borrowed or another borrow of it is in progress.
+     *
+     * @return true if the book was lent, false otherwise.
+     */
+    private boolean lend(int slot, String userId) {
+        // Views are not shared, so concurrent borrowers are told apart by the slot's state.
+        if (!compareAndSetState(slot, FREE, LENDING)) {
+            return false;
+        }
+        long borrower = UserIdValidator.isValid(userId) ? UserIdValidator.toLong(userId) : NONE;
+        catalog.putLong(slotOffset(slot) + BORROWER_OFFSET, borrower);
+        catalog.put(statesOffset + slot, (byte) BORROWED);
+        compareAndSetState(slot, LENDING, BORROWED);
+        return true;
+    }
+
+    /**
+     * Completes a return claimed by setting the slot's state to RETURNING.
+     */
+    private void release(int slot) {
+        catalog.put(statesOffset + slot, (byte) FREE);
+        catalog.putLong(slotOffset(slot) + BORROWER_OFFSET, NONE);
+        compareAndSetState(slot, RETURNING, FREE);
+    }
+
+    private boolean isBorrowedBy(int slot, String userId) {
+        if (userId == null) {
+            return true;
+        }
+        return UserIdValidator.isValid(userId)
+                && catalog.getLong(slotOffset(slot) + BORROWER_OFFSET) == UserIdValidator.toLong(userId);
+    }
+
+    /**
+     * Tells whether the book in a slot reads as borrowed. A borrow or a return in progress only takes
+     * effect once it completes.
+     */
+    private boolean isBorrowed(int slot) {
+        int state = state(slot);
+        return state == BORROWED || state == RETURNING;
+    }
+
+    private int state(int slot) {
+        return (int) (states.get(slot >>> 5) >>> ((slot & 31) << 1)) & 3;
+    }
+
+    private boolean compareAndSetState(int slot, int expected, int updated) {
+        int index = slot >>> 5;
+        int shift = (slot & 31) << 1;
+        while (true) {
+            long word = states.get(index);
+            if (((int) (word >>> shift) & 3) != expected) {
+                return false;
+            }
+            long next = (word & ~(3L << shift)) | ((long) updated << shift);
+            if (states.compareAndSet(index, word, next)) {
+                return true;
+            }
+        }
+    }
+
+    private void setState(int slot, int state) {
+        while (!compareAndSetState(slot, state(slot), state)) {
+            // Another slot of the same word changed; try again.
+        }
+    }
+
+    private long writePooled(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Long pooled = stringOffsets.getIfPresent(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        long offset = writeString(value);
+        stringOffsets.put(value, offset);
+        return offset;
+    }
+
+    private long writeString(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length + 4 > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("String too long.");
+        }
+
+        // Start a new segment if the string does not fit in the current one.
+        long offset = catalog.getLong(HEAP_END_OFFSET);
+        long remaining = SEGMENT_SIZE - (offset & (SEGMENT_SIZE - 1));
+        if (bytes.length + 4 > remaining) {
+            offset += remaining;
+        }
+        int segment = (int) (offset >>> SEGMENT_BITS);
+        while (heapSegments.size() <= segment) {
+            mapSegment();
+        }
+        ByteBuffer buffer = heapSegments.get(segment).duplicate();
+        buffer.position((int) (offset & (SEGMENT_SIZE - 1)));
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        catalog.putLong(HEAP_END_OFFSET, offset + 4 + bytes.length);
+        return offset;
+    }
+
+    private String readString(long offset) {
+        if (offset == NONE) {
+            return null;
+        }
+        ByteBuffer buffer = heapSegments.get((int) (offset >>> SEGMENT_BITS)).duplicate();
+        buffer.position((int) (offset & (SEGMENT_SIZE - 1)));
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(FileChannel channel, Exception failure) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void mapSegment() {
+        try {
+            long position = (long) heapSegments.size() * SEGMENT_SIZE;
+            heapSegments.add(heapChannel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnValidator;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserIdValidator;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory {@link DatabaseService} that keys books and users by primitive longs.
+ * <p>
+ * ISBNs are packed with {@link IsbnValidator#toKey(CharSequence)}, which drops hyphens, so every
+ * hyphenation of an ISBN finds the same book, and user Ids are parsed with
+ * {@link UserIdValidator#toLong(CharSequence)}. Both are stored in {@link LongKeyTable}s, which avoid
+ * a map node and key object per entry and never hash a string. The Id of a book's borrower is kept
+ * as a long next to the book instead of in a separate map. Lookups with a malformed ISBN or user Id
+ * find nothing, while writes reject them with an {@link IllegalArgumentException}.
+ */
+public class PackedKeyDatabaseService implements DatabaseService {
+
+    // The books in the database, keyed by packed ISBN, with the borrower's Id as attribute.
+    private final LongKeyTable<Book> books;
+    // The registered users, keyed by numeric user Id.
+    private final LongKeyTable<User> users;
+
+    /**
+     * Constructs a new database sized for a small catalog, which grows as needed.
+     */
+    public PackedKeyDatabaseService() {
+        this(0, 0);
+    }
+
+    /**
+     * Constructs a new database presized for the given number of books and users.
+     *
+     * @param expectedBooks The number of books to hold without growing.
+     * @param expectedUsers The number of users to hold without growing.
+     */
+    public PackedKeyDatabaseService(int expectedBooks, int expectedUsers) {
+        if (expectedBooks < 0) {
+            throw new IllegalArgumentException("Invalid expected book count.");
+        }
+        if (expectedUsers < 0) {
+            throw new IllegalArgumentException("Invalid expected user count.");
+        }
+        int segmentCount = Runtime.getRuntime().availableProcessors() * 4;
+        this.books = new LongKeyTable<>(segmentCount, expectedBooks, true);
+        this.users = new LongKeyTable<>(segmentCount, expectedUsers, false);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        books.put(IsbnValidator.toKey(ISBN), book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        users.put(UserIdValidator.toLong(id), user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        if (!IsbnValidator.isValid(ISBN)) {
+            return null;
+        }
+        return books.get(IsbnValidator.toKey(ISBN));
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        if (!UserIdValidator.isValid(userId)) {
+            return null;
+        }
+        return users.get(UserIdValidator.toLong(userId));
+    }
+
+    @Override
+    public Collection<Book> getAllBooks() {
+        return books.values();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The books are keyed by their unhyphenated ISBN, as only the packed key of an ISBN is stored.
+     */
+    @Override
+    public Map<String, String> getLoans() {
+        Map<String, String> loans = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : books.attributes().entrySet()) {
+            loans.put(IsbnValidator.fromKey(entry.getKey()), String.format("%012d", entry.getValue()));
+        }
+        return loans;
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        // A borrow can only be recorded for a book that exists in the database.
+        if (!books.setAttribute(IsbnValidator.toKey(ISBN), UserIdValidator.toLong(userId))) {
+            throw new BookNotFoundException("Book not found!");
+        }
+    }
+
+    @Override
+    public boolean tryBorrow(String ISBN, String userId, Book book) {
+        if (!IsbnValidator.isValid(ISBN)) {
+            return false;
+        }
+        // Flip the book's state and record its borrower under the same segment lock, so that a
+        // reader who sees the book borrowed finds its borrower. A book whose borrower is still
+        // recorded is not lent again, even if its state was already flipped back.
+        return books.setAttributeIf(IsbnValidator.toKey(ISBN),
+                (stored, borrower) -> borrower == LongKeyTable.NONE && stored.tryBorrow(),
+                UserIdValidator.toLong(userId));
+    }
+
+    @Override
+    public String tryReturn(String ISBN, String userId, Book book) {
+        if (!IsbnValidator.isValid(ISBN) || (userId != null && !UserIdValidator.isValid(userId))) {
+            return null;
+        }
+        // Check the borrower, flip the book's state and clear the borrower under the same segment lock.
+        long expected = userId == null ? LongKeyTable.NONE : UserIdValidator.toLong(userId);
+        long[] closed = {LongKeyTable.NONE};
+        books.setAttributeIf(IsbnValidator.toKey(ISBN), (stored, borrower) -> {
+            if (borrower == LongKeyTable.NONE || (expected != LongKeyTable.NONE && borrower != expected)
+                    || !stored.tryReturn()) {
+                return false;
+            }
+            closed[0] = borrower;
+            return true;
+        }, LongKeyTable.NONE);
+        return closed[0] == LongKeyTable.NONE ? null : String.format("%012d", closed[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only the borrower is cleared, as the caller flips the book's state itself. Until the borrower is
+     * cleared, {@link #tryBorrow(String, String, Book)} does not lend the book again.
+     */
+    @Override
+    public void returnBook(String ISBN) {
+        if (IsbnValidator.isValid(ISBN)) {
+            books.setAttribute(IsbnValidator.toKey(ISBN), LongKeyTable.NONE);
+        }
+    }
+
+    /**
+     * Retrieves the Id of the user currently holding a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        if (!IsbnValidator.isValid(ISBN)) {
+            return null;
+        }
+        long borrower = books.getAttribute(IsbnValidator.toKey(ISBN));
+        return borrower == LongKeyTable.NONE ? null : String.format("%012d", borrower);
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of distinct ISBNs.
+     */
+    public int getBookCount() {
+        return books.size();
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of distinct user Ids.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+}
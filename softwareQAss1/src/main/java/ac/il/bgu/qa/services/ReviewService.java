@@ -3,6 +3,7 @@ package ac.il.bgu.qa.services;
 import ac.il.bgu.qa.errors.ReviewException;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Provides an interface for services that retrieve book reviews.
@@ -18,6 +19,23 @@ public interface ReviewService {
      */
     List<String> getReviewsForBook(String ISBN) throws ReviewException;
 
+    /**
+     * Streams up to a limited number of reviews for a book based on its ISBN.
+     * Implementations backed by a paginated source should fetch reviews lazily, so that no more
+     * than the requested number is ever held in memory. The default implementation falls back to
+     * {@link #getReviewsForBook(String)} and limits the result.
+     * The stream must be consumed before the service is closed or released.
+     *
+     * @param ISBN  The International Standard Book Number (ISBN) of the book.
+     * @param limit The maximum number of reviews to stream.
+     * @return A stream of at most {@code limit} reviews, empty if the book has none.
+     * @throws ReviewException If there's an issue fetching the reviews.
+     */
+    default Stream<String> streamReviewsForBook(String ISBN, int limit) throws ReviewException {
+        List<String> reviews = getReviewsForBook(ISBN);
+        return reviews == null ? Stream.empty() : reviews.stream().limit(limit);
+    }
+
     /**
      * Closes the review service, performing any necessary cleanup operations.
      */
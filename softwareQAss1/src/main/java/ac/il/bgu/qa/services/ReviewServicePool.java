@@ -0,0 +1,71 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+/**
+ * Provides an interface for pools that lease {@link ReviewService} sessions.
+ * A caller acquires a session per operation and hands it back when done, instead of
+ * closing it, so that the underlying connection can be reused by later callers.
+ * A session is only ever leased to one caller at a time. Sessions are leased as they are, so
+ * streamed fetches reach the session itself; a stream must be closed before its session is handed back.
+ */
+public interface ReviewServicePool {
+
+    /**
+     * Leases a review service session from the pool.
+     *
+     * @return A session that is exclusively owned by the caller until it is released.
+     * @throws ReviewException If no session can be obtained.
+     */
+    ReviewService acquire() throws ReviewException;
+
+    /**
+     * Returns a healthy session to the pool so that it can be leased again.
+     *
+     * @param session The session previously obtained from {@link #acquire()}.
+     */
+    void release(ReviewService session);
+
+    /**
+     * Discards a session that failed and may be broken, closing it instead of reusing it.
+     *
+     * @param session The session previously obtained from {@link #acquire()}.
+     */
+    void invalidate(ReviewService session);
+
+    /**
+     * Closes the pool and every idle session it holds.
+     */
+    void close();
+
+    /**
+     * Wraps a single review service so that it is closed after every use.
+     * This reproduces the behaviour of using a review service directly, for services that
+     * do not support being kept open.
+     *
+     * @param reviewService The review service to lease.
+     * @return A pool that always leases the given service and closes it on release.
+     */
+    static ReviewServicePool closingAfterUse(ReviewService reviewService) {
+        return new ReviewServicePool() {
+            @Override
+            public ReviewService acquire() {
+                return reviewService;
+            }
+
+            @Override
+            public void release(ReviewService session) {
+                session.close();
+            }
+
+            @Override
+            public void invalidate(ReviewService session) {
+                session.close();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
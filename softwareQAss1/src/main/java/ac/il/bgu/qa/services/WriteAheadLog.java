@@ -0,0 +1,306 @@
+package ac.il.bgu.qa.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of framed records with group commit.
+ * Each record is written as its payload length, the CRC32 of the payload, and the payload itself,
+ * so a record torn by a crash is detected and dropped on recovery.
+ * <p>
+ * Appending only writes to the file; {@link #awaitDurable(long)} then makes the record durable.
+ * The first waiter becomes the leader and forces the file once for every record written so far,
+ * while later waiters wait for it instead of issuing an fsync of their own.
+ */
+class WriteAheadLog implements Closeable {
+
+    // Records larger than this are treated as corruption on recovery.
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    // The channel appending to the log file.
+    private final FileChannel channel;
+
+    // Guards appends, so that records are never interleaved.
+    private final Object appendLock = new Object();
+    // Guards the group commit state.
+    private final Object commitLock = new Object();
+
+    // The logical position after the last appended record. It keeps growing across truncations,
+    // so that a waiter's position stays meaningful after a snapshot replaces the log.
+    private volatile long appendedPosition;
+    // The logical position up to which the log is durable (guarded by commitLock).
+    private long durablePosition;
+    // Whether a leader is currently forcing the log (guarded by commitLock).
+    private boolean syncing;
+    // The logical position of the start of the physical file (guarded by appendLock).
+    private long truncatedPosition;
+
+    /**
+     * Opens a log, creating it if it does not exist, and replays its intact records.
+     * Any torn record at the tail of the file is discarded, and new records are appended after
+     * the last intact one.
+     *
+     * @param file    The log file.
+     * @param visitor Receives the payload of each intact record.
+     * @throws IOException If the file cannot be opened, or the visitor fails.
+     */
+    WriteAheadLog(Path file, RecordVisitor visitor) throws IOException {
+        long intactLength = scan(file, visitor);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(intactLength);
+        channel.position(intactLength);
+        this.appendedPosition = intactLength;
+        this.durablePosition = intactLength;
+    }
+
+    /**
+     * Visits the payload of every record of a snapshot written by {@link #compact(Path, SnapshotWriter)}.
+     * Snapshots are renamed into place only once complete, so any damage is reported as an error.
+     *
+     * @param snapshot The snapshot file.
+     * @param visitor  Receives each payload.
+     * @throws IOException If the snapshot cannot be read or is corrupt, or the visitor fails.
+     */
+    static void replaySnapshot(Path snapshot, RecordVisitor visitor) throws IOException {
+        if (Files.exists(snapshot) && scan(snapshot, visitor) != Files.size(snapshot)) {
+            throw new IOException("Corrupt snapshot.");
+        }
+    }
+
+    /**
+     * Frames a payload as a record.
+     *
+     * @param payload The payload.
+     * @return The framed record.
+     */
+    static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        return record.array();
+    }
+
+    /**
+     * Appends framed records to the log without waiting for them to become durable.
+     *
+     * @param records The framed records.
+     * @return The logical position after the records, to pass to {@link #awaitDurable(long)}.
+     */
+    long append(byte[] records) {
+        synchronized (appendLock) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            appendedPosition += records.length;
+            return appendedPosition;
+        }
+    }
+
+    /**
+     * Retrieves the logical position after the last appended record.
+     *
+     * @return The logical position at which the next record will be appended.
+     */
+    long position() {
+        return appendedPosition;
+    }
+
+    /**
+     * Waits until everything up to the given logical position is durable, forcing the log
+     * as the group commit leader if no other thread is doing so.
+     *
+     * @param position The logical position returned by {@link #append(byte[])}.
+     */
+    void awaitDurable(long position) {
+        while (true) {
+            synchronized (commitLock) {
+                while (syncing && durablePosition < position) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new InterruptedIOException("Interrupted while awaiting the log."));
+                    }
+                }
+                if (durablePosition >= position) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            // Lead this group: everything appended so far is covered by a single fsync.
+            long target = appendedPosition;
+            IOException failure = null;
+            try {
+                force();
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (commitLock) {
+                syncing = false;
+                if (failure == null) {
+                    durablePosition = Math.max(durablePosition, target);
+                }
+                commitLock.notifyAll();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+        }
+    }
+
+    /**
+     * Replaces the log with a snapshot. The snapshot is written to a temporary file, forced,
+     * atomically renamed and the rename made durable before the log is truncated. A crash before
+     * the rename leaves the old snapshot and the full log; a crash between the rename and the
+     * truncation leaves the new snapshot and the full log, whose records are then replayed on top of
+     * a state that already contains them, so replaying a record must be idempotent.
+     * Appends are blocked while the snapshot is written.
+     *
+     * @param snapshot The snapshot file.
+     * @param writer   Writes the framed snapshot records.
+     */
+    void compact(Path snapshot, SnapshotWriter writer) {
+        synchronized (appendLock) {
+            Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                     OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out))) {
+                    writer.write(stream);
+                    stream.flush();
+                    out.force(true);
+                }
+                Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                forceDirectory(snapshot.toAbsolutePath().getParent());
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            truncatedPosition = appendedPosition;
+            synchronized (commitLock) {
+                // Everything appended so far is now durable through the snapshot.
+                durablePosition = Math.max(durablePosition, truncatedPosition);
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces the appended records to the storage device.
+     *
+     * @throws IOException If the records cannot be forced.
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Retrieves the size of the log file.
+     *
+     * @return The number of bytes in the physical log file.
+     */
+    long size() {
+        synchronized (appendLock) {
+            return appendedPosition - truncatedPosition;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes a rename in a directory durable, so that the log is never truncated while the snapshot
+     * replacing it could still be lost. Platforms that cannot open a directory, such as Windows,
+     * are skipped.
+     */
+    private static void forceDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The platform does not support forcing a directory.
+        }
+    }
+
+    private static long scan(Path file, RecordVisitor visitor) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long intactLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (visitor != null) {
+                    visitor.visit(payload);
+                }
+                intactLength += 8 + length;
+            }
+        }
+        return intactLength;
+    }
+
+    /**
+     * Receives the payloads of replayed records.
+     */
+    interface RecordVisitor {
+        void visit(byte[] payload) throws IOException;
+    }
+
+    /**
+     * Opens a log, replaying its intact records.
+     */
+    interface Opener {
+        WriteAheadLog open(Path file, RecordVisitor visitor) throws IOException;
+    }
+
+    /**
+     * Writes the framed records of a snapshot.
+     */
+    interface SnapshotWriter {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,58 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class TestBorrowLedger {
+    BorrowLedger ledger;
+
+    @BeforeEach
+    void setup() {
+        ledger = new BorrowLedger();
+    }
+
+    @Test
+    public void givenReturnRecordedBeforeBorrow_whenBorrowRecorded_thenNoLoanKept() {
+        //Arrange
+        ledger.recordCompletedReturn("9781501110368", "102030405060");
+
+        //Act
+        boolean recorded = ledger.recordBorrow("9781501110368", "102030405060");
+        ledger.recordBorrow("9781501110368", "102030405061");
+
+        //Assert
+        assertTrue(recorded);
+        assertEquals("102030405061", ledger.getBorrower("9781501110368"));
+        assertTrue(ledger.getLoans("102030405060").isEmpty());
+        assertEquals(1, ledger.getBorrowerCount("9781501110368"));
+    }
+
+    @Test
+    public void givenRecordedLoan_whenCompletedReturnRecorded_thenLoanClosed() {
+        //Arrange
+        ledger.recordBorrow("9781501110368", "102030405060");
+
+        //Act
+        ledger.recordCompletedReturn("9781501110368", "102030405060");
+        ledger.recordBorrow("9781501110368", "102030405060");
+
+        //Assert
+        assertEquals("102030405060", ledger.getBorrower("9781501110368"));
+        assertEquals(1, ledger.getLoans("102030405060").size());
+    }
+
+    @Test
+    public void givenUnheldBook_whenRecordReturn_thenNothingClosed() {
+        //Arrange
+        ledger.recordBorrow("9781501110368", "102030405060");
+
+        //Act
+        boolean closed = ledger.recordReturn("9781501110368", "102030405061");
+
+        //Assert
+        assertFalse(closed);
+        assertTrue(ledger.recordReturn("9781501110368", "102030405060"));
+        assertNull(ledger.getBorrower("9781501110368"));
+        assertTrue(ledger.recordBorrow("9781501110368", "102030405061"));
+    }
+}
@@ -0,0 +1,72 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestExponentialBackoffRetryPolicy {
+
+    @Test
+    public void givenNoJitter_whenNextDelayMillis_thenDoublesUpToCap() {
+        //Arrange
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(6, 100, 500, 0, null);
+
+        //Act & Assert
+        assertEquals(100, policy.nextDelayMillis("102030405060", 1));
+        assertEquals(200, policy.nextDelayMillis("102030405060", 2));
+        assertEquals(400, policy.nextDelayMillis("102030405060", 3));
+        assertEquals(500, policy.nextDelayMillis("102030405060", 4));
+        assertEquals(500, policy.nextDelayMillis("102030405060", 5));
+        assertTrue(policy.nextDelayMillis("102030405060", 6) < 0);
+    }
+
+    @Test
+    public void givenJitter_whenNextDelayMillis_thenDelayWithinJitterRange() {
+        //Arrange
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 1000, 1000, 0.5, null);
+
+        //Act & Assert
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.nextDelayMillis("102030405060", 1);
+            assertTrue(delay > 500 && delay <= 1000);
+        }
+    }
+
+    @Test
+    public void givenExhaustedBudget_whenNextDelayMillis_thenGivesUpUntilRefilled() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        RetryBudget budget = new RetryBudget(2, 1, TimeUnit.SECONDS, clock::get);
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 0, 0, 0, budget);
+
+        //Act & Assert
+        assertEquals(0, policy.nextDelayMillis("102030405060", 1));
+        assertEquals(0, policy.nextDelayMillis("102030405060", 2));
+        assertTrue(policy.nextDelayMillis("102030405060", 3) < 0);
+        assertEquals(0, policy.nextDelayMillis("102030405061", 1));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, policy.nextDelayMillis("102030405060", 3));
+        assertTrue(policy.nextDelayMillis("102030405060", 4) < 0);
+    }
+
+    @Test
+    public void givenManyRefilledDestinations_whenTryAcquire_thenRefilledBudgetsDropped() {
+        //Arrange
+        AtomicLong clock = new AtomicLong();
+        RetryBudget budget = new RetryBudget(2, 1, TimeUnit.SECONDS, clock::get);
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(budget.tryAcquire(String.format("%012d", i)));
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        //Act
+        assertTrue(budget.tryAcquire("102030405060"));
+        assertTrue(budget.tryAcquire("102030405060"));
+
+        //Assert
+        assertEquals(1, budget.getTrackedCount());
+        assertFalse(budget.tryAcquire("102030405060"));
+    }
+}
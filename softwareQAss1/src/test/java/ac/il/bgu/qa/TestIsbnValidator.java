@@ -0,0 +1,47 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TestIsbnValidator {
+
+    @ParameterizedTest
+    @ValueSource(strings = { "9781501110368", "978-1-5011-1036-8", "978-0306406157", "0000000000000", "-9780306406157-" })
+    public void givenValidISBN_whenIsValid_thenTrue(String isbn) {
+        assertTrue(IsbnValidator.isValid(isbn));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "", "-", "978150111036", "97815011103680", "9781501110369", "978150111036X", "978 1501110368", "\uFF19781501110368" })
+    public void givenInvalidISBN_whenIsValid_thenFalse(String isbn) {
+        assertFalse(IsbnValidator.isValid(isbn));
+    }
+
+    @Test
+    public void givenNullISBN_whenIsValid_thenFalse() {
+        assertFalse(IsbnValidator.isValid(null));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "9781501110368", "978-1-5011-1036-8", "0000000000000" })
+    public void givenValidISBN_whenToKeyAndFromKey_thenDigitsRoundTrip(String isbn) {
+        //Act
+        long key = IsbnValidator.toKey(isbn);
+
+        //Assert
+        assertEquals(isbn.replace("-", ""), IsbnValidator.fromKey(key));
+    }
+
+    @Test
+    public void givenInvalidISBN_whenToKey_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            IsbnValidator.toKey("9781501110369");
+        });
+
+        //Assert
+        assertEquals("Invalid ISBN.", thrown.getMessage());
+    }
+}
@@ -0,0 +1,77 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class TestLatencyHistogram {
+    LatencyHistogram histogram;
+
+    @BeforeEach
+    void setup() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void givenNoValues_whenQueried_thenZero() {
+        //Act & Assert
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void givenSmallValues_whenGetValueAtPercentile_thenExact() {
+        //Arrange
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        //Act & Assert
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.getValueAtPercentile(50));
+        assertEquals(10, histogram.getValueAtPercentile(100));
+        assertEquals(5.5, histogram.getMean());
+    }
+
+    @Test
+    public void givenLargeValues_whenGetValueAtPercentile_thenWithinBucketPrecision() {
+        //Arrange
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        //Act
+        long median = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+
+        //Assert
+        assertTrue(median >= 500_000 && median <= 500_000 * 17 / 16, "median was " + median);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 17 / 16, "p99 was " + p99);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1_000_000, histogram.getMax());
+    }
+
+    @Test
+    public void givenExtremeValues_whenRecorded_thenCountedWithoutOverflow() {
+        //Act
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        //Assert
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void givenInvalidPercentile_whenGetValueAtPercentile_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            histogram.getValueAtPercentile(101);
+        });
+
+        //Assert
+        assertEquals("Invalid percentile.", thrown.getMessage());
+    }
+}
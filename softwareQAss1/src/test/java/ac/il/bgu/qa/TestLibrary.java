@@ -4,16 +4,27 @@ import static org.mockito.Mockito.*;
 
 import ac.il.bgu.qa.errors.*;
 import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
 import ac.il.bgu.qa.services.NotificationService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewServicePool;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.*;
 import org.mockito.MockitoAnnotations;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class TestLibrary {
     Library library;
@@ -205,6 +216,89 @@ public class TestLibrary {
         verify(mockDatabaseService, never()).addBook(anyString(), eq(mockBookNotNullByISBN));
     }
 
+    @Test
+    public void givenMixedBooks_whenAddBooks_thenValidNewBooksAddedInOneBatch() {
+        //Arrange
+        Book newBook = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        Book existingBook = new Book("9780306406157", "Existing", "Coleen Hoover");
+        Book invalidBook = new Book("978150111036", "Invalid", "Coleen Hoover");
+        Book duplicateBook = new Book("978-1-5011-1036-8", "Duplicate", "Coleen Hoover");
+        Book sameIsbnBook = new Book("9781501110368", "Same ISBN", "Coleen Hoover");
+        Map<String, Book> existing = new HashMap<>();
+        existing.put("9780306406157", existingBook);
+        when(mockDatabaseService.getBooksByISBN(anyCollection())).thenReturn(existing);
+
+        //Act
+        BatchResult<Book> result = library.addBooks(Arrays.asList(newBook, existingBook, invalidBook, duplicateBook, sameIsbnBook));
+
+        //Assert
+        assertEquals(Arrays.asList(newBook, duplicateBook), result.getAccepted());
+        assertEquals(3, result.getRejected().size());
+        assertSame(invalidBook, result.getRejected().get(0).getItem());
+        assertEquals("Invalid ISBN.", result.getRejected().get(0).getReason());
+        assertSame(sameIsbnBook, result.getRejected().get(1).getItem());
+        assertEquals("Book already exists.", result.getRejected().get(1).getReason());
+        assertSame(existingBook, result.getRejected().get(2).getItem());
+        assertEquals("Book already exists.", result.getRejected().get(2).getReason());
+        Map<String, Book> expectedWrite = new LinkedHashMap<>();
+        expectedWrite.put("9781501110368", newBook);
+        expectedWrite.put("978-1-5011-1036-8", duplicateBook);
+        verify(mockDatabaseService, times(1)).getBooksByISBN(anyCollection());
+        verify(mockDatabaseService).addBooks(expectedWrite);
+        verify(mockDatabaseService, never()).getBookByISBN(anyString());
+        verify(mockDatabaseService, never()).addBook(anyString(), any());
+    }
+
+    @Test
+    public void givenNullCollection_whenAddBooks_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.addBooks(null);
+        });
+
+        //Assert
+        assertEquals("Invalid books.", thrown.getMessage());
+        verify(mockDatabaseService, never()).addBooks(any());
+    }
+
+    @Test
+    public void givenOnlyExistingUsers_whenRegisterUsers_thenNothingWritten() {
+        //Arrange
+        User existingUser = new User("Coleen Hoover", "102030405060", mockNotificationService);
+        User invalidUser = new User("Coleen Hoover", "10203040506", mockNotificationService);
+        when(mockDatabaseService.getUsersByIds(anyCollection()))
+                .thenReturn(Collections.singletonMap("102030405060", existingUser));
+
+        //Act
+        BatchResult<User> result = library.registerUsers(Arrays.asList(existingUser, invalidUser));
+
+        //Assert
+        assertFalse(result.isFullySuccessful());
+        assertTrue(result.getAccepted().isEmpty());
+        assertEquals("User already exists.", result.getRejected().get(1).getReason());
+        assertEquals("Invalid user Id.", result.getRejected().get(0).getReason());
+        verify(mockDatabaseService, never()).registerUsers(any());
+        verify(mockDatabaseService, never()).getUserById(anyString());
+    }
+
+    @Test
+    public void givenNewUsers_whenRegisterUsers_thenUsersRegisteredInOneBatch() {
+        //Arrange
+        User firstUser = new User("Coleen Hoover", "102030405060", mockNotificationService);
+        User secondUser = new User("Stephen King", "102030405061", mockNotificationService);
+
+        //Act
+        BatchResult<User> result = library.registerUsers(Arrays.asList(firstUser, secondUser));
+
+        //Assert
+        assertTrue(result.isFullySuccessful());
+        assertEquals(Arrays.asList(firstUser, secondUser), result.getAccepted());
+        Map<String, User> expectedWrite = new LinkedHashMap<>();
+        expectedWrite.put("102030405060", firstUser);
+        expectedWrite.put("102030405061", secondUser);
+        verify(mockDatabaseService).registerUsers(expectedWrite);
+    }
+
     @Test
     public void givenValidUser_whenRegisterUser_thenUserRegistered() {
         //Arrange
@@ -364,13 +458,14 @@ public class TestLibrary {
         when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
         when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
         when(mockBook.isBorrowed()).thenReturn(false);
+        when(mockDatabaseService.tryBorrow(ISBN, userId, mockBook)).thenReturn(true);
 
         //Act
         library.borrowBook(ISBN, userId);
 
         //Assert
-        verify(mockBook).borrow();
-        verify(mockDatabaseService).borrowBook(ISBN, userId);
+        verify(mockDatabaseService).tryBorrow(ISBN, userId, mockBook);
+        verify(mockBook, never()).borrow();
     }
 
     @Test
@@ -499,6 +594,51 @@ public class TestLibrary {
     }
 
 
+    @Test
+    public void givenConcurrentBorrowWonRace_whenBorrowBook_thenBookAlreadyBorrowedException() {
+        //Arrange
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockBook.isBorrowed()).thenReturn(false);
+        when(mockDatabaseService.tryBorrow(ISBN, userId, mockBook)).thenReturn(false);
+
+        //Act
+        BookAlreadyBorrowedException thrown = assertThrows(BookAlreadyBorrowedException.class, () -> {
+            library.borrowBook(ISBN, userId);
+        });
+
+        //Assert
+        assertEquals("Book is already borrowed!", thrown.getMessage());
+        verify(mockDatabaseService, never()).borrowBook(ISBN, userId);
+    }
+
+    @Test
+    public void givenDatabaseWriteFails_whenBorrowBook_thenBookStateRolledBack() {
+        //Arrange
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book book = new Book(ISBN, "It ends with us", "Coleen Hoover");
+        DatabaseService databaseService = mock(DatabaseService.class, CALLS_REAL_METHODS);
+        doReturn(book).when(databaseService).getBookByISBN(ISBN);
+        doReturn(mock(User.class)).when(databaseService).getUserById(userId);
+        doThrow(new IllegalStateException("Database unavailable")).when(databaseService).borrowBook(ISBN, userId);
+        library = new Library(databaseService, mockReviewService);
+
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            library.borrowBook(ISBN, userId);
+        });
+
+        //Assert
+        assertEquals("Database unavailable", thrown.getMessage());
+        assertFalse(book.isBorrowed());
+        verify(databaseService, times(1)).getBookByISBN(ISBN);
+    }
+
     @Test
     public void givenBorrowedBook_whenReturnBook_thenBookReturned() {
         //Arrange
@@ -506,13 +646,14 @@ public class TestLibrary {
         Book mockBookBorrowed = mock(Book.class);
         when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBookBorrowed);
         when(mockBookBorrowed.isBorrowed()).thenReturn(true);
+        when(mockDatabaseService.tryReturn(ISBN, null, mockBookBorrowed)).thenReturn("102030405060");
 
         //Act
         library.returnBook(ISBN);
 
         //Assert
-        verify(mockBookBorrowed).returnBook();
-        verify(mockDatabaseService).returnBook(ISBN);
+        verify(mockDatabaseService).tryReturn(ISBN, null, mockBookBorrowed);
+        verify(mockBookBorrowed, never()).returnBook();
     }
 
     @Test
@@ -567,6 +708,42 @@ public class TestLibrary {
         verify(mockDatabaseService, never()).returnBook(ISBN);
     }
 
+    @Test
+    public void givenSeveralBooks_whenGetAvailability_thenResolvedWithOneLookup() {
+        //Arrange
+        Book availableBook = mock(Book.class);
+        Book borrowedBook = mock(Book.class);
+        when(borrowedBook.isBorrowed()).thenReturn(true);
+        Map<String, Book> found = new HashMap<>();
+        found.put("9781501110368", availableBook);
+        found.put("9780306406157", borrowedBook);
+        List<String> ISBNs = Arrays.asList("9781501110368", "9780306406157", "9780000000002");
+        when(mockDatabaseService.getBooksByISBN(ISBNs)).thenReturn(found);
+
+        //Act
+        Map<String, BookAvailability> availability = library.getAvailability(ISBNs);
+
+        //Assert
+        assertEquals(new ArrayList<>(ISBNs), new ArrayList<>(availability.keySet()));
+        assertEquals(BookAvailability.AVAILABLE, availability.get("9781501110368"));
+        assertEquals(BookAvailability.BORROWED, availability.get("9780306406157"));
+        assertEquals(BookAvailability.NOT_FOUND, availability.get("9780000000002"));
+        verify(mockDatabaseService, times(1)).getBooksByISBN(ISBNs);
+        verify(mockDatabaseService, never()).getBookByISBN(anyString());
+    }
+
+    @Test
+    public void givenInvalidISBN_whenGetAvailability_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.getAvailability(Arrays.asList("9781501110368", "978150111036"));
+        });
+
+        //Assert
+        assertEquals("Invalid ISBN.", thrown.getMessage());
+        verify(mockDatabaseService, never()).getBooksByISBN(anyCollection());
+    }
+
     @Test
     public void givenValidISBNAndUserID_whenNotifyUserWithBookReviews_thenUserNotified() {
         //Arrange
@@ -593,6 +770,125 @@ public class TestLibrary {
         verify(mockUser, times(1)).sendNotification(notificationMessage);
     }
 
+    @Test
+    public void givenReviewServicePool_whenNotifyUserWithBookReviews_thenSessionReleasedNotClosed() {
+        //Arrange
+        ReviewServicePool mockPool = mock(ReviewServicePool.class);
+        when(mockPool.acquire()).thenReturn(mockReviewService);
+        library = new Library(mockDatabaseService, mockPool);
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+
+        //Act
+        library.notifyUserWithBookReviews(ISBN, userId);
+
+        //Assert
+        verify(mockPool).release(mockReviewService);
+        verify(mockPool, never()).invalidate(any());
+        verify(mockReviewService, never()).close();
+        verify(mockUser).sendNotification("Reviews for 'It ends with us':\nGreat!");
+    }
+
+    @Test
+    public void givenBoundedMessageBuilder_whenNotifyUserWithBookReviews_thenReviewsStreamedWithLimit() {
+        //Arrange
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .reviewMessageBuilder(new ReviewMessageBuilder(2, 1000))
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.streamReviewsForBook(ISBN, 2)).thenReturn(Stream.of("Great!", "Loved it"));
+
+        //Act
+        library.notifyUserWithBookReviews(ISBN, userId);
+
+        //Assert
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+        verify(mockReviewService).close();
+        verify(mockUser).sendNotification("Reviews for 'It ends with us':\nGreat!\nLoved it");
+    }
+
+    @Test
+    public void givenBoundedMessageBuilderAndNoReviews_whenNotifyUserWithBookReviews_thenNoReviewsFoundException() {
+        //Arrange
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .reviewMessageBuilder(new ReviewMessageBuilder(2, 1000))
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mock(Book.class));
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.streamReviewsForBook(ISBN, 2)).thenReturn(Stream.empty());
+
+        //Act
+        NoReviewsFoundException thrown = assertThrows(NoReviewsFoundException.class, () -> {
+            library.notifyUserWithBookReviews(ISBN, userId);
+        });
+
+        //Assert
+        assertEquals("No reviews found!", thrown.getMessage());
+        verify(mockUser, never()).sendNotification(anyString());
+    }
+
+    @Test
+    public void givenFailingPooledSession_whenNotifyUserWithBookReviews_thenSessionInvalidated() {
+        //Arrange
+        ReviewServicePool mockPool = mock(ReviewServicePool.class);
+        when(mockPool.acquire()).thenReturn(mockReviewService);
+        library = new Library(mockDatabaseService, mockPool);
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mock(Book.class));
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mock(User.class));
+        when(mockReviewService.getReviewsForBook(ISBN)).thenThrow(new ReviewException("Something went wrong with review service!"));
+
+        //Act
+        ReviewServiceUnavailableException thrown = assertThrows(ReviewServiceUnavailableException.class, () -> {
+            library.notifyUserWithBookReviews(ISBN, userId);
+        });
+
+        //Assert
+        assertEquals("Review service unavailable!", thrown.getMessage());
+        verify(mockPool).invalidate(mockReviewService);
+        verify(mockPool, never()).release(any());
+    }
+
+    @Test
+    public void givenExhaustedReviewServicePool_whenNotifyUserWithBookReviews_thenReviewServiceUnavailableException() {
+        //Arrange
+        ReviewServicePool mockPool = mock(ReviewServicePool.class);
+        when(mockPool.acquire()).thenThrow(new ReviewException("Review service pool exhausted!"));
+        library = new Library(mockDatabaseService, mockPool);
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mock(Book.class));
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mock(User.class));
+
+        //Act
+        ReviewServiceUnavailableException thrown = assertThrows(ReviewServiceUnavailableException.class, () -> {
+            library.notifyUserWithBookReviews(ISBN, userId);
+        });
+
+        //Assert
+        assertEquals("Review service unavailable!", thrown.getMessage());
+        verify(mockPool, never()).release(any());
+        verify(mockPool, never()).invalidate(any());
+    }
+
     @Test
     public void givenNullUserId_whenNotifyUserWithBookReviews_thenIllegalArgumentException() {
         //Arrange
@@ -798,28 +1094,920 @@ public class TestLibrary {
     }
 
     @Test
-    public void givenValidISBNAndUserID_whenGetBookByISBN_thenBookByISBNFound(){
+    public void givenAvailableBook_whenTryBorrowBook_thenBorrowed() {
         //Arrange
-        String ISBN = "9781501110368";
-        String userId = "102030405060";
-        Book mockBook = mock(Book.class);
-        when(mockBook.getTitle()).thenReturn("It ends with us");
-        User mockUser = mock(User.class);
-        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
-        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
-        when(mockBook.isBorrowed()).thenReturn(false);
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(book);
+        when(mockDatabaseService.getUserById("102030405060")).thenReturn(mock(User.class));
+        when(mockDatabaseService.tryBorrow("9781501110368", "102030405060", book)).thenReturn(true);
 
-        //make sure notify user won't fail
-        List<String> mockReviews = new ArrayList<>();
-        List<String> spyReviews = spy(mockReviews);
-        spyReviews.add("This book is exceptional! I loved it so much!");
-        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(spyReviews);
+        //Act
+        BorrowResult result = library.tryBorrowBook("9781501110368", "102030405060");
 
+        //Assert
+        assertEquals(BorrowResult.BORROWED, result);
+        verify(mockDatabaseService).tryBorrow("9781501110368", "102030405060", book);
+        verify(mockDatabaseService, never()).borrowBook(anyString(), anyString());
+    }
+
+    @Test
+    public void givenConcurrentBorrowerWins_whenTryBorrowBook_thenAlreadyBorrowed() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(book);
+        when(mockDatabaseService.getUserById("102030405060")).thenReturn(mock(User.class));
+        when(mockDatabaseService.tryBorrow("9781501110368", "102030405060", book)).thenReturn(false);
+
+        //Act & Assert
+        assertEquals(BorrowResult.ALREADY_BORROWED, library.tryBorrowBook("9781501110368", "102030405060"));
+    }
+
+    @Test
+    public void givenMissingBookOrUser_whenTryBorrowBook_thenReportedWithoutException() {
+        //Arrange
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(mock(Book.class));
+
+        //Act & Assert
+        assertEquals(BorrowResult.BOOK_NOT_FOUND, library.tryBorrowBook("9780306406157", "102030405060"));
+        assertEquals(BorrowResult.USER_NOT_REGISTERED, library.tryBorrowBook("9781501110368", "102030405060"));
+        verify(mockDatabaseService, never()).tryBorrow(anyString(), anyString(), any(Book.class));
+    }
+
+    @Test
+    public void givenInvalidUserId_whenTryBorrowBook_thenIllegalArgumentException() {
         //Act
-        Book resultBook = library.getBookByISBN(ISBN, userId);
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.tryBorrowBook("9781501110368", "10203040506");
+        });
 
         //Assert
-        assertEquals("It ends with us" ,resultBook.getTitle());
+        assertEquals("Invalid user Id.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenBorrowedBook_whenTryReturnBookTwice_thenReturnedOnce() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        book.borrow();
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(book);
+        when(mockDatabaseService.tryReturn(anyString(), any(), any(Book.class))).thenCallRealMethod();
+
+        //Act
+        ReturnResult first = library.tryReturnBook("9781501110368");
+        ReturnResult second = library.tryReturnBook("9781501110368");
+
+        //Assert
+        assertEquals(ReturnResult.RETURNED, first);
+        assertEquals(ReturnResult.NOT_BORROWED, second);
+        assertEquals(ReturnResult.BOOK_NOT_FOUND, library.tryReturnBook("9780306406157"));
+        verify(mockDatabaseService, times(1)).returnBook("9781501110368");
+    }
+
+    @Test
+    public void givenStacklessException_whenCreated_thenNoStackTraceCaptured() {
+        //Act
+        BookAlreadyBorrowedException stackless = new BookAlreadyBorrowedException("Book is already borrowed!", false);
+        BookAlreadyBorrowedException regular = new BookAlreadyBorrowedException("Book is already borrowed!");
+
+        //Assert
+        assertEquals("Book is already borrowed!", stackless.getMessage());
+        assertEquals(0, stackless.getStackTrace().length);
+        assertTrue(regular.getStackTrace().length > 0);
+    }
+
+    @Test
+    public void givenCatalogIndexes_whenFindBooksByAuthor_thenAuthorsBooksFoundIgnoringCase() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).catalogIndexes().build();
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        library.addBooks(Arrays.asList(
+                new Book("9780306406157", "It starts with us", "Coleen  Hoover"),
+                new Book("9780000000002", "Verity", "Someone Else")));
+
+        //Act
+        List<Book> books = library.findBooksByAuthor(" coleen hoover ");
+
+        //Assert
+        assertEquals(2, books.size());
+        assertEquals("9780306406157", books.get(0).getISBN());
+        assertEquals("9781501110368", books.get(1).getISBN());
+        assertTrue(library.findBooksByAuthor("Nobody").isEmpty());
+    }
+
+    @Test
+    public void givenCatalogIndexes_whenFindBooksByTitlePrefix_thenMatchingBooksInTitleOrder() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).catalogIndexes().build();
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        library.addBook(new Book("9780306406157", "It Ends Again", "Coleen Hoover"));
+        library.addBook(new Book("9780000000002", "Itinerary", "Coleen Hoover"));
+
+        //Act
+        List<Book> books = library.findBooksByTitlePrefix("it ends");
+
+        //Assert
+        assertEquals(2, books.size());
+        assertEquals("It Ends Again", books.get(0).getTitle());
+        assertEquals("It ends with us", books.get(1).getTitle());
+        assertEquals(3, library.findBooksByTitlePrefix("IT").size());
+    }
+
+    @Test
+    public void givenFullTextSearchWithReviews_whenSearchBooks_thenBooksMatchedByReviewText() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).fullTextSearch(Runnable::run).build();
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenReturn(Collections.singletonList("Heartbreaking and brave"));
+        when(mockReviewService.getReviewsForBook("9780306406157")).thenThrow(new ReviewException("Review service down"));
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        library.addBook(new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+
+        //Act
+        List<Book> byReview = library.searchBooks("heartbreaking", 10);
+        List<Book> byAuthor = library.searchBooks("hoover", 10);
+
+        //Assert
+        assertEquals(1, byReview.size());
+        assertEquals("9781501110368", byReview.get(0).getISBN());
+        assertEquals(2, byAuthor.size());
+        verify(mockReviewService, times(2)).close();
+    }
+
+    @Test
+    public void givenReviewIndexer_whenAddBooks_thenReviewsFetchedInBackgroundWithOneSession() {
+        //Arrange
+        ReviewServicePool mockPool = mock(ReviewServicePool.class);
+        when(mockPool.acquire()).thenReturn(mockReviewService);
+        when(mockReviewService.getReviewsForBook(anyString())).thenReturn(Collections.singletonList("Heartbreaking and brave"));
+        List<Runnable> pending = new ArrayList<>();
+        library = Library.builder(new InMemoryDatabaseService()).reviewServicePool(mockPool).fullTextSearch(pending::add).build();
+
+        //Act
+        library.addBooks(Arrays.asList(
+                new Book("9781501110368", "It ends with us", "Coleen Hoover"),
+                new Book("9780306406157", "It starts with us", "Coleen Hoover")));
+        List<Book> beforeIndexing = library.searchBooks("heartbreaking", 10);
+        pending.forEach(Runnable::run);
+
+        //Assert
+        assertTrue(beforeIndexing.isEmpty());
+        assertEquals(2, library.searchBooks("heartbreaking", 10).size());
+        verify(mockPool, times(1)).acquire();
+        verify(mockPool, times(1)).release(mockReviewService);
+    }
+
+    @Test
+    public void givenReviewFetchThrowsUnexpectedException_whenAddBooks_thenBatchIndexedAndFailureRecorded() {
+        //Arrange
+        SimpleLibraryMetrics metrics = new SimpleLibraryMetrics();
+        library = Library.builder(new InMemoryDatabaseService())
+                .reviewService(mockReviewService)
+                .metrics(metrics)
+                .fullTextSearch(Runnable::run)
+                .build();
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenThrow(new IllegalStateException("Malformed page"));
+        when(mockReviewService.getReviewsForBook("9780306406157")).thenReturn(Collections.singletonList("Heartbreaking and brave"));
+
+        //Act
+        library.addBooks(Arrays.asList(
+                new Book("9781501110368", "It ends with us", "Coleen Hoover"),
+                new Book("9780306406157", "It starts with us", "Coleen Hoover")));
+
+        //Assert
+        assertEquals(2, library.searchBooks("hoover", 10).size());
+        assertEquals(1, library.searchBooks("heartbreaking", 10).size());
+        assertEquals(2, metrics.getReviewFetchLatency().getCount());
+        assertEquals(1, metrics.getFailureCount(IllegalStateException.class));
+    }
+
+    @Test
+    public void givenRestoredCatalog_whenIndexExistingBooks_thenBooksFound() {
+        //Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        databaseService.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+        library = Library.builder(databaseService).reviewService(mockReviewService).catalogIndexes().fullTextSearch().build();
+        library.addBook(new Book("9780000000002", "Verity", "Coleen Hoover"));
+
+        //Act
+        library.indexExistingBooks();
+
+        //Assert
+        assertEquals(3, library.findBooksByAuthor("coleen hoover").size());
+        assertEquals(1, library.findBooksByTitlePrefix("it starts").size());
+        assertEquals(3, library.searchBooks("hoover", 10).size());
+    }
+
+    @Test
+    public void givenNoIndexes_whenIndexExistingBooks_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> library.indexExistingBooks());
+
+        //Assert
+        assertEquals("Indexes are not configured.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenNoFullTextSearch_whenSearchBooks_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            library.searchBooks("hoover", 10);
+        });
+
+        //Assert
+        assertEquals("Full-text search is not configured.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenNoCatalogIndexes_whenFindBooksByAuthor_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            library.findBooksByAuthor("Coleen Hoover");
+        });
+
+        //Assert
+        assertEquals("Catalog indexes are not configured.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenBlankPrefix_whenFindBooksByTitlePrefix_thenIllegalArgumentException() {
+        //Arrange
+        library = Library.builder(mockDatabaseService).reviewService(mockReviewService).catalogIndexes().build();
+
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.findBooksByTitlePrefix("  ");
+        });
+
+        //Assert
+        assertEquals("Invalid title prefix.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenBorrowsAndReturns_whenGetLoansForUser_thenOnlyHeldBooksReturned() {
+        //Arrange
+        library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        User user = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+        User other = new User("Someone Else", "102030405061", mock(NotificationService.class));
+        library.registerUsers(Arrays.asList(user, other));
+        library.addBooks(Arrays.asList(
+                new Book("9781501110368", "It ends with us", "Coleen Hoover"),
+                new Book("9780306406157", "It starts with us", "Coleen Hoover"),
+                new Book("9780000000002", "Verity", "Coleen Hoover")));
+
+        //Act
+        library.borrowBook("9781501110368", user.getId());
+        library.tryBorrowBook("9780306406157", user.getId());
+        library.borrowBook("9780000000002", other.getId());
+        library.returnBook("9781501110368");
+
+        //Assert
+        List<Book> loans = library.getLoansForUser(user.getId());
+        assertEquals(1, loans.size());
+        assertEquals("9780306406157", loans.get(0).getISBN());
+        assertSame(user, library.getBorrowerOf("9780306406157"));
+        assertSame(other, library.getBorrowerOf("9780000000002"));
+        assertNull(library.getBorrowerOf("9781501110368"));
+        library.tryReturnBook("9780306406157");
+        assertTrue(library.getLoansForUser(user.getId()).isEmpty());
+    }
+
+    @Test
+    public void givenLoanOpenInDatabase_whenLibraryBuilt_thenLoanTracked() {
+        //Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        User user = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+        databaseService.registerUser(user.getId(), user);
+        databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        databaseService.tryBorrow("9781501110368", user.getId());
+
+        //Act
+        library = new Library(databaseService, mockReviewService);
+
+        //Assert
+        assertSame(user, library.getBorrowerOf("9781501110368"));
+        assertEquals(1, library.getLoansForUser(user.getId()).size());
+        library.returnBook("9781501110368", user.getId());
+        assertNull(library.getBorrowerOf("9781501110368"));
+    }
+
+    @Test
+    public void givenConcurrentBorrowsAndReturns_whenDone_thenLedgerMatchesBook() throws Exception {
+        //Arrange
+        library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        User user = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+        library.registerUser(user);
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        library.addBook(book);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //Act
+        try {
+            Future<?> borrower = executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    library.tryBorrowBook(book.getISBN(), user.getId());
+                }
+            });
+            Future<?> returner = executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    library.tryReturnBook(book.getISBN());
+                }
+            });
+            borrower.get(30, TimeUnit.SECONDS);
+            returner.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Assert
+        assertEquals(book.isBorrowed(), library.getBorrowerOf(book.getISBN()) != null);
+        assertEquals(book.isBorrowed() ? 1 : 0, library.getLoansForUser(user.getId()).size());
+    }
+
+    @Test
+    public void givenInvalidUserId_whenGetLoansForUser_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.getLoansForUser("1234");
+        });
+
+        //Assert
+        assertEquals("Invalid user Id.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenMultiCopyInventory_whenAddSameBookTwice_thenCopiesCounted() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).multiCopyInventory().build();
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+
+        //Act
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        BatchResult<Book> result = library.addBooks(Arrays.asList(
+                new Book("9781501110368", "It ends with us", "Coleen Hoover"),
+                new Book("9780306406157", "It starts with us", "Coleen Hoover"),
+                new Book("9780306406157", "It starts with us", "Coleen Hoover")));
+
+        //Assert
+        assertEquals(3, result.getAccepted().size());
+        assertEquals(3, library.getCopyCount("9781501110368"));
+        assertEquals(2, library.getCopyCount("9780306406157"));
+        assertEquals(2, library.getAvailableCopies("9780306406157"));
+    }
+
+    @Test
+    public void givenMultiCopyInventory_whenEveryCopyBorrowed_thenBookUnavailableUntilReturned() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).multiCopyInventory().build();
+        User first = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+        User second = new User("Someone Else", "102030405061", mock(NotificationService.class));
+        library.registerUsers(Arrays.asList(first, second));
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+
+        //Act
+        library.borrowBook("9781501110368", first.getId());
+        BorrowResult again = library.tryBorrowBook("9781501110368", first.getId());
+        library.borrowBook("9781501110368", second.getId());
+        Map<String, BookAvailability> exhausted = library.getAvailability(Collections.singletonList("9781501110368"));
+        library.returnBook("9781501110368", first.getId());
+
+        //Assert
+        assertEquals(BorrowResult.ALREADY_BORROWED, again);
+        assertEquals(BookAvailability.BORROWED, exhausted.get("9781501110368"));
+        assertEquals(1, library.getAvailableCopies("9781501110368"));
+        assertTrue(library.getLoansForUser(first.getId()).isEmpty());
+        assertSame(second, library.getBorrowerOf("9781501110368"));
+        assertEquals(ReturnResult.RETURNED, library.tryReturnBook("9781501110368", second.getId()));
+        assertEquals(ReturnResult.NOT_BORROWED, library.tryReturnBook("9781501110368", second.getId()));
+        assertEquals(2, library.getAvailableCopies("9781501110368"));
+    }
+
+    @Test
+    public void givenMultiCopyInventory_whenReturnBookWithoutUser_thenIllegalStateException() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).multiCopyInventory().build();
+        User user = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+        library.registerUser(user);
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        library.borrowBook("9781501110368", user.getId());
+
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            library.returnBook("9781501110368");
+        });
+
+        //Assert
+        assertEquals("Returning a copy requires the user Id.", thrown.getMessage());
+        assertThrows(IllegalStateException.class, () -> library.tryReturnBook("9781501110368"));
+        assertSame(user, library.getBorrowerOf("9781501110368"));
+    }
+
+    @Test
+    public void givenMultiCopyInventory_whenCopyHasOtherTitle_thenRejected() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).multiCopyInventory().build();
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.addBook(new Book("9781501110368", "It starts with us", "Coleen Hoover"));
+        });
+        BatchResult<Book> result = library.addBooks(Arrays.asList(
+                new Book("9781501110368", "It ends with us", "Someone Else"),
+                new Book("9780306406157", "It starts with us", "Coleen Hoover"),
+                new Book("9780306406157", "Verity", "Coleen Hoover")));
+
+        //Assert
+        assertEquals("Book does not match the existing copies.", thrown.getMessage());
+        assertEquals(1, result.getAccepted().size());
+        assertEquals(2, result.getRejected().size());
+        assertEquals("Book does not match the existing copies.", result.getRejected().get(0).getReason());
+        assertEquals("Book does not match the existing copies.", result.getRejected().get(1).getReason());
+        assertEquals(1, library.getCopyCount("9781501110368"));
+        assertEquals(1, library.getCopyCount("9780306406157"));
+    }
+
+    @Test
+    public void givenMultiCopyInventory_whenBorrowedConcurrently_thenOneCheckoutPerCopy() throws Exception {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).multiCopyInventory().build();
+        for (int i = 0; i < 50; i++) {
+            library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        }
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            String userId = String.format("1020304050%02d", i);
+            library.registerUser(new User("Coleen Hoover", userId, mock(NotificationService.class)));
+            userIds.add(userId);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //Act
+        int borrowed = 0;
+        try {
+            List<Future<BorrowResult>> futures = new ArrayList<>();
+            for (String userId : userIds) {
+                futures.add(executor.submit(() -> library.tryBorrowBook("9781501110368", userId)));
+            }
+            for (Future<BorrowResult> future : futures) {
+                if (future.get(10, TimeUnit.SECONDS) == BorrowResult.BORROWED) {
+                    borrowed++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Assert
+        assertEquals(50, borrowed);
+        assertEquals(0, library.getAvailableCopies("9781501110368"));
+    }
+
+    @Test
+    public void givenOtherBorrower_whenReturnBookByUser_thenBookNotBorrowedException() {
+        //Arrange
+        library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        library.registerUser(new User("Coleen Hoover", "102030405060", mock(NotificationService.class)));
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        library.borrowBook("9781501110368", "102030405060");
+
+        //Act
+        BookNotBorrowedException thrown = assertThrows(BookNotBorrowedException.class, () -> {
+            library.returnBook("9781501110368", "102030405061");
+        });
+
+        //Assert
+        assertEquals("Book wasn't borrowed!", thrown.getMessage());
+        library.returnBook("9781501110368", "102030405060");
+        assertNull(library.getBorrowerOf("9781501110368"));
+    }
+
+    @Test
+    public void givenMultiCopyInventory_whenReturnBookWithInvalidISBNAndNoUser_thenIllegalArgumentException() {
+        //Arrange
+        library = Library.builder(new InMemoryDatabaseService()).reviewService(mockReviewService).multiCopyInventory().build();
+
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.returnBook("invalid");
+        });
+
+        //Assert
+        assertEquals("Invalid ISBN.", thrown.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> library.tryReturnBook("invalid"));
+    }
+
+    @Test
+    public void givenDatabaseWithoutCopies_whenBuildWithMultiCopyInventory_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            Library.builder(mockDatabaseService).reviewService(mockReviewService).multiCopyInventory().build();
+        });
+
+        //Assert
+        assertEquals("Multi-copy inventory requires a database that holds copies.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenNoMultiCopyInventory_whenGetCopyCount_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            library.getCopyCount("9781501110368");
+        });
+
+        //Assert
+        assertEquals("Multi-copy inventory is not configured.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenInvalidISBN_whenGetBorrowerOf_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            library.getBorrowerOf("1234");
+        });
+
+        //Assert
+        assertEquals("Invalid ISBN.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenMetrics_whenNotificationKeepsFailing_thenRetriesAndFailureRecorded() {
+        //Arrange
+        SimpleLibraryMetrics metrics = new SimpleLibraryMetrics();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .metrics(metrics)
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+        doThrow(new NotificationException("Something went wrong with sending the Notification!")).when(mockUser).sendNotification(anyString());
+
+        //Act
+        assertThrows(NotificationException.class, () -> library.notifyUserWithBookReviews(ISBN, userId));
+
+        //Assert
+        assertEquals(4, metrics.getNotificationRetryCount());
+        assertEquals(1, metrics.getNotificationExhaustedCount());
+        assertEquals(1, metrics.getReviewFetchLatency().getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS).getCount());
+        assertEquals(1, metrics.getFailureCount(NotificationException.class));
+    }
+
+    @Test
+    public void givenMissingBook_whenBorrowBook_thenExceptionWithoutStackTrace() {
+        //Act
+        BookNotFoundException thrown = assertThrows(BookNotFoundException.class, () -> library.borrowBook("9781501110368", "102030405060"));
+
+        //Assert
+        assertEquals("Book not found!", thrown.getMessage());
+        assertEquals(0, thrown.getStackTrace().length);
+    }
+
+    @Test
+    public void givenMetrics_whenOperationsFail_thenFailuresCountedPerExceptionType() {
+        //Arrange
+        SimpleLibraryMetrics metrics = new SimpleLibraryMetrics();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .metrics(metrics)
+                .build();
+        Book mockBook = mock(Book.class);
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(mockBook);
+        when(mockBook.isBorrowed()).thenReturn(true);
+
+        //Act
+        assertThrows(BookNotFoundException.class, () -> library.borrowBook("9780306406157", "102030405060"));
+        assertThrows(BookAlreadyBorrowedException.class, () -> library.getBookByISBN("9781501110368", "102030405060"));
+        assertThrows(IllegalArgumentException.class, () -> library.returnBook("978150111036"));
+
+        //Assert
+        assertEquals(1, metrics.getFailureCount(BookNotFoundException.class));
+        assertEquals(1, metrics.getFailureCount(BookAlreadyBorrowedException.class));
+        assertEquals(1, metrics.getFailureCount(IllegalArgumentException.class));
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.BORROW_BOOK).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.GET_BOOK_BY_ISBN).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.RETURN_BOOK).getCount());
+        assertEquals(0, metrics.getLatency(LibraryMetrics.Operation.ADD_BOOK).getCount());
+    }
+
+    @Test
+    public void givenMetrics_whenQueriesRun_thenQueriesMeasured() {
+        //Arrange
+        SimpleLibraryMetrics metrics = new SimpleLibraryMetrics();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationDispatcher(new NotificationDispatcher(Runnable::run, 1, NotificationDispatcher.OverflowPolicy.REJECT))
+                .metrics(metrics)
+                .build();
+
+        //Act
+        library.getAvailability(Collections.singletonList("9781501110368"));
+        library.getLoansForUser("102030405060");
+        library.getBorrowerOf("9781501110368");
+        assertThrows(IllegalStateException.class, () -> library.findBooksByAuthor("Coleen Hoover"));
+        assertThrows(IllegalStateException.class, () -> library.findBooksByTitlePrefix("It ends"));
+        assertThrows(IllegalStateException.class, () -> library.searchBooks("ends", 10));
+        CompletableFuture<Void> delivery = library.notifyUserWithBookReviewsAsync("9781501110368", "102030405060");
+
+        //Assert
+        assertTrue(delivery.isCompletedExceptionally());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.GET_AVAILABILITY).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.GET_LOANS_FOR_USER).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.GET_BORROWER_OF).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.FIND_BOOKS_BY_AUTHOR).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.FIND_BOOKS_BY_TITLE_PREFIX).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.SEARCH_BOOKS).getCount());
+        assertEquals(1, metrics.getLatency(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS_ASYNC).getCount());
+        assertEquals(3, metrics.getFailureCount(IllegalStateException.class));
+        assertEquals(1, metrics.getFailureCount(BookNotFoundException.class));
+    }
+
+    @Test
+    public void givenNotificationDispatcher_whenNotifyUserWithBookReviewsAsync_thenUserNotified() {
+        //Arrange
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationDispatcher(new NotificationDispatcher(Runnable::run, 1, NotificationDispatcher.OverflowPolicy.REJECT))
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+
+        //Act
+        CompletableFuture<Void> future = library.notifyUserWithBookReviewsAsync(ISBN, userId);
+
+        //Assert
+        assertDoesNotThrow(() -> future.join());
+        verify(mockUser).sendNotification("Reviews for 'It ends with us':\nGreat!");
+        verify(mockReviewService).close();
+    }
+
+    @Test
+    public void givenMissingBook_whenNotifyUserWithBookReviewsAsync_thenFutureFailsWithBookNotFoundException() {
+        //Arrange
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationDispatcher(new NotificationDispatcher(Runnable::run, 1, NotificationDispatcher.OverflowPolicy.REJECT))
+                .build();
+
+        //Act
+        CompletableFuture<Void> future = library.notifyUserWithBookReviewsAsync("9781501110368", "102030405060");
+
+        //Assert
+        CompletionException thrown = assertThrows(CompletionException.class, future::join);
+        assertTrue(thrown.getCause() instanceof BookNotFoundException);
+    }
+
+    @Test
+    public void givenNoNotificationDispatcher_whenNotifyUserWithBookReviewsAsync_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            library.notifyUserWithBookReviewsAsync("9781501110368", "102030405060");
+        });
+
+        //Assert
+        assertEquals("Asynchronous notifications are not configured.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenBackoffRetryPolicy_whenNotificationFailsTwice_thenRetriedOnSchedulerAndDelivered() {
+        //Arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationRetryPolicy(new ExponentialBackoffRetryPolicy(5, 1, 10, 0.5, null), scheduler)
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+        String notificationMessage = "Reviews for 'It ends with us':\nGreat!";
+        doThrow(new NotificationException("Something went wrong with sending the Notification!"))
+                .doThrow(new NotificationException("Something went wrong with sending the Notification!"))
+                .doNothing()
+                .when(mockUser).sendNotification(notificationMessage);
+
+        //Act
+        try {
+            assertDoesNotThrow(() -> library.notifyUserWithBookReviews(ISBN, userId));
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        //Assert
+        verify(mockUser, times(3)).sendNotification(notificationMessage);
+        RetryStats stats = library.getNotificationRetryStats();
+        assertEquals(3, stats.getAttemptCount());
+        assertEquals(2, stats.getRetryCount());
+        assertEquals(0, stats.getExhaustedCount());
+    }
+
+    @Test
+    public void givenShutDownScheduler_whenNotificationFails_thenRejectedExecutionExceptionThrown() {
+        //Arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.shutdownNow();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationRetryPolicy(new ExponentialBackoffRetryPolicy(5, 1, 10, 0.5, null), scheduler)
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+        doThrow(new NotificationException("Something went wrong with sending the Notification!")).when(mockUser).sendNotification(anyString());
+
+        //Act & Assert
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(RejectedExecutionException.class, () -> library.notifyUserWithBookReviews(ISBN, userId));
+        });
+        verify(mockUser, times(1)).sendNotification(anyString());
+    }
+
+    @Test
+    public void givenSendNotificationsFails5Times_whenNotifyUserWithBookReviews_thenRetryStatsRecorded() {
+        //Arrange
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+        doThrow(new NotificationException("Something went wrong with sending the Notification!")).when(mockUser).sendNotification(anyString());
+
+        //Act
+        assertThrows(NotificationException.class, () -> library.notifyUserWithBookReviews(ISBN, userId));
+
+        //Assert
+        RetryStats stats = library.getNotificationRetryStats();
+        assertEquals(5, stats.getAttemptCount());
+        assertEquals(4, stats.getRetryCount());
+        assertEquals(1, stats.getExhaustedCount());
+    }
+
+    @Test
+    public void givenValidISBNAndUserID_whenGetBookByISBN_thenBookByISBNFound(){
+        //Arrange
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockBook.isBorrowed()).thenReturn(false);
+
+        //make sure notify user won't fail
+        List<String> mockReviews = new ArrayList<>();
+        List<String> spyReviews = spy(mockReviews);
+        spyReviews.add("This book is exceptional! I loved it so much!");
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(spyReviews);
+
+        //Act
+        Book resultBook = library.getBookByISBN(ISBN, userId);
+
+        //Assert
+        assertEquals("It ends with us" ,resultBook.getTitle());
+    }
+
+    @Test
+    public void givenDelayedRetries_whenGetBookByISBNAndNotificationFails_thenReturnsBeforeRetrying() {
+        //Arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationRetryPolicy(new ExponentialBackoffRetryPolicy(5, 60_000, 60_000, 0, null), scheduler)
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+        doThrow(new NotificationException("Something went wrong with sending the Notification!")).when(mockUser).sendNotification(anyString());
+
+        //Act
+        Book resultBook;
+        try {
+            resultBook = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> library.getBookByISBN(ISBN, userId));
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        //Assert
+        assertSame(mockBook, resultBook);
+        verify(mockUser, times(1)).sendNotification(anyString());
+        RetryStats stats = library.getNotificationRetryStats();
+        assertEquals(1, stats.getAttemptCount());
+        assertEquals(1, stats.getRetryCount());
+    }
+
+    @Test
+    public void givenValidISBNAndUserID_whenGetBookByISBN_thenBookLookedUpOnce() {
+        //Arrange
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+
+        //Act
+        library.getBookByISBN(ISBN, userId);
+
+        //Assert
+        verify(mockDatabaseService, times(1)).getBookByISBN(ISBN);
+        verify(mockUser).sendNotification("Reviews for 'It ends with us':\nGreat!");
+    }
+
+    @Test
+    public void givenBackgroundNotifications_whenGetBookByISBNTwice_thenReturnsBeforeNotifyingAndNotifiesOnce() {
+        //Arrange
+        List<Runnable> pendingTasks = new ArrayList<>();
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationDispatcher(new NotificationDispatcher(pendingTasks::add, 10, NotificationDispatcher.OverflowPolicy.REJECT))
+                .backgroundReviewNotifications(1, TimeUnit.MINUTES)
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        Book mockBook = mock(Book.class);
+        when(mockBook.getTitle()).thenReturn("It ends with us");
+        User mockUser = mock(User.class);
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great!"));
+
+        //Act
+        Book first = library.getBookByISBN(ISBN, userId);
+        Book second = library.getBookByISBN(ISBN, userId);
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+        pendingTasks.forEach(Runnable::run);
+
+        //Assert
+        assertSame(mockBook, first);
+        assertSame(mockBook, second);
+        assertEquals(1, pendingTasks.size());
+        verify(mockUser, times(1)).sendNotification("Reviews for 'It ends with us':\nGreat!");
+    }
+
+    @Test
+    public void givenFailedBackgroundNotification_whenGetBookByISBNAgain_thenNotificationRetried() {
+        //Arrange
+        library = Library.builder(mockDatabaseService)
+                .reviewService(mockReviewService)
+                .notificationDispatcher(new NotificationDispatcher(Runnable::run, 10, NotificationDispatcher.OverflowPolicy.REJECT))
+                .backgroundReviewNotifications(1, TimeUnit.MINUTES)
+                .build();
+        String ISBN = "9781501110368";
+        String userId = "102030405060";
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mock(Book.class));
+        when(mockDatabaseService.getUserById(userId)).thenReturn(mock(User.class));
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(null);
+
+        //Act
+        library.getBookByISBN(ISBN, userId);
+        library.getBookByISBN(ISBN, userId);
+
+        //Assert
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    public void givenBackgroundNotificationsWithoutDispatcher_whenBuild_thenIllegalStateException() {
+        //Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+            Library.builder(mockDatabaseService)
+                    .reviewService(mockReviewService)
+                    .backgroundReviewNotifications(1, TimeUnit.MINUTES)
+                    .build();
+        });
+
+        //Assert
+        assertEquals("Background notifications require a notification dispatcher.", thrown.getMessage());
     }
 
     @Test
@@ -0,0 +1,52 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestNotificationDeduplicator {
+    AtomicLong clock;
+    NotificationDeduplicator deduplicator;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong();
+        deduplicator = new NotificationDeduplicator(10, TimeUnit.SECONDS, clock::get);
+    }
+
+    @Test
+    public void givenNewerClaim_whenReleaseStaleClaim_thenNewerClaimKept() {
+        //Arrange
+        Long stale = deduplicator.tryAcquire("102030405060", "9781501110368");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        Long newer = deduplicator.tryAcquire("102030405060", "9781501110368");
+
+        //Act
+        deduplicator.release("102030405060", "9781501110368", stale);
+
+        //Assert
+        assertNotNull(newer);
+        assertNull(deduplicator.tryAcquire("102030405060", "9781501110368"));
+        deduplicator.release("102030405060", "9781501110368", newer);
+        assertNotNull(deduplicator.tryAcquire("102030405060", "9781501110368"));
+    }
+
+    @Test
+    public void givenManyExpiredClaims_whenPurgeExpiredIfNeeded_thenOnlyLiveClaimsKept() {
+        //Arrange
+        for (int i = 0; i < 1024; i++) {
+            assertNotNull(deduplicator.tryAcquire(String.format("%012d", i), "9781501110368"));
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertNotNull(deduplicator.tryAcquire("102030405060", "9781501110368"));
+
+        //Act
+        deduplicator.purgeExpiredIfNeeded();
+
+        //Assert
+        assertEquals(1, deduplicator.size());
+        assertNull(deduplicator.tryAcquire("102030405060", "9781501110368"));
+    }
+}
@@ -0,0 +1,80 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.*;
+
+public class TestNotificationDispatcher {
+    ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenFullBacklogWithRejectPolicy_whenDispatch_thenRejected() throws Exception {
+        //Arrange
+        NotificationDispatcher dispatcher = new NotificationDispatcher(executor, 1, NotificationDispatcher.OverflowPolicy.REJECT);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocking = dispatcher.dispatch(() -> awaitQuietly(release));
+
+        //Act
+        CompletableFuture<Void> rejected = dispatcher.dispatch(() -> { });
+        release.countDown();
+
+        //Assert
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof RejectedExecutionException);
+        blocking.get(10, TimeUnit.SECONDS);
+        assertEquals(1, dispatcher.getRemainingCapacity());
+    }
+
+    @Test
+    public void givenFullBacklogWithCallerRunsPolicy_whenDispatch_thenRunOnCaller() throws Exception {
+        //Arrange
+        NotificationDispatcher dispatcher = new NotificationDispatcher(executor, 1, NotificationDispatcher.OverflowPolicy.CALLER_RUNS);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch(() -> awaitQuietly(release));
+        Thread caller = Thread.currentThread();
+        Thread[] ranOn = new Thread[1];
+
+        //Act
+        CompletableFuture<Void> future = dispatcher.dispatch(() -> ranOn[0] = Thread.currentThread());
+        release.countDown();
+
+        //Assert
+        assertTrue(future.isDone());
+        assertSame(caller, ranOn[0]);
+    }
+
+    @Test
+    public void givenFailingTask_whenDispatch_thenFutureCompletedExceptionally() {
+        //Arrange
+        NotificationDispatcher dispatcher = NotificationDispatcher.withWorkers(2, 10, NotificationDispatcher.OverflowPolicy.BLOCK);
+
+        //Act
+        CompletableFuture<Void> future = dispatcher.dispatch(() -> {
+            throw new IllegalStateException("Notification failed!");
+        });
+
+        //Assert
+        CompletionException thrown = assertThrows(CompletionException.class, future::join);
+        assertEquals("Notification failed!", thrown.getCause().getMessage());
+        dispatcher.shutdown();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class TestReviewMessageBuilder {
+
+    @Test
+    public void givenUnboundedBuilder_whenBuild_thenAllReviewsJoined() {
+        //Arrange
+        List<String> reviews = Arrays.asList("Great!", "Loved it", "Meh");
+
+        //Act
+        String message = ReviewMessageBuilder.unbounded().build("It ends with us", reviews.iterator());
+
+        //Assert
+        assertEquals("Reviews for 'It ends with us':\n" + String.join("\n", reviews), message);
+    }
+
+    @Test
+    public void givenNoReviews_whenBuild_thenNull() {
+        //Act & Assert
+        assertNull(ReviewMessageBuilder.unbounded().build("It ends with us", Collections.<String>emptyIterator()));
+    }
+
+    @Test
+    public void givenReviewLimit_whenBuild_thenOnlyLimitConsumed() {
+        //Arrange
+        Iterator<String> reviews = Arrays.asList("Great!", "Loved it", "Meh").iterator();
+
+        //Act
+        String message = new ReviewMessageBuilder(2, 1000).build("It ends with us", reviews);
+
+        //Assert
+        assertEquals("Reviews for 'It ends with us':\nGreat!\nLoved it", message);
+        assertEquals("Meh", reviews.next());
+    }
+
+    @Test
+    public void givenCharacterLimit_whenBuild_thenMessageTruncatedWithMarker() {
+        //Arrange
+        List<String> reviews = Arrays.asList("Great!", "An extremely long review that does not fit");
+
+        //Act
+        String message = new ReviewMessageBuilder(10, 50).build("It ends with us", reviews.iterator());
+
+        //Assert
+        assertEquals(50, message.length());
+        assertTrue(message.startsWith("Reviews for 'It ends with us':\nGreat!\n"));
+        assertTrue(message.endsWith("\n..."));
+    }
+
+    @Test
+    public void givenCutInsideSurrogatePair_whenBuild_thenPairKeptWhole() {
+        //Arrange
+        Iterator<String> reviews = Arrays.asList("Great!", "1234567\uD83D\uDE00 long", "Meh").iterator();
+
+        //Act
+        String message = new ReviewMessageBuilder(10, 50).build("It ends with us", reviews);
+
+        //Assert
+        assertEquals("Reviews for 'It ends with us':\nGreat!\n1234567\n...", message);
+        assertEquals("Meh", reviews.next());
+    }
+
+    @Test
+    public void givenInvalidLimits_whenConstructed_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException reviews = assertThrows(IllegalArgumentException.class, () -> new ReviewMessageBuilder(0, 1000));
+        IllegalArgumentException chars = assertThrows(IllegalArgumentException.class, () -> new ReviewMessageBuilder(10, 4));
+
+        //Assert
+        assertEquals("Invalid maximum reviews.", reviews.getMessage());
+        assertEquals("Invalid maximum characters.", chars.getMessage());
+    }
+}
@@ -0,0 +1,33 @@
+package ac.il.bgu.qa;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TestUserIdValidator {
+
+    @ParameterizedTest
+    @ValueSource(strings = { "", "10203040506", "1020304050601", "10203040506a", "-10203040506" })
+    public void givenInvalidUserId_whenIsValid_thenFalse(String userId) {
+        assertFalse(UserIdValidator.isValid(userId));
+    }
+
+    @Test
+    public void givenValidUserId_whenToLong_thenNumericKey() {
+        assertTrue(UserIdValidator.isValid("102030405060"));
+        assertEquals(102030405060L, UserIdValidator.toLong("102030405060"));
+        assertEquals(0L, UserIdValidator.toLong("000000000000"));
+    }
+
+    @Test
+    public void givenInvalidUserId_whenToLong_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            UserIdValidator.toLong(null);
+        });
+
+        //Assert
+        assertEquals("Invalid user Id.", thrown.getMessage());
+    }
+}
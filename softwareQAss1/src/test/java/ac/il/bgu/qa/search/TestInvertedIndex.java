@@ -0,0 +1,100 @@
+package ac.il.bgu.qa.search;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+public class TestInvertedIndex {
+    InvertedIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new InvertedIndex();
+    }
+
+    @Test
+    public void givenText_whenTokenize_thenLowerCaseTermsWithoutStopWords() {
+        //Act
+        List<String> terms = Tokenizer.tokenize("It Ends with Us: a NOVEL, 2016!");
+
+        //Assert
+        assertEquals(Arrays.asList("ends", "us", "novel", "2016"), terms);
+        assertTrue(Tokenizer.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void givenBooks_whenSearch_thenOnlyBooksWithEveryTermMatch() {
+        //Arrange
+        index.add("9781501110368", "It ends with us", "Coleen Hoover", Collections.<String>emptyList());
+        index.add("9780306406157", "It starts with us", "Coleen Hoover", Collections.<String>emptyList());
+        index.add("9780000000002", "Ends of the earth", "Someone Else", Collections.<String>emptyList());
+
+        //Act
+        List<SearchHit> hits = index.search("hoover ENDS", 10);
+
+        //Assert
+        assertEquals(1, hits.size());
+        assertEquals("9781501110368", hits.get(0).getISBN());
+        assertTrue(index.search("hoover missing", 10).isEmpty());
+        assertTrue(index.search("the of", 10).isEmpty());
+    }
+
+    @Test
+    public void givenTermInTitleAndInReview_whenSearch_thenTitleMatchRankedFirst() {
+        //Arrange
+        index.add("9781501110368", "Verity", "Coleen Hoover", Collections.singletonList("A thriller I could not put down"));
+        index.add("9780306406157", "Thriller nights", "Someone Else", Collections.<String>emptyList());
+
+        //Act
+        List<SearchHit> hits = index.search("thriller", 10);
+
+        //Assert
+        assertEquals(2, hits.size());
+        assertEquals("9780306406157", hits.get(0).getISBN());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    public void givenManyMatches_whenSearchWithLimit_thenTopResultsMatchBruteForce() {
+        //Arrange
+        Random random = new Random(42);
+        String[] words = {"alpha", "beta", "gamma", "delta", "epsilon"};
+        Map<String, String> titles = new LinkedHashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 1 + random.nextInt(4); w++) {
+                title.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            String ISBN = String.format("978%010d", i);
+            titles.put(ISBN, title.toString());
+            index.add(ISBN, title.toString(), "Author", Collections.<String>emptyList());
+        }
+
+        //Act
+        List<SearchHit> top = index.search("alpha delta", 5);
+        List<SearchHit> all = index.search("alpha delta", Integer.MAX_VALUE - 1);
+
+        //Assert
+        long expected = titles.values().stream().filter(t -> t.contains("alpha") && t.contains("delta")).count();
+        assertEquals(expected, all.size());
+        assertEquals(5, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(all.get(i).getISBN(), top.get(i).getISBN());
+        }
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getScore() >= all.get(i).getScore());
+        }
+    }
+
+    @Test
+    public void givenInvalidLimit_whenSearch_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            index.search("hoover", 0);
+        });
+
+        //Assert
+        assertEquals("Invalid limit.", thrown.getMessage());
+    }
+}
@@ -0,0 +1,122 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.SimpleLibraryMetrics;
+import ac.il.bgu.qa.errors.NotificationException;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TestBatchingNotificationService {
+    @Mock
+    NotificationService mockNotificationService;
+    @Mock
+    ScheduledExecutorService mockScheduler;
+    List<Runnable> scheduledFlushes;
+    BatchingNotificationService batchingNotificationService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        scheduledFlushes = new ArrayList<>();
+        when(mockScheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduledFlushes.add(invocation.getArgument(0));
+            return null;
+        });
+        batchingNotificationService = new BatchingNotificationService(mockNotificationService, 3, 200, TimeUnit.MILLISECONDS, mockScheduler);
+    }
+
+    @Test
+    public void givenMessagesWithinWindow_whenWindowEnds_thenOneDigestPerUser() {
+        //Act
+        batchingNotificationService.notifyUser("102030405060", "First");
+        batchingNotificationService.notifyUser("102030405060", "Second");
+        batchingNotificationService.notifyUser("102030405061", "Other");
+        verify(mockNotificationService, never()).notifyUser(anyString(), anyString());
+        scheduledFlushes.forEach(Runnable::run);
+
+        //Assert
+        assertEquals(2, scheduledFlushes.size());
+        verify(mockNotificationService).notifyUser("102030405060", "First\n\nSecond");
+        verify(mockNotificationService).notifyUser("102030405061", "Other");
+        assertEquals(3, batchingNotificationService.getMessagesReceived());
+        assertEquals(2, batchingNotificationService.getDigestsSent());
+    }
+
+    @Test
+    public void givenBatchReachesSizeLimit_whenNotifyUser_thenDeliveredImmediately() {
+        //Act
+        batchingNotificationService.notifyUser("102030405060", "First");
+        batchingNotificationService.notifyUser("102030405060", "Second");
+        batchingNotificationService.notifyUser("102030405060", "Third");
+        batchingNotificationService.notifyUser("102030405060", "Fourth");
+        scheduledFlushes.get(0).run();
+
+        //Assert
+        verify(mockNotificationService).notifyUser("102030405060", "First\n\nSecond\n\nThird");
+        verify(mockNotificationService, never()).notifyUser("102030405060", "Fourth");
+        scheduledFlushes.get(1).run();
+        verify(mockNotificationService).notifyUser("102030405060", "Fourth");
+    }
+
+    @Test
+    public void givenFailingUpstream_whenFlush_thenFailureCounted() {
+        //Arrange
+        doThrow(new NotificationException("Something went wrong with sending the Notification!"))
+                .when(mockNotificationService).notifyUser(anyString(), anyString());
+        batchingNotificationService.notifyUser("102030405060", "First");
+
+        //Act
+        batchingNotificationService.flush();
+
+        //Assert
+        assertEquals(1, batchingNotificationService.getDigestsFailed());
+        assertEquals(0, batchingNotificationService.getDigestsSent());
+    }
+
+    @Test
+    public void givenUpstreamThrowsUnexpectedException_whenFlush_thenFailureCountedAndReported() {
+        //Arrange
+        SimpleLibraryMetrics metrics = new SimpleLibraryMetrics();
+        batchingNotificationService = new BatchingNotificationService(mockNotificationService, 3, 200, TimeUnit.MILLISECONDS, mockScheduler, metrics);
+        doThrow(new IllegalStateException("Connection reset")).when(mockNotificationService).notifyUser(anyString(), anyString());
+        batchingNotificationService.notifyUser("102030405060", "First");
+
+        //Act
+        assertDoesNotThrow(() -> scheduledFlushes.get(0).run());
+
+        //Assert
+        assertEquals(1, batchingNotificationService.getDigestsFailed());
+        assertEquals(1, metrics.getNotificationFailureCount());
+        assertEquals(1, metrics.getFailureCount(IllegalStateException.class));
+    }
+
+    @Test
+    public void givenSchedulerRejectsFlush_whenNotifyUser_thenDeliveredImmediatelyAndNextBatchScheduled() {
+        //Arrange
+        when(mockScheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+                .thenThrow(new RejectedExecutionException("Scheduler is shut down"))
+                .thenAnswer(invocation -> {
+                    scheduledFlushes.add(invocation.getArgument(0));
+                    return null;
+                });
+
+        //Act
+        batchingNotificationService.notifyUser("102030405060", "First");
+        batchingNotificationService.notifyUser("102030405060", "Second");
+
+        //Assert
+        verify(mockNotificationService).notifyUser("102030405060", "First");
+        verify(mockNotificationService, never()).notifyUser("102030405060", "Second");
+        assertEquals(1, scheduledFlushes.size());
+        scheduledFlushes.get(0).run();
+        verify(mockNotificationService).notifyUser("102030405060", "Second");
+        assertEquals(2, batchingNotificationService.getDigestsSent());
+    }
+}
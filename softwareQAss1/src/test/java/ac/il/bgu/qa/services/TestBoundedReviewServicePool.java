@@ -0,0 +1,81 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestBoundedReviewServicePool {
+    AtomicInteger created;
+    BoundedReviewServicePool pool;
+
+    @BeforeEach
+    void setup() {
+        created = new AtomicInteger();
+        pool = new BoundedReviewServicePool(() -> {
+            created.incrementAndGet();
+            return mock(ReviewService.class);
+        }, 2, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void givenReleasedSession_whenAcquire_thenSessionReusedWithoutClosing() {
+        //Arrange
+        ReviewService first = pool.acquire();
+        pool.release(first);
+
+        //Act
+        ReviewService second = pool.acquire();
+
+        //Assert
+        assertSame(first, second);
+        assertEquals(1, created.get());
+        verify(first, never()).close();
+    }
+
+    @Test
+    public void givenAllSessionsLeased_whenAcquire_thenReviewException() {
+        //Arrange
+        pool.acquire();
+        pool.acquire();
+
+        //Act
+        ReviewException thrown = assertThrows(ReviewException.class, () -> pool.acquire());
+
+        //Assert
+        assertEquals("Review service pool exhausted!", thrown.getMessage());
+    }
+
+    @Test
+    public void givenInvalidatedSession_whenAcquire_thenNewSessionCreated() {
+        //Arrange
+        ReviewService broken = pool.acquire();
+        pool.invalidate(broken);
+
+        //Act
+        ReviewService replacement = pool.acquire();
+
+        //Assert
+        assertNotSame(broken, replacement);
+        verify(broken).close();
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void givenIdleSessions_whenClose_thenSessionsClosedAndAcquireFails() {
+        //Arrange
+        ReviewService session = pool.acquire();
+        pool.release(session);
+
+        //Act
+        pool.close();
+
+        //Assert
+        verify(session).close();
+        assertEquals(0, pool.getIdleCount());
+        assertThrows(ReviewException.class, () -> pool.acquire());
+    }
+}
@@ -0,0 +1,137 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestCachingDatabaseService {
+    @Mock
+    DatabaseService mockDatabaseService;
+    AtomicLong clock;
+    CachingDatabaseService cachingDatabaseService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        clock = new AtomicLong();
+        cachingDatabaseService = new CachingDatabaseService(mockDatabaseService, 2, 10, TimeUnit.SECONDS, clock::get);
+    }
+
+    @Test
+    public void givenCachedBook_whenGetBookByISBN_thenServedFromCache() {
+        //Arrange
+        Book book = mock(Book.class);
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(book);
+
+        //Act
+        Book first = cachingDatabaseService.getBookByISBN("9781501110368");
+        Book second = cachingDatabaseService.getBookByISBN("9781501110368");
+
+        //Assert
+        assertSame(book, first);
+        assertSame(book, second);
+        verify(mockDatabaseService, times(1)).getBookByISBN("9781501110368");
+        assertEquals(1, cachingDatabaseService.getBookCacheStats().getHitCount());
+        assertEquals(1, cachingDatabaseService.getBookCacheStats().getMissCount());
+    }
+
+    @Test
+    public void givenMissingBook_whenGetBookByISBN_thenNotCached() {
+        //Act
+        cachingDatabaseService.getBookByISBN("9781501110368");
+        cachingDatabaseService.getBookByISBN("9781501110368");
+
+        //Assert
+        verify(mockDatabaseService, times(2)).getBookByISBN("9781501110368");
+    }
+
+    @Test
+    public void givenCachedBook_whenBorrowBook_thenInvalidated() {
+        //Arrange
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenReturn(mock(Book.class));
+        cachingDatabaseService.getBookByISBN("9781501110368");
+
+        //Act
+        cachingDatabaseService.borrowBook("9781501110368", "102030405060");
+        cachingDatabaseService.getBookByISBN("9781501110368");
+
+        //Assert
+        verify(mockDatabaseService).borrowBook("9781501110368", "102030405060");
+        verify(mockDatabaseService, times(2)).getBookByISBN("9781501110368");
+    }
+
+    @Test
+    public void givenWriteDuringLoad_whenGetBookByISBN_thenStaleBookNotCached() {
+        //Arrange
+        Book stale = mock(Book.class);
+        Book fresh = mock(Book.class);
+        when(mockDatabaseService.getBookByISBN("9781501110368")).thenAnswer(invocation -> {
+            // A concurrent return completes while this load is in flight.
+            cachingDatabaseService.returnBook("9781501110368");
+            return stale;
+        }).thenReturn(fresh);
+
+        //Act
+        Book first = cachingDatabaseService.getBookByISBN("9781501110368");
+        Book second = cachingDatabaseService.getBookByISBN("9781501110368");
+
+        //Assert
+        assertSame(stale, first);
+        assertSame(fresh, second);
+        verify(mockDatabaseService, times(2)).getBookByISBN("9781501110368");
+    }
+
+    @Test
+    public void givenUnevenSegments_whenCacheFilled_thenMaximumSizeNotExceeded() {
+        //Arrange
+        LruCache<String, Integer> cache = new LruCache<>(129, 0, TimeUnit.SECONDS, clock::get);
+
+        //Act
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, i);
+        }
+
+        //Assert
+        assertTrue(cache.size() <= 129);
+    }
+
+    @Test
+    public void givenFullCache_whenNewBookLoaded_thenLeastRecentlyUsedEvicted() {
+        //Arrange
+        when(mockDatabaseService.getBookByISBN(anyString())).thenAnswer(invocation -> mock(Book.class));
+        cachingDatabaseService.getBookByISBN("9781501110368");
+        cachingDatabaseService.getBookByISBN("9780306406157");
+        cachingDatabaseService.getBookByISBN("9781501110368");
+
+        //Act
+        cachingDatabaseService.getBookByISBN("9780000000002");
+        cachingDatabaseService.getBookByISBN("9781501110368");
+        cachingDatabaseService.getBookByISBN("9780306406157");
+
+        //Assert
+        verify(mockDatabaseService, times(1)).getBookByISBN("9781501110368");
+        verify(mockDatabaseService, times(2)).getBookByISBN("9780306406157");
+        assertTrue(cachingDatabaseService.getBookCacheStats().getEvictionCount() >= 1);
+    }
+
+    @Test
+    public void givenExpiredEntry_whenGetUserById_thenReloaded() {
+        //Arrange
+        when(mockDatabaseService.getUserById("102030405060")).thenAnswer(invocation -> mock(User.class));
+        cachingDatabaseService.getUserById("102030405060");
+
+        //Act
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        cachingDatabaseService.getUserById("102030405060");
+
+        //Assert
+        verify(mockDatabaseService, times(2)).getUserById("102030405060");
+        assertEquals(1, cachingDatabaseService.getUserCacheStats().getEvictionCount());
+    }
+}
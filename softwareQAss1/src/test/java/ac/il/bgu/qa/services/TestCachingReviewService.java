@@ -0,0 +1,171 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TestCachingReviewService {
+    @Mock
+    ReviewService mockReviewService;
+    AtomicLong clock;
+    CachingReviewService cachingReviewService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        clock = new AtomicLong();
+        cachingReviewService = new CachingReviewService(mockReviewService, 100, 60, 5, TimeUnit.SECONDS, clock::get);
+    }
+
+    @Test
+    public void givenCachedReviews_whenGetReviewsForBook_thenUpstreamCalledOnce() {
+        //Arrange
+        when(mockReviewService.getReviewsForBook("9781501110368"))
+                .thenReturn(Collections.singletonList("This book is exceptional! I loved it so much!"));
+
+        //Act
+        List<String> first = cachingReviewService.getReviewsForBook("9781501110368");
+        List<String> second = cachingReviewService.getReviewsForBook("9781501110368");
+
+        //Assert
+        assertEquals(first, second);
+        verify(mockReviewService, times(1)).getReviewsForBook("9781501110368");
+        verify(mockReviewService, never()).close();
+        assertEquals(1, cachingReviewService.getStats().getHitCount());
+        assertEquals(1, cachingReviewService.getStats().getMissCount());
+        assertEquals(0, cachingReviewService.getNegativeStats().getMissCount());
+    }
+
+    @Test
+    public void givenNoReviews_whenGetReviewsForBook_thenNegativelyCachedUntilExpired() {
+        //Arrange
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenReturn(null);
+
+        //Act
+        List<String> first = cachingReviewService.getReviewsForBook("9781501110368");
+        List<String> second = cachingReviewService.getReviewsForBook("9781501110368");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        cachingReviewService.getReviewsForBook("9781501110368");
+
+        //Assert
+        assertTrue(first.isEmpty());
+        assertTrue(second.isEmpty());
+        verify(mockReviewService, times(2)).getReviewsForBook("9781501110368");
+    }
+
+    @Test
+    public void givenUpstreamFailure_whenGetReviewsForBook_thenFailureNotCached() {
+        //Arrange
+        when(mockReviewService.getReviewsForBook("9781501110368"))
+                .thenThrow(new ReviewException("Something went wrong with review service!"))
+                .thenReturn(Collections.singletonList("Great!"));
+
+        //Act
+        assertThrows(ReviewException.class, () -> cachingReviewService.getReviewsForBook("9781501110368"));
+        List<String> reviews = cachingReviewService.getReviewsForBook("9781501110368");
+
+        //Assert
+        assertEquals(Collections.singletonList("Great!"), reviews);
+        verify(mockReviewService, never()).close();
+    }
+
+    @Test
+    public void givenPooledUpstream_whenGetReviewsForBook_thenSessionLeasedPerFetch() {
+        //Arrange
+        ReviewServicePool mockPool = mock(ReviewServicePool.class);
+        when(mockPool.acquire()).thenReturn(mockReviewService);
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenReturn(Collections.singletonList("Great!"));
+        when(mockReviewService.getReviewsForBook("9780306406157")).thenThrow(new ReviewException("Review service down"));
+        cachingReviewService = new CachingReviewService(mockPool, 100, 60, 5, TimeUnit.SECONDS, clock::get);
+
+        //Act
+        cachingReviewService.getReviewsForBook("9781501110368");
+        cachingReviewService.getReviewsForBook("9781501110368");
+        assertThrows(ReviewException.class, () -> cachingReviewService.getReviewsForBook("9780306406157"));
+
+        //Assert
+        verify(mockPool, times(2)).acquire();
+        verify(mockPool).release(mockReviewService);
+        verify(mockPool).invalidate(mockReviewService);
+        verify(mockReviewService, never()).close();
+    }
+
+    @Test
+    public void givenConcurrentMisses_whenGetReviewsForBook_thenSingleUpstreamCall() throws Exception {
+        //Arrange
+        CountDownLatch upstreamEntered = new CountDownLatch(1);
+        CountDownLatch releaseUpstream = new CountDownLatch(1);
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenAnswer(invocation -> {
+            upstreamEntered.countDown();
+            releaseUpstream.await(10, TimeUnit.SECONDS);
+            return Collections.singletonList("Great!");
+        });
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        //Act
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cachingReviewService.getReviewsForBook("9781501110368")));
+            assertTrue(upstreamEntered.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < callers; i++) {
+                futures.add(executor.submit(() -> cachingReviewService.getReviewsForBook("9781501110368")));
+            }
+            releaseUpstream.countDown();
+
+            //Assert
+            for (Future<List<String>> future : futures) {
+                assertEquals(Collections.singletonList("Great!"), future.get(10, TimeUnit.SECONDS));
+            }
+            verify(mockReviewService, times(1)).getReviewsForBook("9781501110368");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenStreamReachingLimit_whenStreamReviewsForBook_thenOnlyLimitCachedAndUpstreamStreamedOnce() {
+        //Arrange
+        when(mockReviewService.streamReviewsForBook("9781501110368", 2)).thenAnswer(invocation -> Stream.of("Great!", "Loved it!"));
+        when(mockReviewService.streamReviewsForBook("9781501110368", 3)).thenAnswer(invocation -> Stream.of("Great!", "Loved it!", "Moving."));
+
+        //Act
+        List<String> first = cachingReviewService.streamReviewsForBook("9781501110368", 2).collect(Collectors.toList());
+        List<String> second = cachingReviewService.streamReviewsForBook("9781501110368", 1).collect(Collectors.toList());
+        List<String> third = cachingReviewService.streamReviewsForBook("9781501110368", 3).collect(Collectors.toList());
+
+        //Assert
+        assertEquals(Arrays.asList("Great!", "Loved it!"), first);
+        assertEquals(Collections.singletonList("Great!"), second);
+        assertEquals(Arrays.asList("Great!", "Loved it!", "Moving."), third);
+        verify(mockReviewService, times(1)).streamReviewsForBook("9781501110368", 2);
+        verify(mockReviewService, times(1)).streamReviewsForBook("9781501110368", 3);
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+    }
+
+    @Test
+    public void givenStreamEndingBeforeLimit_whenGetReviewsForBook_thenServedFromCache() {
+        //Arrange
+        when(mockReviewService.streamReviewsForBook("9781501110368", 5)).thenAnswer(invocation -> Stream.of("Great!"));
+
+        //Act
+        List<String> streamed = cachingReviewService.streamReviewsForBook("9781501110368", 5).collect(Collectors.toList());
+        List<String> reviews = cachingReviewService.getReviewsForBook("9781501110368");
+
+        //Assert
+        assertEquals(Collections.singletonList("Great!"), streamed);
+        assertEquals(Collections.singletonList("Great!"), reviews);
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+    }
+}
@@ -0,0 +1,183 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.*;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class TestCircuitBreaker {
+    AtomicLong clock;
+    CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setup() {
+        clock = new AtomicLong();
+        circuitBreaker = new CircuitBreaker(0.5, 4, 4, 30, TimeUnit.SECONDS, 2, clock::get);
+    }
+
+    @Test
+    public void givenFailureRateReachesThreshold_whenOnFailure_thenOpens() {
+        //Act
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        CircuitBreaker.State beforeMinimumCalls = circuitBreaker.getState();
+        circuitBreaker.onFailure();
+
+        //Assert
+        assertEquals(CircuitBreaker.State.CLOSED, beforeMinimumCalls);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void givenOpenDurationElapsed_whenTrialCallsSucceed_thenCloses() {
+        //Arrange
+        openBreaker();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        //Act
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess();
+        CircuitBreaker.State afterOneTrial = circuitBreaker.getState();
+        circuitBreaker.onSuccess();
+
+        //Assert
+        assertEquals(CircuitBreaker.State.HALF_OPEN, afterOneTrial);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void givenHalfOpen_whenTrialCallFails_thenReopens() {
+        //Arrange
+        openBreaker();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertTrue(circuitBreaker.tryAcquirePermission());
+
+        //Act
+        circuitBreaker.onFailure();
+
+        //Assert
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void givenOpenBreaker_whenGetReviewsForBook_thenFailsFastWithoutUpstreamCall() {
+        //Arrange
+        ReviewService mockReviewService = mock(ReviewService.class);
+        ReviewService reviewService = new CircuitBreakingReviewService(mockReviewService, circuitBreaker);
+        openBreaker();
+
+        //Act
+        ReviewException thrown = assertThrows(ReviewException.class, () -> reviewService.getReviewsForBook("9781501110368"));
+
+        //Assert
+        assertEquals("Review service circuit is open!", thrown.getMessage());
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+    }
+
+    @Test
+    public void givenFailingUpstream_whenNotifyUser_thenBreakerOpensAndFailsFast() {
+        //Arrange
+        NotificationService mockNotificationService = mock(NotificationService.class);
+        doThrow(new NotificationException("Something went wrong with sending the Notification!"))
+                .when(mockNotificationService).notifyUser(anyString(), anyString());
+        NotificationService notificationService = new CircuitBreakingNotificationService(mockNotificationService, circuitBreaker);
+
+        //Act
+        for (int i = 0; i < 10; i++) {
+            assertThrows(NotificationException.class, () -> notificationService.notifyUser("102030405060", "Hello"));
+        }
+
+        //Assert
+        verify(mockNotificationService, times(4)).notifyUser("102030405060", "Hello");
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void givenHealthyUpstream_whenGetReviewsForBook_thenReviewsReturned() {
+        //Arrange
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenReturn(Collections.singletonList("Great!"));
+        ReviewService reviewService = new CircuitBreakingReviewService(mockReviewService, circuitBreaker);
+
+        //Act & Assert
+        assertEquals(Collections.singletonList("Great!"), reviewService.getReviewsForBook("9781501110368"));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void givenHalfOpen_whenTrialCallThrowsError_thenReopens() {
+        //Arrange
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.getReviewsForBook("9781501110368")).thenThrow(new StackOverflowError());
+        ReviewService reviewService = new CircuitBreakingReviewService(mockReviewService, circuitBreaker);
+        openBreaker();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        //Act
+        assertThrows(StackOverflowError.class, () -> reviewService.getReviewsForBook("9781501110368"));
+
+        //Assert
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void givenHalfOpen_whenStreamFailsWhileConsumed_thenReopensOnClose() {
+        //Arrange
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.streamReviewsForBook("9781501110368", 5)).thenReturn(Stream.<String>generate(() -> {
+            throw new ReviewException("Review page unavailable!");
+        }));
+        ReviewService reviewService = new CircuitBreakingReviewService(mockReviewService, circuitBreaker);
+        openBreaker();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        //Act
+        try (Stream<String> reviews = reviewService.streamReviewsForBook("9781501110368", 5)) {
+            Iterator<String> iterator = reviews.iterator();
+            assertThrows(ReviewException.class, iterator::next);
+            assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        }
+
+        //Assert
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void givenHealthyStream_whenClosed_thenSuccessRecorded() {
+        //Arrange
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.streamReviewsForBook("9781501110368", 5)).thenAnswer(invocation -> Stream.of("Great!"));
+        ReviewService reviewService = new CircuitBreakingReviewService(mockReviewService, circuitBreaker);
+        openBreaker();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        //Act
+        for (int i = 0; i < 2; i++) {
+            try (Stream<String> reviews = reviewService.streamReviewsForBook("9781501110368", 5)) {
+                assertEquals(1, reviews.count());
+            }
+        }
+
+        //Assert
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+}
@@ -0,0 +1,330 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestDurableDatabaseService {
+    @TempDir
+    Path directory;
+    NotificationService notificationService;
+
+    @BeforeEach
+    void setup() {
+        notificationService = mock(NotificationService.class);
+    }
+
+    private DurableDatabaseService open(int snapshotInterval) {
+        return new DurableDatabaseService(directory, id -> notificationService, snapshotInterval);
+    }
+
+    private DurableDatabaseService openFailingFsync(AtomicBoolean failing) {
+        return new DurableDatabaseService(directory, id -> notificationService, 1000,
+                (file, visitor) -> new WriteAheadLog(file, visitor) {
+                    @Override
+                    void force() throws IOException {
+                        if (failing.get()) {
+                            throw new IOException("Device failure.");
+                        }
+                        super.force();
+                    }
+                });
+    }
+
+    @Test
+    public void givenLoggedChanges_whenReopened_thenStateRestored() throws Exception {
+        //Arrange
+        try (DurableDatabaseService databaseService = open(1000)) {
+            Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+            databaseService.addBook(book.getISBN(), book);
+            databaseService.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+            databaseService.registerUser("102030405060", new User("Coleen Hoover", "102030405060", notificationService));
+            book.borrow();
+            databaseService.borrowBook(book.getISBN(), "102030405060");
+            databaseService.borrowBook("9780306406157", "102030405060");
+            databaseService.returnBook("9780306406157");
+        }
+
+        //Act
+        try (DurableDatabaseService reopened = open(1000)) {
+
+            //Assert
+            Book restored = reopened.getBookByISBN("9781501110368");
+            assertEquals("It ends with us", restored.getTitle());
+            assertEquals("Coleen Hoover", restored.getAuthor());
+            assertTrue(restored.isBorrowed());
+            assertEquals("102030405060", reopened.getBorrowerId("9781501110368"));
+            assertFalse(reopened.getBookByISBN("9780306406157").isBorrowed());
+            assertNull(reopened.getBorrowerId("9780306406157"));
+            assertEquals(Collections.singletonMap("9781501110368", "102030405060"), reopened.getLoans());
+            User user = reopened.getUserById("102030405060");
+            assertEquals("Coleen Hoover", user.getName());
+            assertSame(notificationService, user.getNotificationService());
+        }
+    }
+
+    @Test
+    public void givenSnapshot_whenReopened_thenSnapshotAndLogTailReplayed() throws Exception {
+        //Arrange
+        try (DurableDatabaseService databaseService = open(1000)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            databaseService.borrowBook("9781501110368", "102030405060");
+            databaseService.snapshot();
+            assertEquals(0, databaseService.getLogSize());
+            databaseService.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+        }
+
+        //Act
+        try (DurableDatabaseService reopened = open(1000)) {
+
+            //Assert
+            assertNotNull(reopened.getBookByISBN("9781501110368"));
+            assertEquals("102030405060", reopened.getBorrowerId("9781501110368"));
+            assertNotNull(reopened.getBookByISBN("9780306406157"));
+        }
+    }
+
+    @Test
+    public void givenSnapshotInterval_whenExceeded_thenLogCompacted() throws Exception {
+        //Arrange
+        try (DurableDatabaseService databaseService = open(3)) {
+
+            //Act
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            databaseService.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+            long sizeBeforeSnapshot = databaseService.getLogSize();
+            databaseService.registerUser("102030405060", new User("Coleen Hoover", "102030405060", notificationService));
+
+            //Assert
+            assertTrue(sizeBeforeSnapshot > 0);
+            assertEquals(0, databaseService.getLogSize());
+            assertTrue(Files.size(directory.resolve("snapshot.dat")) > 0);
+        }
+    }
+
+    @Test
+    public void givenTornLogTail_whenReopened_thenIntactRecordsKept() throws Exception {
+        //Arrange
+        try (DurableDatabaseService databaseService = open(1000)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        }
+        Files.write(directory.resolve("wal.log"), new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        //Act
+        try (DurableDatabaseService reopened = open(1000)) {
+            reopened.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+        }
+        try (DurableDatabaseService reopened = open(1000)) {
+
+            //Assert
+            assertNotNull(reopened.getBookByISBN("9781501110368"));
+            assertNotNull(reopened.getBookByISBN("9780306406157"));
+        }
+    }
+
+    @Test
+    public void givenMissingBook_whenBorrowBook_thenBookNotFoundExceptionAndNothingLogged() throws Exception {
+        //Arrange
+        try (DurableDatabaseService databaseService = open(1000)) {
+
+            //Act
+            BookNotFoundException thrown = assertThrows(BookNotFoundException.class, () -> {
+                databaseService.borrowBook("9781501110368", "102030405060");
+            });
+
+            //Assert
+            assertEquals("Book not found!", thrown.getMessage());
+            assertEquals(0, databaseService.getLogSize());
+        }
+    }
+
+    @Test
+    public void givenBookBorrowedByAnotherUser_whenBorrowBook_thenRejectedAndNothingLogged() throws Exception {
+        //Arrange
+        try (DurableDatabaseService databaseService = open(1000)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            databaseService.borrowBook("9781501110368", "102030405060");
+            long logSize = databaseService.getLogSize();
+
+            //Act
+            BookAlreadyBorrowedException thrown = assertThrows(BookAlreadyBorrowedException.class, () -> {
+                databaseService.borrowBook("9781501110368", "102030405061");
+            });
+
+            //Assert
+            assertEquals("Book is already borrowed!", thrown.getMessage());
+            assertEquals(logSize, databaseService.getLogSize());
+            assertEquals("102030405060", databaseService.getBorrowerId("9781501110368"));
+        }
+    }
+
+    @Test
+    public void givenFailingFsync_whenTryBorrow_thenBookNotBorrowed() throws Exception {
+        //Arrange
+        AtomicBoolean failing = new AtomicBoolean();
+        try (DurableDatabaseService databaseService = openFailingFsync(failing)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            Book book = databaseService.getBookByISBN("9781501110368");
+            failing.set(true);
+
+            //Act
+            assertThrows(UncheckedIOException.class, () -> {
+                databaseService.tryBorrow("9781501110368", "102030405060", book);
+            });
+
+            //Assert
+            assertFalse(databaseService.getBookByISBN("9781501110368").isBorrowed());
+            assertNull(databaseService.getBorrowerId("9781501110368"));
+            failing.set(false);
+            assertTrue(databaseService.tryBorrow("9781501110368", "102030405061", book));
+        }
+    }
+
+    @Test
+    public void givenFailingFsync_whenTryReturn_thenBookStillBorrowed() throws Exception {
+        //Arrange
+        AtomicBoolean failing = new AtomicBoolean();
+        try (DurableDatabaseService databaseService = openFailingFsync(failing)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            Book book = databaseService.getBookByISBN("9781501110368");
+            assertTrue(databaseService.tryBorrow("9781501110368", "102030405060", book));
+            failing.set(true);
+
+            //Act
+            assertThrows(UncheckedIOException.class, () -> {
+                databaseService.tryReturn("9781501110368", "102030405060", book);
+            });
+
+            //Assert
+            assertTrue(databaseService.getBookByISBN("9781501110368").isBorrowed());
+            assertEquals("102030405060", databaseService.getBorrowerId("9781501110368"));
+            failing.set(false);
+            assertEquals("102030405060", databaseService.tryReturn("9781501110368", null, book));
+            assertFalse(book.isBorrowed());
+        }
+    }
+
+    @Test
+    public void givenTitleLongerThan64KB_whenReopened_thenTitleRestored() throws Exception {
+        //Arrange
+        StringBuilder title = new StringBuilder();
+        while (title.length() < 70_000) {
+            title.append("It ends with us \u00e9 ");
+        }
+        try (DurableDatabaseService databaseService = open(1000)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", title.toString(), "Coleen Hoover"));
+        }
+
+        //Act
+        try (DurableDatabaseService databaseService = open(1000)) {
+
+            //Assert
+            assertEquals(title.toString(), databaseService.getBookByISBN("9781501110368").getTitle());
+        }
+    }
+
+    @Test
+    public void givenLogAlreadyInSnapshot_whenReopened_thenReplayKeepsLatestBorrower() throws Exception {
+        //Arrange
+        Path log = directory.resolve("wal.log");
+        byte[] fullLog;
+        try (DurableDatabaseService databaseService = open(1000)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            databaseService.borrowBook("9781501110368", "102030405060");
+            databaseService.returnBook("9781501110368");
+            databaseService.borrowBook("9781501110368", "102030405061");
+            fullLog = Files.readAllBytes(log);
+            databaseService.snapshot();
+        }
+        // Simulate a crash between renaming the snapshot into place and truncating the log.
+        Files.write(log, fullLog);
+
+        //Act
+        try (DurableDatabaseService databaseService = open(1000)) {
+
+            //Assert
+            assertEquals("102030405061", databaseService.getBorrowerId("9781501110368"));
+            assertTrue(databaseService.getBookByISBN("9781501110368").isBorrowed());
+        }
+    }
+
+    @Test
+    public void givenConcurrentWriters_whenReopened_thenEveryCommittedChangeRestored() throws Exception {
+        //Arrange
+        int threads = 8;
+        int booksPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (DurableDatabaseService databaseService = open(120)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < booksPerThread; i++) {
+                        String ISBN = String.format("978%02d%07d", thread, i);
+                        databaseService.addBook(ISBN, new Book(ISBN, "Title " + i, "Coleen Hoover"));
+                    }
+                }));
+            }
+
+            //Act
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Assert
+        try (DurableDatabaseService reopened = open(120)) {
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < booksPerThread; i++) {
+                    assertNotNull(reopened.getBookByISBN(String.format("978%02d%07d", t, i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givenCopiesAndLoans_whenReopened_thenLibraryRestoresThem() throws Exception {
+        //Arrange
+        User user = new User("Coleen Hoover", "102030405060", notificationService);
+        try (DurableDatabaseService databaseService = open(1000)) {
+            Library library = Library.builder(databaseService).reviewService(mock(ReviewService.class)).multiCopyInventory().build();
+            library.registerUser(user);
+            library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            library.borrowBook("9781501110368", user.getId());
+            databaseService.snapshot();
+            library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        }
+
+        //Act
+        try (DurableDatabaseService reopened = open(1000)) {
+            Library library = Library.builder(reopened).reviewService(mock(ReviewService.class)).multiCopyInventory().build();
+
+            //Assert
+            assertEquals(3, library.getCopyCount("9781501110368"));
+            assertEquals(2, library.getAvailableCopies("9781501110368"));
+            assertEquals(user.getId(), library.getBorrowerOf("9781501110368").getId());
+            library.returnBook("9781501110368", user.getId());
+            assertTrue(reopened.getCopyLoans().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class TestInMemoryDatabaseService {
+    InMemoryDatabaseService databaseService;
+
+    @BeforeEach
+    void setup() {
+        databaseService = new InMemoryDatabaseService();
+    }
+
+    @Test
+    public void givenAddedBook_whenGetBookByISBN_thenBookReturned() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+
+        //Act
+        databaseService.addBook(book.getISBN(), book);
+
+        //Assert
+        assertSame(book, databaseService.getBookByISBN("9781501110368"));
+        assertNull(databaseService.getBookByISBN("9780306406157"));
+    }
+
+    @Test
+    public void givenRegisteredUser_whenGetUserById_thenUserReturned() {
+        //Arrange
+        User user = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+
+        //Act
+        databaseService.registerUser(user.getId(), user);
+
+        //Assert
+        assertSame(user, databaseService.getUserById("102030405060"));
+        assertNull(databaseService.getUserById("102030405061"));
+    }
+
+    @Test
+    public void givenBorrowedBook_whenReturnBook_thenBorrowerCleared() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook(book.getISBN(), book);
+
+        //Act
+        databaseService.borrowBook("9781501110368", "102030405060");
+        String borrower = databaseService.getBorrowerId("9781501110368");
+        databaseService.returnBook("9781501110368");
+
+        //Assert
+        assertEquals("102030405060", borrower);
+        assertNull(databaseService.getBorrowerId("9781501110368"));
+    }
+
+    @Test
+    public void givenMissingBook_whenBorrowBook_thenBookNotFoundException() {
+        //Act
+        BookNotFoundException thrown = assertThrows(BookNotFoundException.class, () -> {
+            databaseService.borrowBook("9781501110368", "102030405060");
+        });
+
+        //Assert
+        assertEquals("Book not found!", thrown.getMessage());
+        assertNull(databaseService.getBorrowerId("9781501110368"));
+    }
+
+    @Test
+    public void givenContendedBook_whenTryBorrowConcurrently_thenExactlyOneWins() throws Exception {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook(book.getISBN(), book);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        //Act
+        try {
+            for (int i = 0; i < threads; i++) {
+                String userId = String.format("1020304050%02d", i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return databaseService.tryBorrow(book.getISBN(), userId);
+                }));
+            }
+            start.countDown();
+            int winners = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get(10, TimeUnit.SECONDS)) {
+                    winners++;
+                }
+            }
+
+            //Assert
+            assertEquals(1, winners);
+            assertTrue(book.isBorrowed());
+            assertNotNull(databaseService.getBorrowerId(book.getISBN()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenLoanRecordedWithoutFlip_whenTryBorrow_thenFalseAndBookUnchanged() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook(book.getISBN(), book);
+        databaseService.borrowBook(book.getISBN(), "102030405060");
+
+        //Act
+        boolean borrowed = databaseService.tryBorrow(book.getISBN(), "102030405061");
+
+        //Assert
+        assertFalse(borrowed);
+        assertFalse(book.isBorrowed());
+        assertEquals("102030405060", databaseService.getBorrowerId(book.getISBN()));
+    }
+
+    @Test
+    public void givenBorrowedBook_whenTryReturn_thenOnlyBorrowerReturnsIt() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook(book.getISBN(), book);
+        databaseService.tryBorrow(book.getISBN(), "102030405060");
+
+        //Act
+        String byOther = databaseService.tryReturn(book.getISBN(), "102030405061");
+        String byBorrower = databaseService.tryReturn(book.getISBN(), "102030405060");
+
+        //Assert
+        assertNull(byOther);
+        assertEquals("102030405060", byBorrower);
+        assertFalse(book.isBorrowed());
+        assertNull(databaseService.getBorrowerId(book.getISBN()));
+        assertNull(databaseService.tryReturn(book.getISBN(), null));
+    }
+
+    @Test
+    public void givenMissingBook_whenTryBorrow_thenFalse() {
+        //Act & Assert
+        assertFalse(databaseService.tryBorrow("9781501110368", "102030405060"));
+        assertNull(databaseService.getBorrowerId("9781501110368"));
+    }
+
+    @Test
+    public void givenBorrowedBook_whenBorrowBookByOtherUser_thenBookAlreadyBorrowedException() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook(book.getISBN(), book);
+        databaseService.borrowBook("9781501110368", "102030405060");
+
+        //Act
+        BookAlreadyBorrowedException thrown = assertThrows(BookAlreadyBorrowedException.class, () -> {
+            databaseService.borrowBook("9781501110368", "102030405061");
+        });
+
+        //Assert
+        assertEquals("Book is already borrowed!", thrown.getMessage());
+        assertEquals("102030405060", databaseService.getBorrowerId("9781501110368"));
+        databaseService.borrowBook("9781501110368", "102030405060");
+    }
+
+    @Test
+    public void givenManyBooks_whenBorrowedConcurrently_thenEveryLoanRecorded() throws Exception {
+        //Arrange
+        Library library = new Library(databaseService, mock(ReviewService.class));
+        User user = new User("Coleen Hoover", "102030405060", mock(NotificationService.class));
+        library.registerUser(user);
+        List<String> isbns = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String isbn = withCheckDigit(String.format("978000000%03d", i));
+            library.addBook(new Book(isbn, "Title " + i, "Coleen Hoover"));
+            isbns.add(isbn);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //Act
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String isbn : isbns) {
+                futures.add(executor.submit(() -> library.borrowBook(isbn, user.getId())));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Assert
+        for (String isbn : isbns) {
+            assertTrue(databaseService.getBookByISBN(isbn).isBorrowed());
+            assertEquals(user.getId(), databaseService.getBorrowerId(isbn));
+        }
+    }
+
+    private static String withCheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = first12.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return first12 + ((10 - (sum % 10)) % 10);
+    }
+
+    @Test
+    public void givenTwoCopies_whenBothBorrowed_thenBookBorrowedUntilOneReturned() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook(book.getISBN(), book);
+        databaseService.addCopy(book.getISBN());
+
+        //Act
+        databaseService.borrowCopy(book.getISBN(), "102030405060");
+        databaseService.borrowCopy(book.getISBN(), "102030405061");
+        BookAlreadyBorrowedException thrown = assertThrows(BookAlreadyBorrowedException.class, () -> {
+            databaseService.borrowCopy(book.getISBN(), "102030405062");
+        });
+        boolean exhausted = book.isBorrowed();
+        databaseService.returnCopy(book.getISBN(), "102030405060");
+
+        //Assert
+        assertEquals("Book is already borrowed!", thrown.getMessage());
+        assertTrue(exhausted);
+        assertFalse(book.isBorrowed());
+        assertEquals(2, databaseService.getCopyCount(book.getISBN()));
+        assertEquals(Collections.singleton("102030405061"), databaseService.getCopyLoans().get(book.getISBN()));
+    }
+}
@@ -0,0 +1,242 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class TestMappedCatalogDatabaseService {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenAddedBooks_whenReopened_thenCatalogRestored() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            databaseService.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+            databaseService.borrowBook("9781501110368", "102030405060");
+        }
+
+        //Act
+        try (MappedCatalogDatabaseService reopened = new MappedCatalogDatabaseService(directory, 100)) {
+
+            //Assert
+            Book book = reopened.getBookByISBN("9781501110368");
+            assertEquals("9781501110368", book.getISBN());
+            assertEquals("It ends with us", book.getTitle());
+            assertEquals("Coleen Hoover", book.getAuthor());
+            assertTrue(book.isBorrowed());
+            assertEquals("102030405060", reopened.getBorrowerId("9781501110368"));
+            assertFalse(reopened.getBookByISBN("9780306406157").isBorrowed());
+            assertEquals(2, reopened.getBookCount());
+        }
+    }
+
+    @Test
+    public void givenReopenedCatalog_whenGetAllBooks_thenStoredBooksListed() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            databaseService.addBook("9780306406157", new Book("9780306406157", "It starts with us", "Coleen Hoover"));
+            databaseService.borrowBook("9780306406157", "102030405060");
+        }
+
+        //Act
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            Collection<Book> books = databaseService.getAllBooks();
+
+            //Assert
+            assertEquals(2, books.size());
+            for (Book book : books) {
+                assertEquals("Coleen Hoover", book.getAuthor());
+                assertEquals(book.getISBN().equals("9780306406157"), book.isBorrowed());
+            }
+        }
+    }
+
+    @Test
+    public void givenHyphenatedISBN_whenGetBookByISBN_thenSameBookFound() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+
+            //Act & Assert
+            assertEquals("It ends with us", databaseService.getBookByISBN("978-1-5011-1036-8").getTitle());
+            assertNull(databaseService.getBookByISBN("9780306406157"));
+            assertNull(databaseService.getBookByISBN("invalid"));
+        }
+    }
+
+    @Test
+    public void givenSameTitleAndAuthor_whenAddBooks_thenStringsStoredOnce() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "Title", "Coleen Hoover"));
+            long heapAfterFirst = databaseService.getStringHeapSize();
+
+            //Act
+            databaseService.addBook("9780306406157", new Book("9780306406157", "Title", "Coleen Hoover"));
+            long heapAfterSecond = databaseService.getStringHeapSize();
+            databaseService.addBook("9780000000002", new Book("9780000000002", "Other", "Coleen Hoover"));
+
+            //Assert
+            assertEquals(heapAfterFirst, heapAfterSecond);
+            assertEquals(heapAfterFirst + 4 + "Other".length(), databaseService.getStringHeapSize());
+            assertEquals("Title", databaseService.getBookByISBN("9780306406157").getTitle());
+        }
+    }
+
+    @Test
+    public void givenBorrowedBook_whenBorrowedAgain_thenRejected() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            assertTrue(databaseService.tryBorrow("9781501110368", "102030405060"));
+
+            //Act & Assert
+            assertFalse(databaseService.tryBorrow("9781501110368", "102030405061"));
+            assertThrows(BookAlreadyBorrowedException.class, () -> databaseService.borrowBook("9781501110368", "102030405061"));
+            assertThrows(BookNotFoundException.class, () -> databaseService.borrowBook("9780306406157", "102030405061"));
+            databaseService.returnBook("9781501110368");
+            assertNull(databaseService.getBorrowerId("9781501110368"));
+            assertTrue(databaseService.tryBorrow("9781501110368", "102030405061"));
+        }
+    }
+
+    @Test
+    public void givenCorruptCatalogFile_whenOpened_thenUncheckedIOException() throws Exception {
+        //Arrange
+        Files.write(directory.resolve("catalog.slots"), new byte[64]);
+
+        //Act
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class, () -> new MappedCatalogDatabaseService(directory, 100));
+
+        //Assert
+        assertEquals("Not a catalog file.", thrown.getCause().getMessage());
+    }
+
+    @Test
+    public void givenCapacityBeyondFileSize_whenReopened_thenUncheckedIOException() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        }
+        Path catalogFile = directory.resolve("catalog.slots");
+        long fileSize = Files.size(catalogFile);
+        try (FileChannel channel = FileChannel.open(catalogFile, StandardOpenOption.WRITE)) {
+            ByteBuffer capacity = ByteBuffer.allocate(4);
+            capacity.putInt(0, 1 << 20);
+            channel.write(capacity, 4);
+        }
+
+        //Act
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class, () -> new MappedCatalogDatabaseService(directory, 100));
+
+        //Assert
+        assertEquals("Corrupt catalog header.", thrown.getCause().getMessage());
+        assertEquals(fileSize, Files.size(catalogFile));
+    }
+
+    @Test
+    public void givenConcurrentBorrowers_whenTryBorrow_thenExactlyOneWins() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            int borrowers = 8;
+            ExecutorService executor = Executors.newFixedThreadPool(borrowers);
+
+            //Act
+            try {
+                for (int round = 0; round < 200; round++) {
+                    List<Future<Boolean>> attempts = new ArrayList<>();
+                    for (int i = 0; i < borrowers; i++) {
+                        String userId = String.format("1020304050%02d", i);
+                        attempts.add(executor.submit(() -> databaseService.tryBorrow("9781501110368", userId)));
+                    }
+                    int won = 0;
+                    for (Future<Boolean> attempt : attempts) {
+                        if (attempt.get(10, TimeUnit.SECONDS)) {
+                            won++;
+                        }
+                    }
+
+                    //Assert
+                    assertEquals(1, won);
+                    String borrower = databaseService.getBorrowerId("9781501110368");
+                    assertNotNull(borrower);
+                    assertTrue(databaseService.getBookByISBN("9781501110368").isBorrowed());
+                    assertEquals(borrower, databaseService.tryReturn("9781501110368", null, null));
+                    assertFalse(databaseService.getBookByISBN("9781501110368").isBorrowed());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void givenFullCatalog_whenAddBook_thenIllegalStateException() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 1)) {
+            for (int i = 0; i < 48; i++) {
+                String ISBN = withCheckDigit(String.format("978000000%03d", i));
+                databaseService.addBook(ISBN, new Book(ISBN, "Title " + i, "Coleen Hoover"));
+            }
+
+            //Act
+            IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+                databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+            });
+
+            //Assert
+            assertEquals("Catalog is full.", thrown.getMessage());
+            assertNotNull(databaseService.getBookByISBN(withCheckDigit("978000000047")));
+        }
+    }
+
+    @Test
+    public void givenLibrary_whenBorrowAndReturn_thenStoredStateFollows() throws Exception {
+        //Arrange
+        try (MappedCatalogDatabaseService databaseService = new MappedCatalogDatabaseService(directory, 100)) {
+            Library library = new Library(databaseService, mock(ReviewService.class));
+            library.registerUser(new User("Coleen Hoover", "102030405060",
+                    mock(NotificationService.class)));
+            library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+
+            //Act
+            library.borrowBook("9781501110368", "102030405060");
+            boolean borrowed = databaseService.getBookByISBN("9781501110368").isBorrowed();
+            library.returnBook("9781501110368");
+
+            //Assert
+            assertTrue(borrowed);
+            assertFalse(databaseService.getBookByISBN("9781501110368").isBorrowed());
+        }
+    }
+
+    private static String withCheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = first12.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return first12 + ((10 - (sum % 10)) % 10);
+    }
+}
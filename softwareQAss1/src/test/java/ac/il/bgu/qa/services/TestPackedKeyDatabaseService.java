@@ -0,0 +1,193 @@
+package ac.il.bgu.qa.services;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.BorrowResult;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class TestPackedKeyDatabaseService {
+    PackedKeyDatabaseService databaseService;
+
+    @BeforeEach
+    void setup() {
+        databaseService = new PackedKeyDatabaseService();
+    }
+
+    @Test
+    public void givenHyphenatedISBN_whenGetBookByISBN_thenSameBookFound() {
+        //Arrange
+        Book book = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        databaseService.addBook("978-1-5011-1036-8", book);
+
+        //Act & Assert
+        assertSame(book, databaseService.getBookByISBN("9781501110368"));
+        assertSame(book, databaseService.getBookByISBN("97815011-10368"));
+        assertNull(databaseService.getBookByISBN("9780306406157"));
+        assertNull(databaseService.getBookByISBN("invalid"));
+        assertEquals(1, databaseService.getBookCount());
+    }
+
+    @Test
+    public void givenAddedBooks_whenGetAllBooks_thenEveryBookListed() {
+        //Arrange
+        Book first = new Book("9781501110368", "It ends with us", "Coleen Hoover");
+        Book second = new Book("9780306406157", "It starts with us", "Coleen Hoover");
+        databaseService.addBook(first.getISBN(), first);
+        databaseService.addBook(second.getISBN(), second);
+
+        //Act
+        Collection<Book> books = databaseService.getAllBooks();
+
+        //Assert
+        assertEquals(2, books.size());
+        assertTrue(books.contains(first));
+        assertTrue(books.contains(second));
+    }
+
+    @Test
+    public void givenRegisteredUser_whenGetUserById_thenUserReturned() {
+        //Arrange
+        User user = new User("Coleen Hoover", "002030405060", mock(NotificationService.class));
+
+        //Act
+        databaseService.registerUser(user.getId(), user);
+
+        //Assert
+        assertSame(user, databaseService.getUserById("002030405060"));
+        assertNull(databaseService.getUserById("2030405060"));
+        assertNull(databaseService.getUserById(null));
+        assertEquals(1, databaseService.getUserCount());
+    }
+
+    @Test
+    public void givenManyEntries_whenTablesGrow_thenEveryEntryFound() {
+        //Arrange
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Book book = new Book(withCheckDigit(String.format("978000%06d", i)), "Title " + i, "Coleen Hoover");
+            books.add(book);
+            databaseService.addBook(book.getISBN(), book);
+            databaseService.registerUser(String.format("%012d", i), mock(User.class));
+        }
+
+        //Act & Assert
+        for (int i = 0; i < books.size(); i++) {
+            assertSame(books.get(i), databaseService.getBookByISBN(books.get(i).getISBN()));
+            assertNotNull(databaseService.getUserById(String.format("%012d", i)));
+        }
+        assertEquals(5000, databaseService.getBookCount());
+        assertEquals(5000, databaseService.getUserCount());
+    }
+
+    @Test
+    public void givenBorrowedBook_whenReturnBook_thenBorrowerCleared() {
+        //Arrange
+        databaseService.addBook("9781501110368", new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+
+        //Act
+        databaseService.borrowBook("978-1501110368", "002030405060");
+        String borrower = databaseService.getBorrowerId("9781501110368");
+        databaseService.returnBook("9781501110368");
+
+        //Assert
+        assertEquals("002030405060", borrower);
+        assertTrue(databaseService.getLoans().isEmpty());
+        assertNull(databaseService.getBorrowerId("9781501110368"));
+    }
+
+    @Test
+    public void givenHyphenatedISBN_whenBorrowedThroughLibrary_thenLoanReportedUnhyphenated() {
+        //Arrange
+        Library library = new Library(databaseService, mock(ReviewService.class));
+        library.registerUser(new User("Coleen Hoover", "102030405060", mock(NotificationService.class)));
+        library.addBook(new Book("978-1-5011-1036-8", "It ends with us", "Coleen Hoover"));
+
+        //Act
+        library.borrowBook("9781501110368", "102030405060");
+        BorrowResult again = library.tryBorrowBook("978-1501110368", "102030405060");
+
+        //Assert
+        assertEquals(BorrowResult.ALREADY_BORROWED, again);
+        assertEquals(Collections.singletonMap("9781501110368", "102030405060"), databaseService.getLoans());
+    }
+
+    @Test
+    public void givenMissingBook_whenBorrowBook_thenBookNotFoundException() {
+        //Act
+        BookNotFoundException thrown = assertThrows(BookNotFoundException.class, () -> {
+            databaseService.borrowBook("9781501110368", "102030405060");
+        });
+
+        //Assert
+        assertEquals("Book not found!", thrown.getMessage());
+        assertFalse(databaseService.tryBorrow("9781501110368", "102030405060"));
+    }
+
+    @Test
+    public void givenInvalidISBN_whenAddBook_thenIllegalArgumentException() {
+        //Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> {
+            databaseService.addBook("9781501110369", new Book("9781501110369", "It ends with us", "Coleen Hoover"));
+        });
+
+        //Assert
+        assertEquals("Invalid ISBN.", thrown.getMessage());
+    }
+
+    @Test
+    public void givenContendedBook_whenTryBorrowThroughLibrary_thenExactlyOneWins() throws Exception {
+        //Arrange
+        Library library = new Library(databaseService, mock(ReviewService.class));
+        library.addBook(new Book("9781501110368", "It ends with us", "Coleen Hoover"));
+        int threads = 8;
+        for (int i = 0; i < threads; i++) {
+            library.registerUser(new User("Coleen Hoover", String.format("1020304050%02d", i), mock(NotificationService.class)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BorrowResult>> futures = new ArrayList<>();
+
+        //Act
+        try {
+            for (int i = 0; i < threads; i++) {
+                String userId = String.format("1020304050%02d", i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return library.tryBorrowBook("9781501110368", userId);
+                }));
+            }
+            start.countDown();
+            int winners = 0;
+            for (Future<BorrowResult> future : futures) {
+                if (future.get(10, TimeUnit.SECONDS) == BorrowResult.BORROWED) {
+                    winners++;
+                }
+            }
+
+            //Assert
+            assertEquals(1, winners);
+            assertNotNull(databaseService.getBorrowerId("9781501110368"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String withCheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = first12.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return first12 + ((10 - (sum % 10)) % 10);
+    }
+}